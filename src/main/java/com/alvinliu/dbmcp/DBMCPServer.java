@@ -2,24 +2,63 @@ package com.alvinliu.dbmcp;
 
 import com.alvinliu.dbmcp.config.Config;
 import com.alvinliu.dbmcp.config.ConfigLoader;
+import com.alvinliu.dbmcp.daemon.Daemon;
+import com.alvinliu.dbmcp.daemon.StdioShim;
 import com.alvinliu.dbmcp.jdbc.JdbcPool;
+import com.alvinliu.dbmcp.mcp.HttpTransport;
 import com.alvinliu.dbmcp.mcp.McpServer;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
 
 /**
- * Entry point: load config, start MCP server on stdio.
+ * Entry point: load config, start MCP server on stdio. When server.http_port is set, the Streamable HTTP transport
+ * also serves on 127.0.0.1 and the process keeps running after stdin closes, until it is terminated.
+ * <p>
+ * {@code --shim} relays stdio to a shared background daemon (started on demand) instead of opening pools in every
+ * client process; {@code --daemon} runs that daemon. Without Unix domain sockets (Java &lt; 16) the shim runs in-process.
  */
 public class DBMCPServer {
     public static void main(String[] args) {
         try {
+            String mode = args.length > 0 ? args[0] : "";
+            if ("--shim".equals(mode) || "--daemon".equals(mode)) {
+                Path configPath = ConfigLoader.findConfigPath();
+                if (configPath == null) throw new IOException("config file not found: create config.yaml or set DB_MCP_CONFIG");
+                if ("--daemon".equals(mode)) {
+                    Daemon.run(configPath);
+                    System.exit(0);
+                }
+                if (StdioShim.run(configPath)) return;
+            }
             Config config = ConfigLoader.load();
             JdbcPool pool = new JdbcPool(config);
-            McpServer server = new McpServer(config, pool, System.in, System.out);
-            server.run();
+            McpServer server = new McpServer(config, pool);
+            HttpTransport http = null;
+            int httpPort = config.getServer().getHttpPort();
+            if (httpPort > 0) {
+                http = HttpTransport.start(server, httpPort);
+                System.err.println("[db_mcp] Streamable HTTP transport on http://127.0.0.1:" + http.getPort() + "/mcp"
+                    + " (bearer token in " + http.getTokenFile() + ")");
+            }
+            server.serve(System.in, System.out);
+            if (http == null) {
+                server.close();
+                return;
+            }
+            // other clients may still be attached over HTTP: keep serving until the process is stopped
+            HttpTransport h = http;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                h.stop();
+                server.close();
+            }));
+            new CountDownLatch(1).await();
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
             System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
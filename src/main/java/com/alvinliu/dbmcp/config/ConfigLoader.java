@@ -50,6 +50,10 @@ public final class ConfigLoader {
         if (log instanceof Map) {
             cfg.setLogging(loggingFromMap((Map<String, Object>) log));
         }
+        Object srv = raw.get("server");
+        if (srv instanceof Map) {
+            cfg.setServer(serverFromMap((Map<String, Object>) srv));
+        }
         return cfg;
     }
 
@@ -64,6 +68,31 @@ public final class ConfigLoader {
         return l;
     }
 
+    private static ServerConfig serverFromMap(Map<String, Object> m) {
+        ServerConfig s = new ServerConfig();
+        Integer n = getInt(m, "max_concurrent_calls");
+        if (n != null) s.setMaxConcurrentCalls(n);
+        n = getInt(m, "max_concurrent_per_connection");
+        if (n != null) s.setMaxConcurrentPerConnection(n);
+        Long max = getLong(m, "max_request_bytes");
+        if (max != null) s.setMaxRequestBytes(max);
+        n = getInt(m, "request_spool_bytes");
+        if (n != null) s.setRequestSpoolBytes(n);
+        n = getInt(m, "http_port");
+        if (n != null) s.setHttpPort(n);
+        Long idle = getLong(m, "daemon_idle_timeout_ms");
+        if (idle != null) s.setDaemonIdleTimeoutMs(idle);
+        n = getInt(m, "default_page_size");
+        if (n != null) s.setDefaultPageSize(n);
+        Long ttl = getLong(m, "cursor_ttl_ms");
+        if (ttl != null) s.setCursorTtlMs(ttl);
+        n = getInt(m, "max_cursors_per_connection");
+        if (n != null) s.setMaxCursorsPerConnection(n);
+        String wm = getStr(m, "watermark_file");
+        if (wm != null) s.setWatermarkFile(wm);
+        return s;
+    }
+
     private static ConnectionEntry entryFromMap(Map<String, Object> m) {
         ConnectionEntry e = new ConnectionEntry();
         e.setName(getStr(m, "name"));
@@ -74,6 +103,22 @@ public final class ConfigLoader {
         e.setPassword(getStr(m, "password"));
         e.setSchema(getStr(m, "schema"));
         e.setDatabase(getStr(m, "database"));
+        Long timeout = getLong(m, "query_timeout_ms");
+        if (timeout != null) e.setQueryTimeoutMs(timeout);
+        Long limit = getLong(m, "max_rows");
+        if (limit != null) e.setMaxRows(limit);
+        limit = getLong(m, "max_result_bytes");
+        if (limit != null) e.setMaxResultBytes(limit);
+        limit = getLong(m, "max_fetch_ms");
+        if (limit != null) e.setMaxFetchMs(limit);
+        limit = getLong(m, "fetch_size");
+        if (limit != null) e.setFetchSize((int) Math.max(-1, Math.min(limit, Integer.MAX_VALUE)));
+        limit = getLong(m, "lob_preview_size");
+        if (limit != null) e.setLobPreviewSize((int) Math.min(limit, Integer.MAX_VALUE));
+        limit = getLong(m, "prepared_statement_cache_size");
+        if (limit != null) e.setPreparedStatementCacheSize((int) Math.min(limit, Integer.MAX_VALUE));
+        Object autoParameterize = m.get("auto_parameterize");
+        if (autoParameterize instanceof Boolean) e.setAutoParameterize((Boolean) autoParameterize);
         return e;
     }
 
@@ -105,7 +150,24 @@ public final class ConfigLoader {
         return v != null ? v.toString().trim() : null;
     }
 
-    static Path findConfigPath() {
+    private static Integer getInt(Map<String, Object> m, String key) {
+        Long v = getLong(m, key);
+        return v != null ? v.intValue() : null;
+    }
+
+    private static Long getLong(Map<String, Object> m, String key) {
+        Object v = m.get(key);
+        if (v instanceof Number) return ((Number) v).longValue();
+        if (v != null) {
+            try {
+                return Long.parseLong(v.toString().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return null;
+    }
+
+    /** Config file location: DB_MCP_CONFIG if it names a file, else ./config.yaml; null if neither exists. */
+    public static Path findConfigPath() {
         String env = System.getenv(CONFIG_ENV);
         if (env != null && !env.isBlank()) {
             Path p = Paths.get(env);
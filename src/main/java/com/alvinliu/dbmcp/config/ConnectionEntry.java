@@ -4,8 +4,14 @@ package com.alvinliu.dbmcp.config;
  * One database connection (matches config.yaml connections[]).
  * JDBC: driver + url; user/password optional.
  * db_type: Druid DbType name (mysql, oracle, postgresql, sql_server, etc.); omit for default.
+ * query_timeout_ms: default per-call deadline for this connection; a tool call's timeout_ms overrides it.
  */
 public class ConnectionEntry {
+    public static final long DEFAULT_QUERY_TIMEOUT_MS = 300_000;
+    public static final long DEFAULT_MAX_RESULT_BYTES = 32L << 20;
+    public static final int DEFAULT_PREPARED_STATEMENT_CACHE_SIZE = 0;
+    public static final int DEFAULT_LOB_PREVIEW_SIZE = 4096;
+
     private String name;
     private String driver;
     private String dbType;   // Alibaba Druid DbType (e.g. mysql, oracle, postgresql, sql_server)
@@ -14,6 +20,14 @@ public class ConnectionEntry {
     private String password;
     private String schema;
     private String database;
+    private long queryTimeoutMs = DEFAULT_QUERY_TIMEOUT_MS; // 0 = no deadline
+    private long maxRows = 0; // 0 = unlimited
+    private long maxResultBytes = DEFAULT_MAX_RESULT_BYTES;
+    private long maxFetchMs = 0;
+    private int lobPreviewSize = DEFAULT_LOB_PREVIEW_SIZE; // chars / bytes of a LOB returned in memory, 0 = whole
+    private int preparedStatementCacheSize = DEFAULT_PREPARED_STATEMENT_CACHE_SIZE; // per pooled connection, 0 = off
+    private boolean autoParameterize = false;
+    private int fetchSize = -1; // rows per round trip; -1 = tuned per db_type, 0 = driver default
 
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
@@ -38,4 +52,38 @@ public class ConnectionEntry {
 
     public String getDatabase() { return database; }
     public void setDatabase(String database) { this.database = database; }
+
+    public long getQueryTimeoutMs() { return queryTimeoutMs; }
+    public void setQueryTimeoutMs(long queryTimeoutMs) { this.queryTimeoutMs = Math.max(0, queryTimeoutMs); }
+
+    /** Limits for results returned in memory (execute_sql / fetch_more); 0 = unlimited. Exports are not limited. */
+    public long getMaxRows() { return maxRows; }
+    public void setMaxRows(long maxRows) { this.maxRows = Math.max(0, maxRows); }
+
+    public long getMaxResultBytes() { return maxResultBytes; }
+    public void setMaxResultBytes(long maxResultBytes) { this.maxResultBytes = Math.max(0, maxResultBytes); }
+
+    public long getMaxFetchMs() { return maxFetchMs; }
+    public void setMaxFetchMs(long maxFetchMs) { this.maxFetchMs = Math.max(0, maxFetchMs); }
+
+    /** Longer CLOB/BLOB values come back as a preview of this many characters (bytes) plus their length. */
+    public int getLobPreviewSize() { return lobPreviewSize; }
+    public void setLobPreviewSize(int lobPreviewSize) { this.lobPreviewSize = Math.max(0, lobPreviewSize); }
+
+    /**
+     * Rows fetched per round trip for large results (see FetchStrategy); negative = the default for db_type,
+     * 0 = the driver's own default.
+     */
+    public int getFetchSize() { return fetchSize; }
+    public void setFetchSize(int fetchSize) { this.fetchSize = fetchSize; }
+
+    /** Prepared statements kept open per pooled connection (Druid poolPreparedStatements); 0 = no cache. */
+    public int getPreparedStatementCacheSize() { return preparedStatementCacheSize; }
+    public void setPreparedStatementCacheSize(int preparedStatementCacheSize) {
+        this.preparedStatementCacheSize = Math.max(0, preparedStatementCacheSize);
+    }
+
+    /** Run single statements with their value literals as binds, so variants that differ in values share one plan. */
+    public boolean isAutoParameterize() { return autoParameterize; }
+    public void setAutoParameterize(boolean autoParameterize) { this.autoParameterize = autoParameterize; }
 }
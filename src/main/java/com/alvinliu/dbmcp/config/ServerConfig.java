@@ -0,0 +1,57 @@
+package com.alvinliu.dbmcp.config;
+
+/**
+ * Server runtime settings (YAML "server" section). Omit to use defaults.
+ */
+public class ServerConfig {
+    private int maxConcurrentCalls = 16;
+    private int maxConcurrentPerConnection = 8;
+    private long maxRequestBytes = 64L << 20;
+    private int requestSpoolBytes = 4 << 20;
+    private int httpPort = 0;
+    private long daemonIdleTimeoutMs = 30 * 60_000L;
+    private int defaultPageSize = 0;
+    private long cursorTtlMs = 5 * 60_000L;
+    private int maxCursorsPerConnection = 4;
+    private String watermarkFile = "watermarks.json";
+
+    /** Upper bound on tools/call requests executing at the same time; further calls wait for a free slot. */
+    public int getMaxConcurrentCalls() { return maxConcurrentCalls; }
+    public void setMaxConcurrentCalls(int maxConcurrentCalls) { this.maxConcurrentCalls = maxConcurrentCalls > 0 ? maxConcurrentCalls : 16; }
+
+    /** Upper bound on calls using the same configured connection at once (e.g. the entries of one batch). */
+    public int getMaxConcurrentPerConnection() { return maxConcurrentPerConnection; }
+    public void setMaxConcurrentPerConnection(int maxConcurrentPerConnection) { this.maxConcurrentPerConnection = maxConcurrentPerConnection > 0 ? maxConcurrentPerConnection : 8; }
+
+    /** Largest JSON-RPC message accepted; bigger frames are rejected with Invalid Request. */
+    public long getMaxRequestBytes() { return maxRequestBytes; }
+    public void setMaxRequestBytes(long maxRequestBytes) { this.maxRequestBytes = maxRequestBytes > 0 ? maxRequestBytes : 64L << 20; }
+
+    /** Messages larger than this are spooled to a temp file and parsed from disk instead of buffered in memory. */
+    public int getRequestSpoolBytes() { return requestSpoolBytes; }
+    public void setRequestSpoolBytes(int requestSpoolBytes) { this.requestSpoolBytes = requestSpoolBytes > 0 ? requestSpoolBytes : 4 << 20; }
+
+    /** Port for the Streamable HTTP transport on 127.0.0.1; 0 (default) disables it. */
+    public int getHttpPort() { return httpPort; }
+    public void setHttpPort(int httpPort) { this.httpPort = Math.max(0, httpPort); }
+
+    /** Daemon mode: exit after this long with no client attached (default 30 min); 0 = never. */
+    public long getDaemonIdleTimeoutMs() { return daemonIdleTimeoutMs; }
+    public void setDaemonIdleTimeoutMs(long daemonIdleTimeoutMs) { this.daemonIdleTimeoutMs = Math.max(0, daemonIdleTimeoutMs); }
+
+    /** execute_sql page size when the call does not pass page_size; 0 (default) returns all rows. */
+    public int getDefaultPageSize() { return defaultPageSize; }
+    public void setDefaultPageSize(int defaultPageSize) { this.defaultPageSize = Math.max(0, defaultPageSize); }
+
+    /** Open cursors not read for this long are closed and their connection returned to the pool. */
+    public long getCursorTtlMs() { return cursorTtlMs; }
+    public void setCursorTtlMs(long cursorTtlMs) { this.cursorTtlMs = cursorTtlMs > 0 ? cursorTtlMs : 5 * 60_000L; }
+
+    /** Open cursors per connection (each pins a pooled connection); the least recently used is closed beyond this. */
+    public int getMaxCursorsPerConnection() { return maxCursorsPerConnection; }
+    public void setMaxCursorsPerConnection(int maxCursorsPerConnection) { this.maxCursorsPerConnection = maxCursorsPerConnection > 0 ? maxCursorsPerConnection : 4; }
+
+    /** State file of incremental export watermarks; relative paths are resolved against the config file's directory. */
+    public String getWatermarkFile() { return watermarkFile; }
+    public void setWatermarkFile(String watermarkFile) { this.watermarkFile = watermarkFile != null && !watermarkFile.isBlank() ? watermarkFile : "watermarks.json"; }
+}
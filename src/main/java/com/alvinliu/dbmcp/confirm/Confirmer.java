@@ -66,8 +66,10 @@ public class Confirmer {
 
     /**
      * Show confirmation dialog. Returns true if user approved, false if cancelled or error.
+     * Synchronized: tool calls run concurrently, but only one dialog is shown at a time (the Windows dialog
+     * also reuses fixed temp file names).
      */
-    public boolean confirm(ConfirmRequest req) {
+    public synchronized boolean confirm(ConfirmRequest req) {
         String os = System.getProperty("os.name", "").toLowerCase();
         if (os.contains("win")) {
             return confirmWindows(req);
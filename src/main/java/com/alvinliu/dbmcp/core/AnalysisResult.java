@@ -21,6 +21,11 @@ public class AnalysisResult {
     /** SQL to show in preview: Druid formatted when parse succeeded, original when failed. */
     private String previewSql;
     private boolean parseSucceeded;
+    /** Auto-parameterization only: the statement with its value literals replaced by ? binds, and their values. */
+    private String parameterizedSql;
+    private List<Object> parameters;
+    /** The statements of originalSQL as the dialect's lexer split them; the executor runs exactly these. */
+    private SqlScript script;
 
     public String getOriginalSQL() { return originalSQL; }
     public void setOriginalSQL(String originalSQL) { this.originalSQL = originalSQL; }
@@ -62,4 +67,13 @@ public class AnalysisResult {
     public void setPreviewSql(String previewSql) { this.previewSql = previewSql; }
     public boolean isParseSucceeded() { return parseSucceeded; }
     public void setParseSucceeded(boolean parseSucceeded) { this.parseSucceeded = parseSucceeded; }
+
+    public String getParameterizedSql() { return parameterizedSql; }
+    public void setParameterizedSql(String parameterizedSql) { this.parameterizedSql = parameterizedSql; }
+
+    public List<Object> getParameters() { return parameters; }
+    public void setParameters(List<Object> parameters) { this.parameters = parameters; }
+
+    public SqlScript getScript() { return script; }
+    public void setScript(SqlScript script) { this.script = script; }
 }
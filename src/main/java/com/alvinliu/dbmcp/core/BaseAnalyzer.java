@@ -30,6 +30,7 @@ public class BaseAnalyzer implements SqlAnalyzer {
     public AnalysisResult analyze(String sql) {
         AnalysisResult r = new AnalysisResult();
         r.setOriginalSQL(sql);
+        r.setScript(SqlScript.split(sql, null));
         r.setContainsPLSQL(false);
         r.setPlsqlCreationDDL(false);
         String noComments = removeComments(sql);
@@ -15,10 +15,16 @@ public final class PluginRegistry {
 
     public static SqlAnalyzer getAnalyzer(String dbType, List<String> dangerKeywordsWholeText,
                                           List<String> dangerKeywordsAst) {
+        return getAnalyzer(dbType, dangerKeywordsWholeText, dangerKeywordsAst, false);
+    }
+
+    /** With parameterize, analysis results also carry the statement with its literals as binds. */
+    public static SqlAnalyzer getAnalyzer(String dbType, List<String> dangerKeywordsWholeText,
+                                          List<String> dangerKeywordsAst, boolean parameterize) {
         List<String> w = dangerKeywordsWholeText != null ? dangerKeywordsWholeText : Collections.emptyList();
         List<String> a = dangerKeywordsAst != null ? dangerKeywordsAst : Collections.emptyList();
         DbType dt = DbTypes.resolve(dbType);
-        return new DruidSqlAnalyzer(dt, w, a);
+        return new DruidSqlAnalyzer(dt, w, a, parameterize);
     }
 
     public static SqlFormatter getFormatter(String dbType) {
@@ -0,0 +1,470 @@
+package com.alvinliu.dbmcp.core;
+
+import com.alibaba.druid.DbType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SQL text split into statements by one pass of a lexer that knows the dialect's quoting and comments, so a ; inside
+ * a string, quoted identifier, comment or dollar-quoted body never ends a statement. Computed once by the analyzer
+ * ({@link AnalysisResult#getScript()}) and run statement by statement by the executor, so what was reviewed is what
+ * runs. Statements are spans of the original text; their text is only copied out when it is executed.
+ * <ul>
+ * <li>Every dialect: '...' with '', "..." with "", -- and /* *&#47; comments.</li>
+ * <li>MySQL family: backslash escapes in '...' and "...", `...`, # comments, -- only before whitespace.</li>
+ * <li>PostgreSQL family: $tag$...$tag$, E'...' with backslash escapes, nested /* *&#47;.</li>
+ * <li>Oracle family: q'[...]' literals; DECLARE/BEGIN blocks run as one statement.</li>
+ * <li>SQL Server: [...] identifiers.</li>
+ * </ul>
+ * Outside the PostgreSQL family, CREATE FUNCTION/PROCEDURE/PACKAGE/TRIGGER runs to the end of the text as one
+ * statement (its body has semicolons of its own), as do Oracle blocks; a line holding only / ends one earlier.
+ */
+public final class SqlScript {
+
+    private static final SqlScript EMPTY = new SqlScript("", Collections.emptyList());
+    /** Words after CREATE that are looked at for FUNCTION/PROCEDURE/...: covers OR REPLACE, EDITIONABLE, DEFINER=u@h. */
+    private static final int ROUTINE_HEADER_WORDS = 4;
+
+    private final String sql;
+    private final List<Statement> statements;
+
+    private SqlScript(String sql, List<Statement> statements) {
+        this.sql = sql;
+        this.statements = statements;
+    }
+
+    /**
+     * One statement: a span of the script from its first character to its last token, without the terminating ;
+     * (which a block keeps) or trailing comments.
+     */
+    public static final class Statement {
+        private final String sql;
+        private final int start;
+        private final int end;
+        private final String keyword;
+        private final boolean returning;
+        private final boolean block;
+
+        private Statement(String sql, int start, int end, String keyword, boolean returning, boolean block) {
+            this.sql = sql;
+            this.start = start;
+            this.end = end;
+            this.keyword = keyword;
+            this.returning = returning;
+            this.block = block;
+        }
+
+        /** The statement as written, leading comments included. */
+        public String getText() { return sql.substring(start, end); }
+
+        public int getStart() { return start; }
+
+        public int getEnd() { return end; }
+
+        /** First word, upper case (SELECT, WITH, CREATE, ...); "" if the statement starts with a symbol. */
+        public String getKeyword() { return keyword; }
+
+        /** SELECT, INSERT, UPDATE, DELETE, MERGE, DDL (CREATE/ALTER/DROP/TRUNCATE) or UNKNOWN. */
+        public String getType() { return typeOf(keyword); }
+
+        /** SELECT or WITH ...: a query whose rows may be fetched in chunks. */
+        public boolean isQuery() { return "SELECT".equals(keyword) || "WITH".equals(keyword); }
+
+        /** Has a RETURNING clause (outside strings and comments), so it returns rows as well as an update count. */
+        public boolean hasReturning() { return returning; }
+
+        /** A routine or PL/SQL block that runs as one statement. */
+        public boolean isBlock() { return block; }
+    }
+
+    /**
+     * A token of SQL text: a word, a number, a quoted string or identifier (one token, quotes included; prefixes such
+     * as E, N or U&amp; are tokens of their own), or a single symbol character.
+     */
+    public static final class Token {
+        public enum Kind { WORD, NUMBER, QUOTED, SYMBOL }
+
+        private final String sql;
+        private final int start;
+        private final int end;
+        private final Kind kind;
+
+        private Token(String sql, int start, int end, Kind kind) {
+            this.sql = sql;
+            this.start = start;
+            this.end = end;
+            this.kind = kind;
+        }
+
+        public Kind getKind() { return kind; }
+
+        public int getStart() { return start; }
+
+        public int getEnd() { return end; }
+
+        public String getText() { return sql.substring(start, end); }
+
+        /** A symbol token that is the given character. */
+        public boolean is(char symbol) { return kind == Kind.SYMBOL && sql.charAt(start) == symbol; }
+    }
+
+    /** Tokens of sql with the dialect's quoting and comments (see {@link #split}); comments and whitespace are skipped. */
+    public static List<Token> tokens(String sql, DbType dbType) {
+        if (sql == null || sql.isEmpty()) return Collections.emptyList();
+        return new Lexer(sql, dbType).tokens();
+    }
+
+    /** Split sql for the given dialect (null: only the quoting and comments every dialect shares). */
+    public static SqlScript split(String sql, DbType dbType) {
+        if (sql == null || sql.isEmpty()) return EMPTY;
+        return new SqlScript(sql, new Lexer(sql, dbType).statements());
+    }
+
+    /** The text the statement spans refer to. */
+    public String getSql() { return sql; }
+
+    public List<Statement> getStatements() { return statements; }
+
+    public int size() { return statements.size(); }
+
+    public Statement get(int i) { return statements.get(i); }
+
+    /** Statement type of the first word of sql, skipping leading comments; see {@link Statement#getType()}. */
+    public static String statementType(String sql) {
+        return typeOf(firstKeyword(sql));
+    }
+
+    /** First word of sql in upper case, skipping whitespace and leading comments; "" if none. */
+    public static String firstKeyword(String sql) {
+        if (sql == null) return "";
+        Lexer lx = new Lexer(sql, null);
+        int i = lx.skipSpaceAndComments(0);
+        return i < sql.length() && isWordStart(sql.charAt(i))
+            ? sql.substring(i, lx.wordEnd(i)).toUpperCase(Locale.ROOT) : "";
+    }
+
+    private static String typeOf(String keyword) {
+        switch (keyword) {
+            case "SELECT":
+            case "INSERT":
+            case "UPDATE":
+            case "DELETE":
+            case "MERGE":
+                return keyword;
+            case "CREATE":
+            case "ALTER":
+            case "DROP":
+            case "TRUNCATE":
+                return "DDL";
+            default:
+                return "UNKNOWN";
+        }
+    }
+
+    private static boolean isWordStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    private static boolean isWordPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static final class Lexer {
+        private final String s;
+        private final int len;
+        private final boolean mysql;
+        private final boolean postgres;
+        private final boolean oracle;
+        private final boolean sqlServer;
+
+        Lexer(String s, DbType dbType) {
+            this.s = s;
+            this.len = s.length();
+            this.mysql = dbType == DbType.mysql || dbType == DbType.mariadb || dbType == DbType.tidb
+                || dbType == DbType.oceanbase || dbType == DbType.drds || dbType == DbType.goldendb
+                || dbType == DbType.starrocks;
+            this.postgres = dbType == DbType.postgresql || dbType == DbType.greenplum || dbType == DbType.edb
+                || dbType == DbType.kingbase || dbType == DbType.highgo || dbType == DbType.gaussdb;
+            this.oracle = dbType == DbType.oracle || dbType == DbType.oceanbase_oracle || dbType == DbType.ali_oracle
+                || dbType == DbType.dm;
+            this.sqlServer = dbType == DbType.sqlserver || dbType == DbType.jtds || dbType == DbType.sybase;
+        }
+
+        List<Statement> statements() {
+            List<Statement> list = new ArrayList<>();
+            int i = 0;
+            while (i < len) {
+                int start = skipSpace(i);
+                if (start >= len) break;
+                i = statement(start, list);
+            }
+            return list;
+        }
+
+        List<Token> tokens() {
+            List<Token> list = new ArrayList<>();
+            int i = skipSpaceAndComments(0);
+            while (i < len) {
+                char c = s.charAt(i);
+                int j = skipQuoted(i);
+                Token.Kind kind = Token.Kind.QUOTED;
+                if (j == i) {
+                    if (isWordStart(c)) {
+                        j = wordEnd(i);
+                        kind = Token.Kind.WORD;
+                    } else if (isDigit(i) || c == '.' && isDigit(i + 1)) {
+                        j = numberEnd(i);
+                        kind = Token.Kind.NUMBER;
+                    } else {
+                        j = i + 1;
+                        kind = Token.Kind.SYMBOL;
+                    }
+                }
+                list.add(new Token(s, i, j, kind));
+                i = skipSpaceAndComments(j);
+            }
+            return list;
+        }
+
+        /** Lex one statement from start; adds it unless it holds only comments. Returns where the next one starts. */
+        private int statement(int start, List<Statement> list) {
+            String keyword = null;
+            int headerWords = 0;
+            boolean returning = false;
+            boolean block = false;
+            boolean lineStart = isLineStart(start);
+            int i = start;
+            int end = start;
+            int next = len;
+            while (i < len) {
+                char c = s.charAt(i);
+                if (c == '\n') {
+                    lineStart = true;
+                    i++;
+                    continue;
+                }
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                if (lineStart && c == '/' && !postgres && isSlashLine(i)) {
+                    next = i + 1;
+                    break;
+                }
+                lineStart = false;
+                int skipped = skipComment(i);
+                if (skipped > i) {
+                    lineStart = s.charAt(skipped - 1) == '\n';
+                    i = skipped;
+                    continue;
+                }
+                if (c == ';' && !block) {
+                    next = i + 1;
+                    break;
+                }
+                int quoted = skipQuoted(i);
+                if (quoted > i) {
+                    if (keyword == null) keyword = "";
+                    i = end = quoted;
+                    continue;
+                }
+                if (isWordStart(c) && (i == 0 || !isWordPart(s.charAt(i - 1)))) {
+                    int j = wordEnd(i);
+                    if (keyword == null) {
+                        keyword = s.substring(i, j).toUpperCase(Locale.ROOT);
+                        block = oracle && ("DECLARE".equals(keyword) || "BEGIN".equals(keyword));
+                    } else if (headerWords >= 0 && "CREATE".equals(keyword)) {
+                        if (!postgres && (isWord(i, j, "FUNCTION") || isWord(i, j, "PROCEDURE")
+                                || isWord(i, j, "PACKAGE") || isWord(i, j, "TRIGGER"))) {
+                            block = true;
+                            headerWords = -1;
+                        } else if (++headerWords >= ROUTINE_HEADER_WORDS) {
+                            headerWords = -1;
+                        }
+                    } else if (isWord(i, j, "RETURNING")) {
+                        returning = true;
+                    }
+                    i = end = j;
+                    continue;
+                }
+                if (keyword == null) keyword = "";
+                if (c == '(') headerWords = -1;
+                end = ++i;
+            }
+            if (keyword != null) {
+                list.add(new Statement(s, start, end, keyword, returning, block));
+            }
+            return next;
+        }
+
+        private boolean isLineStart(int i) {
+            while (i > 0 && s.charAt(i - 1) != '\n' && Character.isWhitespace(s.charAt(i - 1))) i--;
+            return i == 0 || s.charAt(i - 1) == '\n';
+        }
+
+        /** A line that holds only / (SQL*Plus: run the statement before it). */
+        private boolean isSlashLine(int i) {
+            int j = i + 1;
+            while (j < len && s.charAt(j) != '\n') {
+                if (!Character.isWhitespace(s.charAt(j))) return false;
+                j++;
+            }
+            return true;
+        }
+
+        int skipSpaceAndComments(int i) {
+            while (true) {
+                i = skipSpace(i);
+                int skipped = i < len ? skipComment(i) : i;
+                if (skipped == i) return i;
+                i = skipped;
+            }
+        }
+
+        private int skipSpace(int i) {
+            while (i < len && Character.isWhitespace(s.charAt(i))) i++;
+            return i;
+        }
+
+        /** End of the comment starting at i (after its newline for a line comment), or i if none starts there. */
+        private int skipComment(int i) {
+            char c = s.charAt(i);
+            char n = i + 1 < len ? s.charAt(i + 1) : 0;
+            if (c == '-' && n == '-' && (!mysql || i + 2 >= len || Character.isWhitespace(s.charAt(i + 2)))
+                    || c == '#' && mysql) {
+                int eol = s.indexOf('\n', i);
+                return eol < 0 ? len : eol + 1;
+            }
+            if (c == '/' && n == '*') {
+                int depth = 1;
+                int j = i + 2;
+                while (j < len && depth > 0) {
+                    if (s.startsWith("*/", j)) {
+                        depth--;
+                        j += 2;
+                    } else if (postgres && s.startsWith("/*", j)) {
+                        depth++;
+                        j += 2;
+                    } else {
+                        j++;
+                    }
+                }
+                return j;
+            }
+            return i;
+        }
+
+        /** End of the string, quoted identifier or dollar-quoted body starting at i, or i if none starts there. */
+        private int skipQuoted(int i) {
+            char c = s.charAt(i);
+            boolean wordBefore = i > 0 && isWordPart(s.charAt(i - 1));
+            switch (c) {
+                case '\'': {
+                    boolean backslash = mysql || postgres && i > 0 && (s.charAt(i - 1) == 'E' || s.charAt(i - 1) == 'e')
+                        && (i == 1 || !isWordPart(s.charAt(i - 2)));
+                    return closeQuote(i + 1, '\'', backslash);
+                }
+                case '"':
+                    return closeQuote(i + 1, '"', mysql);
+                case '`':
+                    return mysql ? closeQuote(i + 1, '`', false) : i;
+                case '[':
+                    return sqlServer ? closeQuote(i + 1, ']', false) : i;
+                case '$':
+                    return postgres && !wordBefore ? closeDollar(i) : i;
+                case 'q':
+                case 'Q':
+                    return oracle && !wordBefore ? closeQQuote(i) : i;
+                case 'n':
+                case 'N':
+                    return oracle && !wordBefore && i + 1 < len && (s.charAt(i + 1) == 'q' || s.charAt(i + 1) == 'Q')
+                        ? closeQQuote(i + 1) : i;
+                default:
+                    return i;
+            }
+        }
+
+        /** After the closing quote; a doubled quote is part of the text. Unterminated: the end of the text. */
+        private int closeQuote(int j, char quote, boolean backslash) {
+            while (j < len) {
+                char c = s.charAt(j);
+                if (backslash && c == '\\') {
+                    j += 2;
+                } else if (c == quote) {
+                    if (j + 1 < len && s.charAt(j + 1) == quote) j += 2;
+                    else return j + 1;
+                } else {
+                    j++;
+                }
+            }
+            return len;
+        }
+
+        /** $tag$ ... $tag$ (tag may be empty); i if the $ at i does not open one ($1 parameters, names with $). */
+        private int closeDollar(int i) {
+            int j = i + 1;
+            if (j < len && isWordStart(s.charAt(j))) {
+                while (j < len && (Character.isLetterOrDigit(s.charAt(j)) || s.charAt(j) == '_')) j++;
+            }
+            if (j >= len || s.charAt(j) != '$') return i;
+            String tag = s.substring(i, j + 1);
+            int close = s.indexOf(tag, j + 1);
+            return close < 0 ? len : close + tag.length();
+        }
+
+        /** Oracle q'[...]', q'{...}', q'!...!': i if the q at i does not open one. */
+        private int closeQQuote(int i) {
+            if (i + 2 >= len || s.charAt(i + 1) != '\'') return i;
+            char open = s.charAt(i + 2);
+            char close;
+            switch (open) {
+                case '[': close = ']'; break;
+                case '{': close = '}'; break;
+                case '<': close = '>'; break;
+                case '(': close = ')'; break;
+                default: close = open;
+            }
+            if (Character.isWhitespace(open)) return i;
+            int j = i + 3;
+            while (j + 1 < len) {
+                if (s.charAt(j) == close && s.charAt(j + 1) == '\'') return j + 2;
+                j++;
+            }
+            return len;
+        }
+
+        int wordEnd(int i) {
+            while (i < len && isWordPart(s.charAt(i))) i++;
+            return i;
+        }
+
+        /** 12, 1.5, .5, 1e-3: digits, an optional fraction and an optional exponent. */
+        private int numberEnd(int i) {
+            while (isDigit(i)) i++;
+            if (i < len && s.charAt(i) == '.') {
+                i++;
+                while (isDigit(i)) i++;
+            }
+            if (i < len && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+                int j = i + 1;
+                if (j < len && (s.charAt(j) == '+' || s.charAt(j) == '-')) j++;
+                if (isDigit(j)) {
+                    i = j;
+                    while (isDigit(i)) i++;
+                }
+            }
+            return i;
+        }
+
+        private boolean isDigit(int i) {
+            return i < len && s.charAt(i) >= '0' && s.charAt(i) <= '9';
+        }
+
+        private boolean isWord(int from, int to, String upper) {
+            return to - from == upper.length() && s.regionMatches(true, from, upper, 0, upper.length());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.alvinliu.dbmcp.core;
+
+/**
+ * A string literal taken out of the SQL by auto-parameterization on PostgreSQL. It is bound with its type left to the
+ * server (setObject with Types.OTHER), as the literal was, so '2024-01-01' still compares with a date column and
+ * 'a0eebc99-...' with a uuid. A varchar bind would fail there with "operator does not exist".
+ */
+public final class UntypedString {
+    private final String value;
+
+    public UntypedString(String value) {
+        this.value = value;
+    }
+
+    public String getValue() { return value; }
+
+    @Override
+    public String toString() { return value; }
+}
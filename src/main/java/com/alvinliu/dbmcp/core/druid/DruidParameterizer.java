@@ -0,0 +1,275 @@
+package com.alvinliu.dbmcp.core.druid;
+
+import com.alibaba.druid.DbType;
+import com.alibaba.druid.sql.SQLUtils;
+import com.alibaba.druid.sql.ast.SQLExpr;
+import com.alibaba.druid.sql.ast.SQLObject;
+import com.alibaba.druid.sql.ast.SQLReplaceable;
+import com.alibaba.druid.sql.ast.SQLStatement;
+import com.alibaba.druid.sql.ast.expr.SQLBetweenExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOpExpr;
+import com.alibaba.druid.sql.ast.expr.SQLBinaryOperator;
+import com.alibaba.druid.sql.ast.expr.SQLCharExpr;
+import com.alibaba.druid.sql.ast.expr.SQLInListExpr;
+import com.alibaba.druid.sql.ast.expr.SQLIntegerExpr;
+import com.alibaba.druid.sql.ast.expr.SQLLiteralExpr;
+import com.alibaba.druid.sql.ast.expr.SQLNumberExpr;
+import com.alibaba.druid.sql.ast.expr.SQLVariantRefExpr;
+import com.alibaba.druid.sql.ast.statement.SQLDeleteStatement;
+import com.alibaba.druid.sql.ast.statement.SQLInsertStatement;
+import com.alibaba.druid.sql.ast.statement.SQLSelectStatement;
+import com.alibaba.druid.sql.ast.statement.SQLUpdateSetItem;
+import com.alibaba.druid.sql.ast.statement.SQLUpdateStatement;
+import com.alibaba.druid.sql.dialect.db2.visitor.DB2ASTVisitor;
+import com.alibaba.druid.sql.dialect.h2.visitor.H2ASTVisitor;
+import com.alibaba.druid.sql.dialect.mysql.visitor.MySqlASTVisitor;
+import com.alibaba.druid.sql.dialect.oracle.visitor.OracleASTVisitor;
+import com.alibaba.druid.sql.dialect.postgresql.visitor.PGASTVisitor;
+import com.alibaba.druid.sql.dialect.sqlserver.visitor.SQLServerASTVisitor;
+import com.alibaba.druid.sql.visitor.SQLASTVisitorAdapter;
+import com.alvinliu.dbmcp.core.SqlScript;
+import com.alvinliu.dbmcp.core.UntypedString;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replaces the literals of a parsed SELECT/INSERT/UPDATE/DELETE with ? binds, so statements that differ only in
+ * their values share one SQL text (and one parse and plan on the database). Only values are replaced: literals
+ * compared with a column (=, &lt;&gt;, &lt;, LIKE, ...), IN lists, BETWEEN bounds, INSERT VALUES and UPDATE SET values.
+ * Literals that change the meaning of the statement when bound (ORDER BY 1, LIMIT, select list, function arguments
+ * such as date formats) and typed literals (DATE '...') stay in the text.
+ * String literals depend on the dialect: on PostgreSQL they are bound untyped ({@link UntypedString}) so the server
+ * still infers date, uuid, enum or jsonb from the column; on Oracle they stay in the text, because a varchar bind
+ * compared with a CHAR column loses blank-padded comparison and silently matches fewer rows.
+ * The binds go into the statement as written: Druid only finds the literals (printing the AST with a marker in
+ * place of each), and the reprint must match the original token for token apart from them, so what runs is what was
+ * reviewed. Only plain '...' strings without backslashes and plain numbers are bound; escaped or prefixed strings
+ * (E'...', U&amp;'...', N'...') keep their dialect's meaning by staying in the text.
+ * Druid's ParameterizedOutputVisitor is not used because it binds all of those as well.
+ */
+final class DruidParameterizer {
+
+    /** Printed as :dbmcp_pN in place of each replaced literal, then matched against the original text. */
+    private static final String MARKER = "dbmcp_p";
+
+    private static final Set<SQLBinaryOperator> COMPARISONS = EnumSet.of(
+        SQLBinaryOperator.Equality, SQLBinaryOperator.NotEqual, SQLBinaryOperator.LessThanOrGreater,
+        SQLBinaryOperator.GreaterThan, SQLBinaryOperator.GreaterThanOrEqual,
+        SQLBinaryOperator.LessThan, SQLBinaryOperator.LessThanOrEqual,
+        SQLBinaryOperator.Like, SQLBinaryOperator.NotLike);
+
+    private DruidParameterizer() {
+    }
+
+    /**
+     * Parameterize sql, the text stmt was parsed from; stmt is changed in place. Returns sql with ? binds and fills
+     * parameters, or returns null (leaving parameters empty) if the statement has no value literals or cannot be
+     * parameterized safely.
+     */
+    static String parameterize(SQLStatement stmt, String sql, DbType dbType, List<Object> parameters) {
+        if (!(stmt instanceof SQLSelectStatement || stmt instanceof SQLInsertStatement
+            || stmt instanceof SQLUpdateStatement || stmt instanceof SQLDeleteStatement)) {
+            return null;
+        }
+        LiteralCollector collector = new LiteralCollector();
+        try {
+            stmt.accept(collector);
+        } catch (RuntimeException e) {
+            // a dialect whose visitor interface the collector does not implement
+            return null;
+        }
+        List<Object> values = new ArrayList<>();
+        for (SQLExpr literal : collector.literals) {
+            SQLObject parent = literal.getParent();
+            if (!isValuePosition(literal, parent)) continue;
+            Object value = valueOf(literal, dbType);
+            if (value == null) continue;
+            if (((SQLReplaceable) parent).replace(literal, new SQLVariantRefExpr(":" + MARKER + values.size()))) {
+                values.add(value);
+            }
+        }
+        if (values.isEmpty()) return null;
+        String printed = SQLUtils.toSQLString(stmt, dbType).trim();
+        return bindLiterals(sql, SqlScript.tokens(sql, dbType), SqlScript.tokens(printed, dbType), values, parameters);
+    }
+
+    private static boolean isValuePosition(SQLExpr literal, SQLObject parent) {
+        if (!(parent instanceof SQLReplaceable)) return false;
+        if (parent instanceof SQLBinaryOpExpr) {
+            SQLBinaryOpExpr op = (SQLBinaryOpExpr) parent;
+            SQLExpr other = op.getLeft() == literal ? op.getRight() : op.getLeft();
+            // 1 = 1 and the like stay as written
+            return COMPARISONS.contains(op.getOperator()) && !(other instanceof SQLLiteralExpr);
+        }
+        if (parent instanceof SQLInListExpr) return ((SQLInListExpr) parent).getTargetList().contains(literal);
+        if (parent instanceof SQLBetweenExpr) {
+            SQLBetweenExpr between = (SQLBetweenExpr) parent;
+            return between.getBeginExpr() == literal || between.getEndExpr() == literal;
+        }
+        if (parent instanceof SQLInsertStatement.ValuesClause) return true;
+        if (parent instanceof SQLUpdateSetItem) return ((SQLUpdateSetItem) parent).getValue() == literal;
+        return false;
+    }
+
+    private static Object valueOf(SQLExpr literal, DbType dbType) {
+        if (literal instanceof SQLCharExpr) {
+            String text = ((SQLCharExpr) literal).getText();
+            if (isOracle(dbType)) return null;
+            return isPostgres(dbType) ? new UntypedString(text) : text;
+        }
+        Number n = literal instanceof SQLIntegerExpr ? ((SQLIntegerExpr) literal).getNumber()
+            : ((SQLNumberExpr) literal).getNumber();
+        if (n instanceof Integer || n instanceof Long) return n.longValue();
+        if (n instanceof BigInteger) return new BigDecimal((BigInteger) n);
+        if (n instanceof BigDecimal) return n;
+        // a double literal (1e3) has no exact decimal form; leave it in the text
+        return null;
+    }
+
+    private static boolean isPostgres(DbType dbType) {
+        return dbType == DbType.postgresql || dbType == DbType.greenplum || dbType == DbType.edb
+            || dbType == DbType.kingbase || dbType == DbType.highgo || dbType == DbType.gaussdb;
+    }
+
+    private static boolean isOracle(DbType dbType) {
+        return dbType == DbType.oracle || dbType == DbType.oceanbase_oracle || dbType == DbType.ali_oracle
+            || dbType == DbType.dm;
+    }
+
+    /**
+     * Walk the reprint and the original tokens side by side and put ? into sql where a marker meets a literal the
+     * original spells plainly, adding its value to parameters. Returns null if the two differ anywhere else (Druid
+     * rewrote something) or the original already has a ? (e.g. PostgreSQL's jsonb operator), which a prepared
+     * statement would take for a bind.
+     */
+    private static String bindLiterals(String sql, List<SqlScript.Token> source, List<SqlScript.Token> printed,
+                                       List<Object> values, List<Object> parameters) {
+        StringBuilder out = new StringBuilder(sql.length());
+        List<Object> ordered = new ArrayList<>(values.size());
+        int copied = 0;
+        int s = 0;
+        for (int p = 0; p < printed.size(); p++) {
+            SqlScript.Token t = printed.get(p);
+            int marker = markerAt(printed, p);
+            if (marker < 0) {
+                if (s >= source.size() || !sameToken(t, source.get(s)) || t.is('?')) return null;
+                s++;
+                continue;
+            }
+            p++;
+            int n = literalLength(source, s);
+            if (n == 0) return null;
+            Object written = plainValue(source, s, n);
+            if (written != null) {
+                Object value = values.get(marker);
+                if (!sameValue(written, value)) return null;
+                out.append(sql, copied, source.get(s).getStart()).append('?');
+                copied = source.get(s + n - 1).getEnd();
+                ordered.add(value);
+            }
+            s += n;
+        }
+        if (s != source.size() || ordered.isEmpty()) return null;
+        out.append(sql, copied, sql.length());
+        parameters.addAll(ordered);
+        return out.toString();
+    }
+
+    /** Index of the :dbmcp_pN marker starting at token p, or -1. */
+    private static int markerAt(List<SqlScript.Token> tokens, int p) {
+        if (!tokens.get(p).is(':') || p + 1 >= tokens.size()) return -1;
+        SqlScript.Token name = tokens.get(p + 1);
+        String text = name.getText();
+        if (name.getStart() != tokens.get(p).getEnd() || !text.startsWith(MARKER)) return -1;
+        try {
+            return Integer.parseInt(text.substring(MARKER.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean sameToken(SqlScript.Token a, SqlScript.Token b) {
+        if (a.getKind() != b.getKind()) return false;
+        return a.getKind() == SqlScript.Token.Kind.WORD ? a.getText().equalsIgnoreCase(b.getText())
+            : a.getText().equals(b.getText());
+    }
+
+    /** Tokens of the literal starting at source[s]: 5, - 5, '...', or a prefixed string (E'...', N'...', U&amp;'...'); 0 if none. */
+    private static int literalLength(List<SqlScript.Token> source, int s) {
+        if (s >= source.size()) return 0;
+        SqlScript.Token t = source.get(s);
+        SqlScript.Token next = s + 1 < source.size() ? source.get(s + 1) : null;
+        switch (t.getKind()) {
+            case NUMBER:
+            case QUOTED:
+                return 1;
+            case SYMBOL:
+                return t.is('-') && next != null && next.getKind() == SqlScript.Token.Kind.NUMBER ? 2 : 0;
+            case WORD:
+                if (next == null || next.getStart() != t.getEnd()) return 0;
+                if (next.getKind() == SqlScript.Token.Kind.QUOTED) return 2;
+                SqlScript.Token after = s + 2 < source.size() ? source.get(s + 2) : null;
+                return next.is('&') && after != null && after.getKind() == SqlScript.Token.Kind.QUOTED
+                    && after.getStart() == next.getEnd() ? 3 : 0;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * The value of a literal spelled plainly: a number without exponent, or a '...' string without backslashes
+     * ('' is a quote in every dialect). Null for anything else, which stays in the text.
+     */
+    private static Object plainValue(List<SqlScript.Token> source, int s, int n) {
+        SqlScript.Token last = source.get(s + n - 1);
+        String text = last.getText();
+        if (last.getKind() == SqlScript.Token.Kind.NUMBER) {
+            if (text.indexOf('e') >= 0 || text.indexOf('E') >= 0) return null;
+            BigDecimal d = new BigDecimal(text);
+            return n == 2 ? d.negate() : d;
+        }
+        if (n != 1 || text.length() < 2 || text.charAt(0) != '\'' || text.charAt(text.length() - 1) != '\''
+            || text.indexOf('\\') >= 0) {
+            return null;
+        }
+        return text.substring(1, text.length() - 1).replace("''", "'");
+    }
+
+    /** The original spelling and Druid's value agree (so Druid did not fold or decode anything on the way). */
+    private static boolean sameValue(Object written, Object value) {
+        if (written instanceof BigDecimal) {
+            return value instanceof Number && ((BigDecimal) written).compareTo(new BigDecimal(value.toString())) == 0;
+        }
+        Object text = value instanceof UntypedString ? ((UntypedString) value).getValue() : value;
+        return written.equals(text);
+    }
+
+    /** Collects number and string literals; implements the dialect visitors so their statements accept it. */
+    private static final class LiteralCollector extends SQLASTVisitorAdapter
+        implements MySqlASTVisitor, OracleASTVisitor, PGASTVisitor, SQLServerASTVisitor, DB2ASTVisitor, H2ASTVisitor {
+        final List<SQLExpr> literals = new ArrayList<>();
+
+        @Override
+        public boolean visit(SQLIntegerExpr x) {
+            literals.add(x);
+            return false;
+        }
+
+        @Override
+        public boolean visit(SQLNumberExpr x) {
+            literals.add(x);
+            return false;
+        }
+
+        @Override
+        public boolean visit(SQLCharExpr x) {
+            literals.add(x);
+            return false;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.alibaba.druid.sql.ast.statement.*;
 import com.alvinliu.dbmcp.core.AnalysisResult;
 import com.alvinliu.dbmcp.core.DangerKeywordMatcher;
 import com.alvinliu.dbmcp.core.SqlAnalyzer;
+import com.alvinliu.dbmcp.core.SqlScript;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -16,25 +17,39 @@ import java.util.List;
 import java.util.Set;
 
 /**
- * SQL analyzer using Alibaba Druid: parse + statement type + whole_text/command_match.
+ * SQL analyzer using Alibaba Druid: parse + statement type + whole_text/command_match, plus the statement split
+ * ({@link SqlScript}) the executor runs.
  */
 public class DruidSqlAnalyzer implements SqlAnalyzer {
 
     private final DbType dbType;
+    /** As configured (null if unset): Druid parses unknown dialects as MySQL, the lexer with generic rules only. */
+    private final DbType scriptDbType;
     private final List<String> dangerKeywordsWholeText;
     private final List<String> dangerKeywordsAst;
+    private final boolean parameterize;
 
     public DruidSqlAnalyzer(DbType dbType, List<String> dangerKeywordsWholeText,
                             List<String> dangerKeywordsAst) {
+        this(dbType, dangerKeywordsWholeText, dangerKeywordsAst, false);
+    }
+
+    /** With parameterize, a single SELECT/INSERT/UPDATE/DELETE also gets its parameterized form (see {@link DruidParameterizer}). */
+    public DruidSqlAnalyzer(DbType dbType, List<String> dangerKeywordsWholeText,
+                            List<String> dangerKeywordsAst, boolean parameterize) {
         this.dbType = dbType != null ? dbType : DbType.mysql;
+        this.scriptDbType = dbType;
         this.dangerKeywordsWholeText = dangerKeywordsWholeText != null ? dangerKeywordsWholeText : Collections.emptyList();
         this.dangerKeywordsAst = dangerKeywordsAst != null ? dangerKeywordsAst : Collections.emptyList();
+        this.parameterize = parameterize;
     }
 
     @Override
     public AnalysisResult analyze(String sql) {
         AnalysisResult r = new AnalysisResult();
         r.setOriginalSQL(sql);
+        SqlScript script = SqlScript.split(sql, scriptDbType);
+        r.setScript(script);
 
         if (sql == null || sql.isBlank()) {
             r.setMatchedKeywords(Collections.emptyList());
@@ -56,7 +71,7 @@ public class DruidSqlAnalyzer implements SqlAnalyzer {
         try {
             List<SQLStatement> stmts = SQLUtils.parseStatements(trimmed, dbType);
             if (stmts == null || stmts.isEmpty()) {
-                parseFailedRequireReview(r, trimmed);
+                parseFailedRequireReview(r, trimmed, script);
                 return r;
             }
             // 1) whole_text_match on original -> review keywords (trigger review if hit)
@@ -75,7 +90,7 @@ public class DruidSqlAnalyzer implements SqlAnalyzer {
                     matchedKeywords.add(kw);
             }
             dedupeKeywords(matchedKeywords);
-            boolean multiStatement = stmts.size() > 1;
+            boolean multiStatement = stmts.size() > 1 || script.size() > 1;
             List<String> matchedActions = new ArrayList<>();
             Set<String> actionSeen = new HashSet<>();
             boolean[] ddlRef = new boolean[1];
@@ -100,15 +115,24 @@ public class DruidSqlAnalyzer implements SqlAnalyzer {
             r.setDdl(ddl);
             r.setStatementType(matchedActions.isEmpty() ? (firstType != null ? firstType : "UNKNOWN") : matchedActions.get(0));
             r.setDangerous(!matchedKeywords.isEmpty() || !matchedActions.isEmpty());
+            if (parameterize && !multiStatement && !containsPLSQL && script.size() == 1) {
+                // rewrites the AST, so after everything above has been taken from it
+                List<Object> parameters = new ArrayList<>();
+                String parameterized = DruidParameterizer.parameterize(stmts.get(0), script.get(0).getText(), dbType, parameters);
+                if (parameterized != null) {
+                    r.setParameterizedSql(parameterized);
+                    r.setParameters(parameters);
+                }
+            }
             return r;
         } catch (Exception e) {
-            parseFailedRequireReview(r, trimmed);
+            parseFailedRequireReview(r, trimmed, script);
             return r;
         }
     }
 
     /** Parse failed: merge command_match keywords into whole_text, run whole_text_match on original; preview shows original. */
-    private void parseFailedRequireReview(AnalysisResult r, String trimmed) {
+    private void parseFailedRequireReview(AnalysisResult r, String trimmed, SqlScript script) {
         List<String> merged = new ArrayList<>(dangerKeywordsWholeText);
         merged.addAll(dangerKeywordsAst);
         List<String> onOriginal = new ArrayList<>(DangerKeywordMatcher.matchWholeText(trimmed, merged));
@@ -118,7 +142,7 @@ public class DruidSqlAnalyzer implements SqlAnalyzer {
         r.setNormalizedSQL(trimmed);
         r.setPreviewSql(trimmed);
         r.setParseSucceeded(false);
-        r.setMultiStatement(trimmed.contains(";"));
+        r.setMultiStatement(script.size() > 1);
         r.setContainsPLSQL(false);
         r.setPlsqlCreationDDL(false);
         r.setDdl(true);
@@ -0,0 +1,148 @@
+package com.alvinliu.dbmcp.daemon;
+
+import com.alvinliu.dbmcp.config.Config;
+import com.alvinliu.dbmcp.config.ConfigLoader;
+import com.alvinliu.dbmcp.jdbc.JdbcPool;
+import com.alvinliu.dbmcp.mcp.McpServer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long-lived server behind a Unix domain socket: one JVM holds the JDBC pools, analyzers and audit log, and each
+ * {@link StdioShim} that connects is served as its own MCP session. At most one daemon runs per config file (path
+ * and contents, guarded by a lock file next to the socket); it exits after server.daemon_idle_timeout_ms with no
+ * client attached, or as soon as none is attached once the config has changed (new shims start a daemon of their own).
+ */
+public final class Daemon {
+    private static final long IDLE_CHECK_MS = 10_000;
+
+    private final McpServer server;
+    private final Path configPath;
+    private final String configKey;
+    private final Path socketPath;
+    private final ServerSocketChannel listener;
+    private final AtomicInteger clients = new AtomicInteger();
+    private volatile long lastDetachMillis = System.currentTimeMillis();
+    private volatile boolean stopping;
+
+    private Daemon(McpServer server, Path configPath, String configKey, Path socketPath, ServerSocketChannel listener) {
+        this.server = server;
+        this.configPath = configPath;
+        this.configKey = configKey;
+        this.socketPath = socketPath;
+        this.listener = listener;
+    }
+
+    /** Run the daemon for a config file until idle timeout or termination. */
+    public static void run(Path configPath) throws IOException {
+        if (!UnixSockets.isSupported()) {
+            throw new IOException("daemon mode needs Unix domain sockets (Java 16+)");
+        }
+        String configKey = UnixSockets.configKey(configPath);
+        Path socketPath = UnixSockets.socketPathFor(configPath);
+        Path lockPath = Paths.get(socketPath + ".lock");
+        try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = lockChannel.tryLock()) {
+            if (lock == null) {
+                System.err.println("[db_mcp] daemon already running for " + configPath);
+                return;
+            }
+            Config config = ConfigLoader.loadFromFile(configPath);
+            JdbcPool pool = new JdbcPool(config);
+            McpServer server = new McpServer(config, pool);
+            // we hold the lock, so a leftover socket file belongs to a daemon that died
+            Files.deleteIfExists(socketPath);
+            ServerSocketChannel listener = UnixSockets.bind(socketPath);
+            restrictToOwner(socketPath);
+            Daemon d = new Daemon(server, configPath, configKey, socketPath, listener);
+            Runtime.getRuntime().addShutdownHook(new Thread(d::stop));
+            System.err.println("[db_mcp] daemon listening on " + socketPath);
+            d.acceptLoop(config.getServer().getDaemonIdleTimeoutMs());
+        }
+    }
+
+    private void acceptLoop(long idleTimeoutMs) {
+        ScheduledExecutorService idleTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-mcp-idle");
+            t.setDaemon(true);
+            return t;
+        });
+        idleTimer.scheduleWithFixedDelay(() -> {
+            if (clients.get() != 0) return;
+            if (idleTimeoutMs > 0 && System.currentTimeMillis() - lastDetachMillis >= idleTimeoutMs) {
+                System.err.println("[db_mcp] daemon idle for " + idleTimeoutMs + " ms, exiting");
+                stop();
+            } else if (configChanged()) {
+                System.err.println("[db_mcp] " + configPath + " changed, exiting");
+                stop();
+            }
+        }, IDLE_CHECK_MS, IDLE_CHECK_MS, TimeUnit.MILLISECONDS);
+        try {
+            while (!stopping) {
+                SocketChannel ch;
+                try {
+                    ch = listener.accept();
+                } catch (IOException e) {
+                    if (!stopping) System.err.println("[db_mcp] daemon accept failed: " + e.getMessage());
+                    break;
+                }
+                clients.incrementAndGet();
+                Thread t = new Thread(() -> serveClient(ch), "db-mcp-client");
+                t.start();
+            }
+        } finally {
+            idleTimer.shutdownNow();
+            stop();
+        }
+    }
+
+    private void serveClient(SocketChannel ch) {
+        try (SocketChannel c = ch) {
+            server.serve(UnixSockets.inputStream(c), UnixSockets.outputStream(c));
+        } catch (Exception e) {
+            System.err.println("[db_mcp] daemon client error: " + e.getMessage());
+        } finally {
+            lastDetachMillis = System.currentTimeMillis();
+            clients.decrementAndGet();
+        }
+    }
+
+    private synchronized void stop() {
+        if (stopping) return;
+        stopping = true;
+        try { listener.close(); } catch (IOException ignored) {}
+        try { Files.deleteIfExists(socketPath); } catch (IOException ignored) {}
+        server.close();
+    }
+
+    /** New shims look for a socket named after the current contents; this one no longer gets clients. */
+    private boolean configChanged() {
+        try {
+            return !configKey.equals(UnixSockets.configKey(configPath));
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /** The socket gives access to every configured database: keep other local users out (as its directory does). */
+    private static void restrictToOwner(Path socketPath) {
+        try {
+            Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException | IOException e) {
+            // non-POSIX file system (Windows): the socket inherits the temp directory's ACL
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.alvinliu.dbmcp.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin stdio entry point for MCP clients: connects to the {@link Daemon} for this config and relays JSON-RPC bytes
+ * between stdin/stdout and the socket, starting the daemon first if none is running. It never loads the config,
+ * drivers or pools itself, so a new client session costs one small JVM start instead of a full server warmup.
+ */
+public final class StdioShim {
+    /** How long to wait for a freshly started daemon to open its socket (it connects to every database first). */
+    private static final long STARTUP_WAIT_MS = 60_000;
+
+    private StdioShim() {}
+
+    /**
+     * Relay stdio to the daemon. Returns false without touching stdin/stdout if no daemon could be reached; the
+     * caller then runs the server in-process.
+     */
+    public static boolean run(Path configPath) throws IOException {
+        if (!UnixSockets.isSupported()) {
+            System.err.println("[db_mcp] Unix domain sockets need Java 16+; running in-process");
+            return false;
+        }
+        Path socketPath;
+        try {
+            socketPath = UnixSockets.socketPathFor(configPath);
+        } catch (IOException e) {
+            System.err.println("[db_mcp] no private directory for the daemon socket (" + e.getMessage()
+                + "); running in-process");
+            return false;
+        }
+        SocketChannel ch = tryConnect(socketPath);
+        if (ch == null) {
+            startDaemon(configPath, socketPath);
+            ch = awaitDaemon(socketPath);
+        }
+        if (ch == null) {
+            System.err.println("[db_mcp] daemon did not start (see " + logPath(socketPath) + "); running in-process");
+            return false;
+        }
+        relay(ch);
+        return true;
+    }
+
+    private static void relay(SocketChannel ch) throws IOException {
+        try (SocketChannel c = ch) {
+            Thread upstream = new Thread(() -> {
+                try {
+                    copy(System.in, UnixSockets.outputStream(c), false);
+                } catch (IOException ignored) {
+                    // daemon went away; the downstream copy sees EOF too
+                } finally {
+                    // stdin closed: let the daemon finish this session (it cancels in-flight calls) and hang up
+                    try { c.shutdownOutput(); } catch (IOException ignored) {}
+                }
+            }, "db-mcp-shim-in");
+            upstream.setDaemon(true);
+            upstream.start();
+            copy(UnixSockets.inputStream(c), System.out, true);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, boolean flushEachRead) throws IOException {
+        byte[] buf = new byte[1 << 16];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+            if (flushEachRead) out.flush();
+        }
+        out.flush();
+    }
+
+    /** Connect to the daemon's socket; null if there is none yet or it is not this user's (all SQL goes through it). */
+    private static SocketChannel tryConnect(Path socketPath) {
+        if (!socketPath.toFile().exists()) return null;
+        try {
+            UnixSockets.checkOwner(socketPath);
+            return UnixSockets.connect(socketPath);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static SocketChannel awaitDaemon(Path socketPath) {
+        long deadline = System.currentTimeMillis() + STARTUP_WAIT_MS;
+        long delay = 20;
+        while (System.currentTimeMillis() < deadline) {
+            SocketChannel ch = tryConnect(socketPath);
+            if (ch != null) return ch;
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            delay = Math.min(delay * 2, 500);
+        }
+        return null;
+    }
+
+    /** Start the daemon detached, with this JVM's java binary and classpath; its stderr goes to a log file. */
+    private static void startDaemon(Path configPath, Path socketPath) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> cmd = new ArrayList<>();
+        cmd.add(java);
+        cmd.add("-cp");
+        cmd.add(System.getProperty("java.class.path"));
+        cmd.add("com.alvinliu.dbmcp.DBMCPServer");
+        cmd.add("--daemon");
+        ProcessBuilder pb = new ProcessBuilder(cmd);
+        pb.environment().put("DB_MCP_CONFIG", configPath.toAbsolutePath().toString());
+        pb.redirectInput(ProcessBuilder.Redirect.from(new File(isWindows() ? "NUL" : "/dev/null")));
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.appendTo(logPath(socketPath).toFile()));
+        pb.start();
+    }
+
+    private static Path logPath(Path socketPath) {
+        return Paths.get(socketPath + ".log");
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name", "").toLowerCase().contains("win");
+    }
+}
@@ -0,0 +1,186 @@
+package com.alvinliu.dbmcp.daemon;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Unix domain socket helpers. The API is JDK 16+ and we compile for 11, so it is looked up reflectively;
+ * {@link #isSupported()} is false on older runtimes and callers fall back to running in-process.
+ */
+final class UnixSockets {
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIR = PosixFilePermissions.fromString("rwx------");
+
+    private UnixSockets() {}
+
+    static boolean isSupported() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Socket path for a config file: one daemon per user, config file and config contents, so an edited config gets
+     * a new daemon instead of the one still serving the old settings. Kept in {@link #runtimeDir()} and short, since
+     * socket paths are limited to ~100 bytes.
+     */
+    static Path socketPathFor(Path configPath) throws IOException {
+        return runtimeDir().resolve(configKey(configPath) + ".sock");
+    }
+
+    /** Hash of the config file's absolute path and its current contents. */
+    static String configKey(Path configPath) throws IOException {
+        Path abs = configPath.toAbsolutePath().normalize();
+        byte[] name = abs.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] contents = Files.readAllBytes(abs);
+        byte[] key = Arrays.copyOf(name, name.length + 1 + contents.length);
+        System.arraycopy(contents, 0, key, name.length + 1, contents.length);
+        return shortHash(key);
+    }
+
+    /**
+     * Directory for the sockets and their lock and log files, usable by this user only: $XDG_RUNTIME_DIR/db_mcp,
+     * else db_mcp-&lt;user&gt; in the temp dir. It is created 0700 before anything goes in it; an existing one must
+     * belong to this user and is narrowed to 0700, so another local user cannot plant a socket or lock file there.
+     */
+    static Path runtimeDir() throws IOException {
+        String xdg = System.getenv("XDG_RUNTIME_DIR");
+        String user = System.getProperty("user.name", "user").replaceAll("[^A-Za-z0-9_.-]", "_");
+        Path dir = xdg != null && !xdg.isBlank() && Files.isDirectory(Paths.get(xdg))
+            ? Paths.get(xdg, "db_mcp")
+            : Paths.get(System.getProperty("java.io.tmpdir"), "db_mcp-" + user);
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIR));
+        } catch (FileAlreadyExistsException e) {
+            // checked below
+        } catch (UnsupportedOperationException e) {
+            // non-POSIX file system (Windows): the temp directory is already per user
+            Files.createDirectories(dir);
+            return dir;
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) throw new IOException(dir + " is not a directory");
+        checkOwner(dir);
+        Files.setPosixFilePermissions(dir, OWNER_ONLY_DIR);
+        return dir;
+    }
+
+    /** Fails unless path itself (not a link target) belongs to the user running this JVM; no-op without POSIX. */
+    static void checkOwner(Path path) throws IOException {
+        if (!path.getFileSystem().supportedFileAttributeViews().contains("posix")) return;
+        UserPrincipal owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS);
+        UserPrincipal me = path.getFileSystem().getUserPrincipalLookupService()
+            .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!owner.equals(me)) {
+            throw new IOException(path + " belongs to " + owner.getName() + ", not " + me.getName());
+        }
+    }
+
+    static SocketChannel connect(Path path) throws IOException {
+        SocketChannel ch = (SocketChannel) invokeOpen(SocketChannel.class);
+        try {
+            ch.connect(address(path));
+            return ch;
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    static ServerSocketChannel bind(Path path) throws IOException {
+        ServerSocketChannel ch = (ServerSocketChannel) invokeOpen(ServerSocketChannel.class);
+        try {
+            ch.bind(address(path));
+            return ch;
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Stream adapters that go straight to read/write on the channel. Channels.newInputStream/newOutputStream share
+     * the channel's blocking lock on some JDKs, which deadlocks a relay that reads and writes at the same time.
+     */
+    static InputStream inputStream(SocketChannel ch) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                int n = read(one, 0, 1);
+                return n < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                return ch.read(ByteBuffer.wrap(b, off, len));
+            }
+        };
+    }
+
+    static OutputStream outputStream(SocketChannel ch) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+        };
+    }
+
+    private static Object invokeOpen(Class<?> channelClass) throws IOException {
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            return channelClass.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException("Unix domain sockets not supported on this JVM (JDK 16+ required)", e);
+        }
+    }
+
+    private static SocketAddress address(Path path) throws IOException {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", Path.class).invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unix domain sockets not supported on this JVM (JDK 16+ required)", e);
+        }
+    }
+
+    private static String shortHash(byte[] b) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(b);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 6; i++) sb.append(String.format("%02x", d[i]));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(Arrays.hashCode(b));
+        }
+    }
+}
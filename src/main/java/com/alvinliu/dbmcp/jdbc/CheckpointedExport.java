@@ -0,0 +1,199 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.alvinliu.dbmcp.core.SqlScript;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Export that can be resumed after a failure. Rows are read in order of a key column; every {@link #CHECKPOINT_ROWS}
+ * rows (between two distinct keys) the output is flushed to disk and name.checkpoint.json records the last key
+ * written, the rows written and the byte offset reached in name.partial. A failed export (e.g. a dropped connection)
+ * keeps both files; running it again with resume truncates the partial file to the offset and continues with
+ * key &gt; last key instead of re-reading everything. With gzip each checkpoint ends a gzip member, so the offset is
+ * always a member boundary. The key must be ordered and never NULL; it need not be unique.
+ */
+public final class CheckpointedExport {
+    static final int CHECKPOINT_ROWS = 50_000;
+    /**
+     * Alias of the key column appended to the select list. The bare name would appear twice (once in q_.*), which
+     * Oracle rejects in ORDER BY with ORA-00960.
+     */
+    static final String KEY_ALIAS = "dbmcp_key_";
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private CheckpointedExport() {
+    }
+
+    public static final class Result {
+        private final long rowsWritten;
+        private final boolean resumed;
+        private final long resumedAfterRows;
+
+        Result(long rowsWritten, boolean resumed, long resumedAfterRows) {
+            this.rowsWritten = rowsWritten;
+            this.resumed = resumed;
+            this.resumedAfterRows = resumedAfterRows;
+        }
+
+        /** Rows in the finished file, including those written before a resume. */
+        public long getRowsWritten() { return rowsWritten; }
+
+        public boolean isResumed() { return resumed; }
+
+        /** Rows already in the file when this run resumed (0 if it started fresh). */
+        public long getResumedAfterRows() { return resumedAfterRows; }
+    }
+
+    /** Checkpoint manifest; a resume must match the sql, key, format and compression it was written for. */
+    private static final class Manifest {
+        String sql;
+        String checkpointColumn;
+        String format;
+        boolean gzip;
+        String lastKey;
+        String lastKeyType;
+        long rowsWritten;
+        long byteOffset;
+        String updatedAt;
+    }
+
+    static Path manifestPath(Path filePath) {
+        return filePath.resolveSibling(filePath.getFileName() + ".checkpoint.json");
+    }
+
+    /**
+     * Export sql (a single SELECT) ordered by column to filePath in the named {@link TextRowFormats} format. With
+     * resume, continue from the checkpoint if there is one; without, any old checkpoint is discarded.
+     */
+    public static Result run(Connection conn, String sql, String column, Path filePath, String formatName, boolean gzip,
+                             boolean resume, ExecutionContext ctx) throws SQLException, IOException {
+        SqlScript script = JdbcExecutor.split(sql, ctx);
+        if (script.size() != 1) {
+            throw new SQLException("Checkpointed export needs a single SELECT statement");
+        }
+        sql = script.get(0).getText();
+        column = column.trim();
+        if (!PartitionedExport.COLUMN.matcher(column).matches()) throw new SQLException("Invalid checkpoint_column: " + column);
+
+        Path partial = ExportFiles.partialPath(filePath);
+        Path manifestPath = manifestPath(filePath);
+        Manifest m = resume ? readManifest(manifestPath) : null;
+        boolean resumed = m != null;
+        if (resumed) {
+            if (!sql.equals(m.sql) || !column.equals(m.checkpointColumn) || !formatName.equals(m.format) || gzip != m.gzip) {
+                throw new SQLException("Checkpoint " + manifestPath + " belongs to a different export (sql, checkpoint_column, "
+                    + "format or compression differ); delete it or export without resume");
+            }
+            if (!Files.exists(partial) || Files.size(partial) < m.byteOffset) {
+                throw new SQLException("Checkpoint " + manifestPath + " does not match " + partial
+                    + "; delete it or export without resume");
+            }
+        } else {
+            Files.deleteIfExists(manifestPath);
+            ExportFiles.discard(partial);
+            m = new Manifest();
+            m.sql = sql;
+            m.checkpointColumn = column;
+            m.format = formatName;
+            m.gzip = gzip;
+        }
+        long resumedAfterRows = m.rowsWritten;
+
+        String q = "SELECT q_.*, q_." + column + " AS " + KEY_ALIAS + " FROM (" + sql + ") q_"
+            + (m.lastKey != null ? " WHERE q_." + column + " > ?" : "") + " ORDER BY " + KEY_ALIAS;
+        long rows = m.rowsWritten;
+        boolean committed = false;
+        FetchStrategy.Scope scope = ctx.getFetchStrategy().begin(conn);
+        try {
+            try (ExportOutput out = new ExportOutput(partial, m.byteOffset, gzip, ctx);
+                 PreparedStatement ps = conn.prepareStatement(q, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ctx.getFetchStrategy().applyToExport(ps);
+                if (m.lastKey != null) KeyValues.bind(ps, 1, m.lastKey, m.lastKeyType);
+                ctx.register(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int keyIndex = meta.getColumnCount();
+                    String keyType = KeyValues.typeOf(meta.getColumnType(keyIndex));
+                    List<String> names = new ArrayList<>();
+                    int[] types = new int[keyIndex - 1];
+                    for (int i = 1; i < keyIndex; i++) {
+                        names.add(meta.getColumnLabel(i));
+                        types[i - 1] = meta.getColumnType(i);
+                    }
+                    // the key is the extra last column; formats only write the first names.size() columns
+                    RowFormat format = TextRowFormats.forName(formatName, !resumed);
+                    format.begin(out.writer, names, types);
+                    if (!resumed) checkpoint(m, manifestPath, out, null, 0);
+                    long sinceCheckpoint = 0;
+                    Object prev = null;
+                    while (rs.next()) {
+                        if (ctx.isCancelled()) throw ctx.cancelledException();
+                        Object key = KeyValues.read(rs, keyIndex, keyType);
+                        if (key == null) {
+                            throw new SQLException("checkpoint_column " + column + " is NULL in a row; checkpointed exports need a non-NULL key");
+                        }
+                        if (sinceCheckpoint >= CHECKPOINT_ROWS && !key.equals(prev)) {
+                            checkpoint(m, manifestPath, out, prev, rows);
+                            sinceCheckpoint = 0;
+                        }
+                        format.writeRow(out.writer, rs);
+                        rows++;
+                        sinceCheckpoint++;
+                        ctx.rowWritten();
+                        prev = key;
+                    }
+                    format.end(out.writer);
+                } catch (SQLException e) {
+                    if (ctx.isCancelled()) throw ctx.cancelledException();
+                    throw e;
+                } finally {
+                    ctx.unregister(ps);
+                }
+            }
+            // publish only after the try above has closed out (gzip trailer written, file flushed)
+            ExportFiles.commit(partial, filePath);
+            committed = true;
+            Files.deleteIfExists(manifestPath);
+            return new Result(rows, resumed, resumedAfterRows);
+        } finally {
+            scope.end(committed);
+            // without a checkpoint there is nothing to resume from
+            if (!committed && !Files.exists(manifestPath)) ExportFiles.discard(partial);
+        }
+    }
+
+    private static void checkpoint(Manifest m, Path manifestPath, ExportOutput out, Object key, long rows) throws IOException {
+        out.sync();
+        m.lastKeyType = KeyValues.type(key);
+        m.lastKey = KeyValues.format(key);
+        m.rowsWritten = rows;
+        m.byteOffset = out.offset();
+        m.updatedAt = Instant.now().toString();
+        Path tmp = manifestPath.resolveSibling(manifestPath.getFileName() + ".tmp");
+        Files.write(tmp, GSON.toJson(m).getBytes(StandardCharsets.UTF_8));
+        ExportFiles.commit(tmp, manifestPath);
+    }
+
+    private static Manifest readManifest(Path manifestPath) throws SQLException {
+        if (!Files.exists(manifestPath)) return null;
+        try {
+            return GSON.fromJson(new String(Files.readAllBytes(manifestPath), StandardCharsets.UTF_8), Manifest.class);
+        } catch (IOException | JsonParseException e) {
+            throw new SQLException("Cannot read checkpoint " + manifestPath + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Reads one result set column with the getter for its SQL type and encodes the value, the same way for every driver.
+ * Chosen once per column from the metadata by {@link ColumnCodecs}, then used for every row.
+ */
+interface ColumnCodec {
+
+    /**
+     * The value for an in-memory result (execute_sql, fetch_more): Long, Float, Double, BigDecimal, Boolean or String
+     * (dates and times ISO-8601, binary base64, other driver types as the driver's text), a {@link LobPreview} for a
+     * LOB cut to the preview size, or null. Gson and the columnar encoder only ever see these types.
+     */
+    Object read(ResultSet rs, int column) throws SQLException;
+
+    /** Write the value straight to JSON output without boxing it first. */
+    void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException;
+
+    /**
+     * Append the value as text for CSV and text exports (timestamps as 2024-01-31 10:15:00); appends nothing for NULL.
+     * Returns true if the text may need CSV quoting (strings and driver text), false for numbers, dates and base64.
+     */
+    boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException;
+}
@@ -0,0 +1,579 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * {@link ColumnCodec}s by java.sql.Types. Integers, decimals, floating point, booleans, dates, times, timestamps,
+ * character and binary columns are read with their typed getter (getLong, getBigDecimal, getTimestamp, ...), so
+ * driver classes such as oracle.sql.TIMESTAMP never reach the encoders. Other types (vendor types, JSON, UUID,
+ * arrays, time zones) go through getObject and are kept if they are plain values, else taken as the driver's text.
+ */
+final class ColumnCodecs {
+    /** Timestamps in CSV and text exports; JSON uses ISO-8601 with a 'T'. */
+    private static final DateTimeFormatter TEXT_TIMESTAMP = new DateTimeFormatterBuilder()
+        .append(DateTimeFormatter.ISO_LOCAL_DATE).appendLiteral(' ').append(DateTimeFormatter.ISO_LOCAL_TIME).toFormatter();
+
+    private ColumnCodecs() {
+    }
+
+    static ColumnCodec forType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return INTEGER;
+            case Types.BIGINT:
+                return BIGINT;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return DECIMAL;
+            case Types.REAL:
+                return REAL;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.DATE:
+                return DATE;
+            case Types.TIME:
+                return TIME;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return STRING;
+            case Types.CLOB:
+            case Types.NCLOB:
+                return CLOB;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return BINARY;
+            default:
+                // BIT may be a boolean or a bit string depending on the driver
+                return OBJECT;
+        }
+    }
+
+    static ColumnCodec[] forTypes(int[] sqlTypes) {
+        ColumnCodec[] codecs = new ColumnCodec[sqlTypes.length];
+        for (int i = 0; i < sqlTypes.length; i++) codecs[i] = forType(sqlTypes[i]);
+        return codecs;
+    }
+
+    /**
+     * As {@link #forTypes(int[])}, but CLOB, BLOB and LONGVARBINARY values longer than lobPreviewSize (characters for
+     * CLOBs, bytes otherwise) are read as a {@link LobPreview} of that size instead of in full; 0 reads whole values.
+     */
+    static ColumnCodec[] forTypes(int[] sqlTypes, int lobPreviewSize) {
+        ColumnCodec[] codecs = forTypes(sqlTypes);
+        if (lobPreviewSize <= 0) return codecs;
+        for (int i = 0; i < sqlTypes.length; i++) {
+            switch (sqlTypes[i]) {
+                case Types.CLOB:
+                case Types.NCLOB:
+                    codecs[i] = new ClobPreview(lobPreviewSize);
+                    break;
+                case Types.BLOB:
+                case Types.LONGVARBINARY:
+                    codecs[i] = new BinaryPreview(lobPreviewSize, sqlTypes[i] == Types.BLOB);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return codecs;
+    }
+
+    /** Release the LOB's resources on the server (Oracle temporary LOBs) once read; best effort. */
+    static void free(Clob clob) {
+        try {
+            clob.free();
+        } catch (SQLException | UnsupportedOperationException ignored) {
+            // driver without free(); the LOB goes with its result set
+        }
+    }
+
+    static void free(Blob blob) {
+        try {
+            blob.free();
+        } catch (SQLException | UnsupportedOperationException ignored) {
+            // driver without free(); the LOB goes with its result set
+        }
+    }
+
+    /** Whole CLOB as a string. */
+    static String clobToString(Clob clob) throws SQLException {
+        if (clob == null) return null;
+        try (Reader r = clob.getCharacterStream()) {
+            if (r == null) return null;
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while ((n = r.read(buf)) >= 0) sb.append(buf, 0, n);
+            return sb.toString();
+        } catch (IOException e) {
+            throw new SQLException("Failed to read CLOB", e);
+        }
+    }
+
+    private static final ColumnCodec INTEGER = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            long v = rs.getLong(column);
+            return rs.wasNull() ? null : (Object) v;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            long v = rs.getLong(column);
+            if (rs.wasNull()) out.nullValue();
+            else out.value(v);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            long v = rs.getLong(column);
+            if (!rs.wasNull()) out.append(v);
+            return false;
+        }
+    };
+
+    /** Like INTEGER, but unsigned 64-bit values (MySQL BIGINT UNSIGNED) do not fit a long; those come as BigDecimal. */
+    private static final ColumnCodec BIGINT = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            try {
+                long v = rs.getLong(column);
+                return rs.wasNull() ? null : (Object) v;
+            } catch (SQLException e) {
+                return wide(rs, column, e);
+            }
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            long v;
+            try {
+                v = rs.getLong(column);
+            } catch (SQLException e) {
+                out.value(wide(rs, column, e));
+                return;
+            }
+            if (rs.wasNull()) out.nullValue();
+            else out.value(v);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            long v;
+            try {
+                v = rs.getLong(column);
+            } catch (SQLException e) {
+                out.append(wide(rs, column, e).toPlainString());
+                return false;
+            }
+            if (!rs.wasNull()) out.append(v);
+            return false;
+        }
+
+        private BigDecimal wide(ResultSet rs, int column, SQLException cause) throws SQLException {
+            BigDecimal v = rs.getBigDecimal(column);
+            if (v == null) throw cause;
+            return v;
+        }
+    };
+
+    private static final ColumnCodec DECIMAL = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            return plain(rs.getBigDecimal(column));
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value(plain(rs.getBigDecimal(column)));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            BigDecimal v = rs.getBigDecimal(column);
+            if (v != null) out.append(v.toPlainString());
+            return false;
+        }
+
+        /** No negative scale (1E+3), so clients read an ordinary number. */
+        private BigDecimal plain(BigDecimal v) {
+            return v != null && v.scale() < 0 ? v.setScale(0) : v;
+        }
+    };
+
+    private static final ColumnCodec REAL = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            float v = rs.getFloat(column);
+            if (rs.wasNull()) return null;
+            return Float.isNaN(v) || Float.isInfinite(v) ? (Object) Float.toString(v) : (Object) v;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            float v = rs.getFloat(column);
+            if (rs.wasNull()) out.nullValue();
+            else if (Float.isNaN(v) || Float.isInfinite(v)) out.value(Float.toString(v));
+            else out.value(v);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            float v = rs.getFloat(column);
+            if (!rs.wasNull()) out.append(v);
+            return false;
+        }
+    };
+
+    private static final ColumnCodec DOUBLE = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            double v = rs.getDouble(column);
+            if (rs.wasNull()) return null;
+            return Double.isNaN(v) || Double.isInfinite(v) ? (Object) Double.toString(v) : (Object) v;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            double v = rs.getDouble(column);
+            if (rs.wasNull()) out.nullValue();
+            else if (Double.isNaN(v) || Double.isInfinite(v)) out.value(Double.toString(v));
+            else out.value(v);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            double v = rs.getDouble(column);
+            if (!rs.wasNull()) out.append(v);
+            return false;
+        }
+    };
+
+    private static final ColumnCodec BOOLEAN = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            boolean v = rs.getBoolean(column);
+            return rs.wasNull() ? null : (Object) v;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            boolean v = rs.getBoolean(column);
+            if (rs.wasNull()) out.nullValue();
+            else out.value(v);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            boolean v = rs.getBoolean(column);
+            if (!rs.wasNull()) out.append(v);
+            return false;
+        }
+    };
+
+    private static final ColumnCodec DATE = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            java.sql.Date v = rs.getDate(column);
+            return v != null ? v.toLocalDate().toString() : null;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value((String) read(rs, column));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            java.sql.Date v = rs.getDate(column);
+            if (v != null) out.append(v.toLocalDate());
+            return false;
+        }
+    };
+
+    private static final ColumnCodec TIME = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            Time v = rs.getTime(column);
+            return v != null ? DateTimeFormatter.ISO_LOCAL_TIME.format(v.toLocalTime()) : null;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value((String) read(rs, column));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            Time v = rs.getTime(column);
+            if (v != null) DateTimeFormatter.ISO_LOCAL_TIME.formatTo(v.toLocalTime(), out);
+            return false;
+        }
+    };
+
+    private static final ColumnCodec TIMESTAMP = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            Timestamp v = rs.getTimestamp(column);
+            return v != null ? DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(v.toLocalDateTime()) : null;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value((String) read(rs, column));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            Timestamp v = rs.getTimestamp(column);
+            if (v != null) TEXT_TIMESTAMP.formatTo(v.toLocalDateTime(), out);
+            return false;
+        }
+    };
+
+    private static final ColumnCodec STRING = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            return rs.getString(column);
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value(rs.getString(column));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            String v = rs.getString(column);
+            if (v != null) out.append(v);
+            return true;
+        }
+    };
+
+    private static final ColumnCodec CLOB = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            return clobToString(rs.getClob(column));
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value(rs.getString(column));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            String v = rs.getString(column);
+            if (v != null) out.append(v);
+            return true;
+        }
+    };
+
+    private static final ColumnCodec BINARY = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            byte[] v = rs.getBytes(column);
+            return v != null ? Base64.getEncoder().encodeToString(v) : null;
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            out.value((String) read(rs, column));
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            String v = (String) read(rs, column);
+            if (v != null) out.append(v);
+            return false;
+        }
+    };
+
+    /** Any other type: plain Java values are kept, driver-specific objects become the driver's text. */
+    private static final ColumnCodec OBJECT = new ColumnCodec() {
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            return value(rs, column, false);
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            Object v = value(rs, column, false);
+            if (v instanceof Boolean) out.value((Boolean) v);
+            else if (v instanceof Number) out.value((Number) v);
+            else out.value((String) v);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            Object v = value(rs, column, true);
+            if (v != null) out.append(v);
+            return v instanceof String;
+        }
+
+        private Object value(ResultSet rs, int column, boolean text) throws SQLException {
+            Object v = rs.getObject(column);
+            if (v == null || v instanceof Boolean || v instanceof String) return v;
+            if (v instanceof BigDecimal) {
+                BigDecimal d = (BigDecimal) v;
+                return d.scale() < 0 ? d.setScale(0) : d;
+            }
+            if (v instanceof Double || v instanceof Float) {
+                double d = ((Number) v).doubleValue();
+                return Double.isNaN(d) || Double.isInfinite(d) ? v.toString() : v;
+            }
+            if (v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+                return ((Number) v).longValue();
+            }
+            if (v instanceof byte[]) return Base64.getEncoder().encodeToString((byte[]) v);
+            if (v instanceof Blob) {
+                Blob b = (Blob) v;
+                return Base64.getEncoder().encodeToString(b.getBytes(1, (int) b.length()));
+            }
+            if (v instanceof Clob) return clobToString((Clob) v);
+            if (v instanceof Timestamp) {
+                return (text ? TEXT_TIMESTAMP : DateTimeFormatter.ISO_LOCAL_DATE_TIME).format(((Timestamp) v).toLocalDateTime());
+            }
+            if (v instanceof java.sql.Date) return ((java.sql.Date) v).toLocalDate().toString();
+            if (v instanceof Time) return DateTimeFormatter.ISO_LOCAL_TIME.format(((Time) v).toLocalTime());
+            if (v instanceof LocalDateTime) return (text ? TEXT_TIMESTAMP : DateTimeFormatter.ISO_LOCAL_DATE_TIME).format((LocalDateTime) v);
+            if (v instanceof OffsetDateTime) return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format((OffsetDateTime) v);
+            if (v instanceof ZonedDateTime) return DateTimeFormatter.ISO_ZONED_DATE_TIME.format((ZonedDateTime) v);
+            if (v instanceof LocalTime) return DateTimeFormatter.ISO_LOCAL_TIME.format((LocalTime) v);
+            if (v instanceof OffsetTime) return DateTimeFormatter.ISO_OFFSET_TIME.format((OffsetTime) v);
+            if (v instanceof TemporalAccessor) return v.toString();
+            // vendor types (oracle.sql.TIMESTAMPTZ, PGobject, UUID, arrays, ...): the driver's own text
+            String s = rs.getString(column);
+            return s != null ? s : v.toString();
+        }
+    };
+
+    /** In-memory CLOB: the whole text if it is at most limit characters, else a {@link LobPreview} of the first limit. */
+    private static final class ClobPreview implements ColumnCodec {
+        private final int limit;
+
+        ClobPreview(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            Clob clob = rs.getClob(column);
+            if (clob == null) return null;
+            try {
+                long length = clob.length();
+                if (length == 0) return "";
+                if (length <= limit) return clob.getSubString(1, (int) length);
+                return new LobPreview(clob.getSubString(1, limit), length);
+            } finally {
+                free(clob);
+            }
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            CLOB.writeJson(out, rs, column);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            return CLOB.appendText(out, rs, column);
+        }
+    }
+
+    /**
+     * In-memory BLOB or long binary column: base64 of the whole value if it is at most limit bytes, else a
+     * {@link LobPreview} of the first limit bytes. BLOBs are read through their locator (length without reading
+     * the value); LONGVARBINARY (MySQL BLOB types, Oracle LONG RAW) is streamed and the rest only counted.
+     */
+    private static final class BinaryPreview implements ColumnCodec {
+        private final int limit;
+        private final boolean locator;
+
+        BinaryPreview(int limit, boolean locator) {
+            this.limit = limit;
+            this.locator = locator;
+        }
+
+        @Override
+        public Object read(ResultSet rs, int column) throws SQLException {
+            return locator ? readBlob(rs, column) : readStream(rs, column);
+        }
+
+        private Object readBlob(ResultSet rs, int column) throws SQLException {
+            Blob blob = rs.getBlob(column);
+            if (blob == null) return null;
+            try {
+                long length = blob.length();
+                if (length == 0) return "";
+                byte[] head = blob.getBytes(1, (int) Math.min(length, limit));
+                String encoded = Base64.getEncoder().encodeToString(head);
+                return length <= limit ? encoded : new LobPreview(encoded, length);
+            } finally {
+                free(blob);
+            }
+        }
+
+        private Object readStream(ResultSet rs, int column) throws SQLException {
+            try (InputStream in = rs.getBinaryStream(column)) {
+                if (in == null) return null;
+                byte[] head = new byte[limit];
+                int n = 0;
+                int k;
+                while (n < limit && (k = in.read(head, n, limit - n)) >= 0) n += k;
+                long length = n;
+                byte[] skip = new byte[8192];
+                while ((k = in.read(skip)) >= 0) length += k;
+                String encoded = Base64.getEncoder().encodeToString(n == limit ? head : Arrays.copyOf(head, n));
+                return length <= limit ? encoded : new LobPreview(encoded, length);
+            } catch (IOException e) {
+                throw new SQLException("Failed to read binary column", e);
+            }
+        }
+
+        @Override
+        public void writeJson(JsonWriter out, ResultSet rs, int column) throws IOException, SQLException {
+            BINARY.writeJson(out, rs, column);
+        }
+
+        @Override
+        public boolean appendText(StringBuilder out, ResultSet rs, int column) throws SQLException {
+            return BINARY.appendText(out, rs, column);
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk load of a CSV file into a table. The calling thread parses the file (see {@link CsvReader}) and hands batches
+ * of records to loader threads, each with its own pooled connection and one INSERT PreparedStatement: values are
+ * converted to the column types from the table's metadata, bound, and sent with addBatch/executeBatch; the
+ * connection commits every commit size rows. A record that cannot be converted is rejected without a round trip.
+ * If a batch fails, the uncommitted rows are rolled back and replayed one by one in autocommit, so only the rows the
+ * database refuses are rejected, then batching resumes. A load that fails or is cancelled keeps the rows already
+ * committed.
+ */
+public final class CsvLoad {
+    /** Rejected rows listed in the result; the count covers all of them. */
+    static final int REJECT_SAMPLES = 20;
+
+    /** Table name, optionally schema-qualified; each part is a simple or quoted identifier. */
+    private static final Pattern TABLE = Pattern.compile("(?:" + PartitionedExport.COLUMN.pattern() + ")(?:\\.(?:"
+        + PartitionedExport.COLUMN.pattern() + "))?");
+
+    private static final List<Row> END = Collections.emptyList();
+
+    private CsvLoad() {
+    }
+
+    public static final class Rejected {
+        private final long line;
+        private final String error;
+
+        Rejected(long line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        /** Line of the file where the record starts. */
+        public long getLine() { return line; }
+
+        public String getError() { return error; }
+    }
+
+    public static final class Result {
+        private final long rowsRead;
+        private final long rowsLoaded;
+        private final long rowsRejected;
+        private final List<Rejected> rejected;
+        private final String method;
+        private final long warnings;
+
+        Result(long rowsRead, long rowsLoaded, long rowsRejected, List<Rejected> rejected, String method, long warnings) {
+            this.rowsRead = rowsRead;
+            this.rowsLoaded = rowsLoaded;
+            this.rowsRejected = rowsRejected;
+            this.rejected = rejected;
+            this.method = method;
+            this.warnings = warnings;
+        }
+
+        /** Data records in the file (header excluded); -1 if the database read the file itself (LOAD DATA). */
+        public long getRowsRead() { return rowsRead; }
+
+        public long getRowsLoaded() { return rowsLoaded; }
+
+        /** -1 if unknown (LOAD DATA skips rows and reports warnings instead, see {@link #getWarnings()}). */
+        public long getRowsRejected() { return rowsRejected; }
+
+        /** How the rows were sent: {@link NativeBulk#JDBC}, {@link NativeBulk#COPY} or {@link NativeBulk#LOAD_DATA}. */
+        public String getMethod() { return method; }
+
+        /** Warnings raised by LOAD DATA (values adjusted, rows skipped); 0 for the other methods. */
+        public long getWarnings() { return warnings; }
+
+        /** The first {@link #REJECT_SAMPLES} rejected records, in no particular order when loading in parallel. */
+        public List<Rejected> getRejected() { return rejected; }
+    }
+
+    /** Column names from the first record of the file. */
+    public static List<String> readHeader(Path filePath, char delimiter) throws IOException {
+        try (CsvReader r = new CsvReader(Files.newBufferedReader(filePath, StandardCharsets.UTF_8), delimiter, false)) {
+            String[] header = r.next();
+            if (header == null) throw new IOException("File is empty: " + filePath);
+            List<String> names = new ArrayList<>();
+            for (String h : header) names.add(h.trim());
+            return names;
+        }
+    }
+
+    /** INSERT INTO table (columns) VALUES (?, ...); throws if a name is not a plain or quoted identifier. */
+    public static String insertSql(String table, List<String> columns) throws SQLException {
+        if (!TABLE.matcher(table).matches()) throw new SQLException("Invalid table name: " + table);
+        if (columns.isEmpty()) throw new SQLException("No columns to load");
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        for (int i = 0; i < columns.size(); i++) {
+            String c = columns.get(i);
+            if (!PartitionedExport.COLUMN.matcher(c).matches()) {
+                throw new SQLException("Invalid column name: " + c + " (use the columns argument to name the columns)");
+            }
+            sb.append(i > 0 ? ", " : "").append(c);
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) sb.append(i > 0 ? ", ?" : "?");
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Load filePath into table. With header, the first record is skipped (columns usually come from it, see
+     * {@link #readHeader}). Stops with an error once more than maxRejected rows are rejected.
+     */
+    public static Result run(JdbcPool pool, String connectionName, Path filePath, String table, List<String> columns,
+                             boolean header, char delimiter, boolean emptyAsNull, int batchSize, int commitSize,
+                             int parallelism, long maxRejected, ExecutionContext ctx) throws SQLException, IOException {
+        String insert = insertSql(table, columns);
+        int[] types = columnTypes(pool, connectionName, table, columns, ctx);
+        Shared shared = new Shared(maxRejected);
+        BlockingQueue<List<Row>> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "db-mcp-load-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        long rowsRead = 0;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                futures.add(threads.submit(() -> {
+                    try {
+                        new Loader(pool, connectionName, insert, types, columns, commitSize, shared, ctx).run(queue);
+                    } catch (Exception e) {
+                        // stop the reader and the other loaders; the first error is the one reported
+                        shared.fail(e);
+                        ctx.cancel("Load cancelled: another loader failed");
+                        throw e;
+                    }
+                    return null;
+                }));
+            }
+            try (CsvReader r = new CsvReader(Files.newBufferedReader(filePath, StandardCharsets.UTF_8), delimiter, emptyAsNull)) {
+                if (header) r.next();
+                List<Row> batch = new ArrayList<>(batchSize);
+                String[] rec;
+                while ((rec = r.next()) != null) {
+                    if (ctx.isCancelled()) break;
+                    rowsRead++;
+                    batch.add(new Row(r.recordLine(), rec));
+                    if (batch.size() >= batchSize) {
+                        if (!put(queue, batch, futures, ctx)) break;
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) put(queue, batch, futures, ctx);
+            } catch (IOException e) {
+                shared.fail(e);
+                ctx.cancel("Load cancelled: cannot read " + filePath);
+            } finally {
+                for (int i = 0; i < parallelism; i++) put(queue, END, futures, ctx);
+            }
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    shared.fail(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ctx.cancel("Load cancelled: interrupted");
+                    throw new SQLException("Interrupted while loading " + filePath);
+                }
+            }
+            Throwable failure = shared.failure.get();
+            if (failure == null && ctx.isCancelled()) failure = ctx.cancelledException();
+            if (failure != null) {
+                String msg = failure.getMessage() + " (" + shared.loaded.get() + " rows committed before the load stopped)";
+                if (failure instanceof IOException) throw new IOException(msg, failure);
+                throw new SQLException(msg, failure);
+            }
+            return new Result(rowsRead, shared.loaded.get(), shared.rejectedCount.get(), shared.samples(), NativeBulk.JDBC, 0);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    /** Queue a batch, waiting while the loaders are busy; false if the load was cancelled or every loader ended. */
+    private static boolean put(BlockingQueue<List<Row>> queue, List<Row> batch, List<Future<?>> loaders,
+                               ExecutionContext ctx) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (batch != END && ctx.isCancelled()) return false;
+                if (loaders.stream().allMatch(Future::isDone)) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ctx.cancel("Load cancelled: interrupted");
+            return false;
+        }
+    }
+
+    /** A parsed record and the line it starts on. */
+    private static final class Row {
+        final long line;
+        final String[] fields;
+
+        Row(long line, String[] fields) {
+            this.line = line;
+            this.fields = fields;
+        }
+    }
+
+    private static int[] columnTypes(JdbcPool pool, String connectionName, String table, List<String> columns,
+                                     ExecutionContext ctx) throws SQLException {
+        String probe = "SELECT " + String.join(", ", columns) + " FROM " + table + " WHERE 1=0";
+        try (Connection conn = pool.getConnection(connectionName); Statement st = conn.createStatement()) {
+            ctx.register(st);
+            try (ResultSet rs = st.executeQuery(probe)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int[] types = new int[columns.size()];
+                for (int i = 0; i < types.length; i++) types[i] = meta.getColumnType(i + 1);
+                return types;
+            } finally {
+                ctx.unregister(st);
+            }
+        }
+    }
+
+    /** Counters and reject samples shared by the loader threads. */
+    private static final class Shared {
+        final AtomicLong loaded = new AtomicLong();
+        final AtomicLong rejectedCount = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final long maxRejected;
+        private final List<Rejected> samples = new ArrayList<>();
+
+        Shared(long maxRejected) {
+            this.maxRejected = maxRejected;
+        }
+
+        void reject(long line, String error) throws SQLException {
+            long n = rejectedCount.incrementAndGet();
+            synchronized (samples) {
+                if (samples.size() < REJECT_SAMPLES) samples.add(new Rejected(line, error));
+            }
+            if (n > maxRejected) {
+                throw new SQLException("More than " + maxRejected + " rows rejected; last at line " + line + ": " + error);
+            }
+        }
+
+        void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+
+        List<Rejected> samples() {
+            synchronized (samples) {
+                return new ArrayList<>(samples);
+            }
+        }
+    }
+
+    /** One loader thread: its own connection, statement and uncommitted rows. */
+    private static final class Loader {
+        private final JdbcPool pool;
+        private final String connectionName;
+        private final String insert;
+        private final int[] types;
+        private final List<String> columns;
+        private final int commitSize;
+        private final Shared shared;
+        private final ExecutionContext ctx;
+        /** Rows sent since the last commit, replayed if a later batch of the same transaction fails. */
+        private final List<Row> uncommitted = new ArrayList<>();
+
+        Loader(JdbcPool pool, String connectionName, String insert, int[] types, List<String> columns, int commitSize,
+               Shared shared, ExecutionContext ctx) {
+            this.pool = pool;
+            this.connectionName = connectionName;
+            this.insert = insert;
+            this.types = types;
+            this.columns = columns;
+            this.commitSize = commitSize;
+            this.shared = shared;
+            this.ctx = ctx;
+        }
+
+        void run(BlockingQueue<List<Row>> queue) throws SQLException, InterruptedException {
+            try (Connection conn = pool.getConnection(connectionName)) {
+                boolean autoCommit = conn.getAutoCommit();
+                conn.setAutoCommit(false);
+                try (PreparedStatement ps = conn.prepareStatement(insert)) {
+                    ctx.register(ps);
+                    try {
+                        List<Row> batch;
+                        while ((batch = queue.take()) != END) {
+                            if (ctx.isCancelled()) throw ctx.cancelledException();
+                            load(conn, ps, batch);
+                        }
+                        commit(conn);
+                    } catch (SQLException e) {
+                        throw ctx.isCancelled() ? ctx.cancelledException() : e;
+                    } finally {
+                        ctx.unregister(ps);
+                    }
+                } finally {
+                    if (!uncommitted.isEmpty()) {
+                        try { conn.rollback(); } catch (SQLException ignored) {}
+                    }
+                    conn.setAutoCommit(autoCommit);
+                }
+            }
+        }
+
+        private void load(Connection conn, PreparedStatement ps, List<Row> batch) throws SQLException {
+            List<Row> sent = new ArrayList<>(batch.size());
+            for (Row rec : batch) {
+                if (bind(ps, rec)) {
+                    ps.addBatch();
+                    sent.add(rec);
+                }
+            }
+            if (sent.isEmpty()) return;
+            try {
+                ps.executeBatch();
+                uncommitted.addAll(sent);
+            } catch (BatchUpdateException e) {
+                if (ctx.isCancelled()) throw ctx.cancelledException();
+                ps.clearBatch();
+                conn.rollback();
+                uncommitted.addAll(sent);
+                replay(conn, ps);
+                return;
+            }
+            if (uncommitted.size() >= commitSize) commit(conn);
+        }
+
+        /** Send the rolled-back rows one at a time, committing each, to find the ones the database refuses. */
+        private void replay(Connection conn, PreparedStatement ps) throws SQLException {
+            List<Row> rows = new ArrayList<>(uncommitted);
+            uncommitted.clear();
+            conn.setAutoCommit(true);
+            try {
+                for (Row rec : rows) {
+                    if (ctx.isCancelled()) throw ctx.cancelledException();
+                    bind(ps, rec);
+                    try {
+                        ps.executeUpdate();
+                    } catch (SQLException e) {
+                        if (ctx.isCancelled() || JdbcPool.isConnectionError(e)) throw e;
+                        shared.reject(rec.line, e.getMessage());
+                        continue;
+                    }
+                    shared.loaded.incrementAndGet();
+                    ctx.rowWritten();
+                }
+            } finally {
+                conn.setAutoCommit(false);
+            }
+        }
+
+        private void commit(Connection conn) throws SQLException {
+            if (uncommitted.isEmpty()) return;
+            conn.commit();
+            shared.loaded.addAndGet(uncommitted.size());
+            for (int i = 0; i < uncommitted.size(); i++) ctx.rowWritten();
+            uncommitted.clear();
+        }
+
+        /** Bind rec to ps; false (and the record rejected) if it has the wrong field count or a value does not convert. */
+        private boolean bind(PreparedStatement ps, Row rec) throws SQLException {
+            String[] fields = rec.fields;
+            if (fields.length != types.length) {
+                shared.reject(rec.line, "expected " + types.length + " fields, found " + fields.length);
+                return false;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                try {
+                    setValue(ps, i + 1, types[i], fields[i]);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    shared.reject(rec.line, "column " + columns.get(i) + ": cannot convert '" + fields[i] + "' ("
+                        + e.getMessage() + ")");
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Bind text as the column's type; throws IllegalArgumentException or DateTimeException if it does not convert. */
+    static void setValue(PreparedStatement ps, int i, int type, String v) throws SQLException {
+        if (v == null) {
+            ps.setNull(i, type);
+            return;
+        }
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                ps.setLong(i, Long.parseLong(v.trim()));
+                return;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                ps.setBigDecimal(i, new BigDecimal(v.trim()));
+                return;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                ps.setDouble(i, Double.parseDouble(v.trim()));
+                return;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                ps.setBoolean(i, parseBoolean(v.trim()));
+                return;
+            case Types.DATE:
+                ps.setDate(i, Date.valueOf(LocalDate.parse(v.trim())));
+                return;
+            case Types.TIME:
+                ps.setTime(i, Time.valueOf(LocalTime.parse(v.trim())));
+                return;
+            case Types.TIMESTAMP:
+                ps.setTimestamp(i, Timestamp.valueOf(parseTimestamp(v.trim())));
+                return;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                ps.setBytes(i, Base64.getDecoder().decode(v.trim()));
+                return;
+            default:
+                ps.setString(i, v);
+        }
+    }
+
+    private static boolean parseBoolean(String v) {
+        switch (v.toLowerCase()) {
+            case "true": case "t": case "yes": case "y": case "1": return true;
+            case "false": case "f": case "no": case "n": case "0": return false;
+            default: throw new IllegalArgumentException("not a boolean");
+        }
+    }
+
+    /** ISO (2024-01-31T10:00:00) or JDBC (2024-01-31 10:00:00.123) form; a bare date means midnight. */
+    private static LocalDateTime parseTimestamp(String v) {
+        if (v.length() == 10) return LocalDate.parse(v).atStartOfDay();
+        return LocalDateTime.parse(v.replace(' ', 'T'));
+    }
+}
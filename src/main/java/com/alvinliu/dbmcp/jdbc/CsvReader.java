@@ -0,0 +1,103 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming RFC 4180 reader: one record at a time, quoted fields may contain the delimiter, doubled quotes and line
+ * breaks. Lines may end in LF or CRLF; a leading UTF-8 BOM is skipped. With emptyAsNull, an unquoted empty field is
+ * returned as null and a quoted one ("") as the empty string.
+ */
+final class CsvReader implements Closeable {
+    private final Reader in;
+    private final char delimiter;
+    private final boolean emptyAsNull;
+    private final char[] buf = new char[65536];
+    private int pos;
+    private int len;
+    private long line = 1;
+    private long recordLine;
+    private final StringBuilder field = new StringBuilder(64);
+
+    CsvReader(Reader in, char delimiter, boolean emptyAsNull) throws IOException {
+        this.in = in;
+        this.delimiter = delimiter;
+        this.emptyAsNull = emptyAsNull;
+        if (peek() == '\uFEFF') pos++;
+    }
+
+    /** Line number (1-based) where the record last returned by {@link #next()} starts. */
+    long recordLine() {
+        return recordLine;
+    }
+
+    /** Next record, or null at end of input. Blank lines are skipped. */
+    String[] next() throws IOException {
+        int c;
+        while ((c = peek()) == '\n' || c == '\r') read();
+        if (c < 0) return null;
+        recordLine = line;
+        List<String> fields = new ArrayList<>();
+        while (true) {
+            field.setLength(0);
+            boolean quoted = false;
+            c = read();
+            if (c == '"') {
+                quoted = true;
+                long start = line;
+                while (true) {
+                    c = read();
+                    if (c < 0) throw new IOException("Unterminated quoted field starting at line " + start);
+                    if (c == '"') {
+                        if (peek() != '"') break;
+                        read();
+                    }
+                    field.append((char) c);
+                }
+                c = read();
+                if (c != delimiter && c != '\n' && c != '\r' && c >= 0) {
+                    throw new IOException("Unexpected character after closing quote at line " + line);
+                }
+            } else {
+                while (c >= 0 && c != delimiter && c != '\n' && c != '\r') {
+                    field.append((char) c);
+                    c = read();
+                }
+            }
+            fields.add(!quoted && emptyAsNull && field.length() == 0 ? null : field.toString());
+            if (c == delimiter) continue;
+            if (c == '\r' && peek() == '\n') read();
+            return fields.toArray(new String[0]);
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos == len && !fill()) return -1;
+        return buf[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos == len && !fill()) return -1;
+        char c = buf[pos++];
+        if (c == '\n') line++;
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        len = in.read(buf, 0, buf.length);
+        pos = 0;
+        if (len <= 0) {
+            len = 0;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Open cursors by id. Each cursor pins one pooled connection until it is exhausted, closed by the client, idle
+ * longer than the TTL, or evicted because its connection already has the maximum number of open cursors (least
+ * recently used goes first). Cursors belong to the session that opened them.
+ */
+public final class CursorRegistry {
+    private final Map<String, ResultCursor> cursors = new ConcurrentHashMap<>();
+    private final long ttlMs;
+    private final int maxPerConnection;
+
+    public CursorRegistry(long ttlMs, int maxPerConnection, ScheduledExecutorService timer) {
+        this.ttlMs = ttlMs;
+        this.maxPerConnection = maxPerConnection;
+        long sweepMs = Math.max(1000, Math.min(ttlMs, 30_000));
+        timer.scheduleWithFixedDelay(this::closeExpired, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Take ownership of a cursor and its connection; returns the new cursor id. */
+    public String open(ResultCursor cursor, Connection conn, String connectionName, String owner, int pageSize) {
+        String id = UUID.randomUUID().toString();
+        cursor.attach(id, conn, connectionName, owner, pageSize);
+        List<ResultCursor> evicted = new ArrayList<>();
+        synchronized (this) {
+            List<ResultCursor> same = new ArrayList<>();
+            for (ResultCursor c : cursors.values()) {
+                if (connectionName.equals(c.getConnectionName()) && !c.isBusy()) same.add(c);
+            }
+            same.sort((a, b) -> Long.compare(a.getLastUsedMillis(), b.getLastUsedMillis()));
+            for (int i = 0; i < same.size() && countFor(connectionName) >= maxPerConnection; i++) {
+                ResultCursor old = same.get(i);
+                cursors.remove(old.getId());
+                evicted.add(old);
+            }
+            cursors.put(id, cursor);
+        }
+        for (ResultCursor old : evicted) old.close();
+        return id;
+    }
+
+    /** Mark the cursor in use by a fetch; throws if unknown, owned by another session, or already being read. */
+    public synchronized ResultCursor acquire(String id, String owner) throws SQLException {
+        ResultCursor c = id != null ? cursors.get(id) : null;
+        if (c == null || !c.getOwner().equals(owner)) throw new SQLException("Cursor not found or expired: " + id);
+        if (c.isBusy()) throw new SQLException("Cursor is already being fetched: " + id);
+        c.setBusy(true);
+        return c;
+    }
+
+    /** End a fetch; exhausted cursors are closed. */
+    public void release(ResultCursor c) {
+        synchronized (this) {
+            c.setBusy(false);
+            if (!c.isExhausted()) return;
+            cursors.remove(c.getId());
+        }
+        c.close();
+    }
+
+    /** Close a cursor on client request; false if it was not open (or belongs to another session). */
+    public boolean close(String id, String owner) {
+        ResultCursor c;
+        synchronized (this) {
+            c = id != null ? cursors.get(id) : null;
+            if (c == null || !c.getOwner().equals(owner) || c.isBusy()) return false;
+            cursors.remove(id);
+        }
+        c.close();
+        return true;
+    }
+
+    /** Close every cursor of a session that ended. */
+    public void closeOwnedBy(String owner) {
+        closeWhere(c -> c.getOwner().equals(owner));
+    }
+
+    public void closeAll() {
+        closeWhere(c -> true);
+    }
+
+    private void closeExpired() {
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        closeWhere(c -> c.getLastUsedMillis() < cutoff);
+    }
+
+    private void closeWhere(Predicate<ResultCursor> p) {
+        List<ResultCursor> closed = new ArrayList<>();
+        synchronized (this) {
+            cursors.values().removeIf(c -> {
+                if (c.isBusy() || !p.test(c)) return false;
+                closed.add(c);
+                return true;
+            });
+        }
+        for (ResultCursor c : closed) c.close();
+    }
+
+    private int countFor(String connectionName) {
+        int n = 0;
+        for (ResultCursor c : cursors.values()) {
+            if (connectionName.equals(c.getConnectionName())) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,236 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-call execution state shared between the MCP layer and {@link JdbcExecutor}: the statements currently running
+ * (one, or one per partition of a {@link PartitionedExport}), the call deadline, and whether the call was cancelled
+ * (client notifications/cancelled, deadline, or shutdown). {@link #cancel()} may be called from any thread; it calls
+ * {@link Statement#cancel()} on the in-flight statements, and runs the cancel actions of work that has no statement
+ * (e.g. a PostgreSQL COPY, see {@link NativeBulk}).
+ * It also counts progress (rows fetched and written, bytes written, statements completed) for an optional
+ * {@link ProgressListener}; rows and bytes written may be counted by several export threads, the other counters
+ * only by the thread running the call.
+ */
+public class ExecutionContext {
+
+    /** Receives progress at most every {@link #PROGRESS_INTERVAL_MS}; progress grows with every call. */
+    public interface ProgressListener {
+        void onProgress(long progress, String message);
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 500;
+
+    private final Object lock = new Object();
+    private final Set<Statement> running = new LinkedHashSet<>();
+    private final Set<Runnable> cancelActions = new LinkedHashSet<>();
+    private volatile boolean cancelled;
+    private volatile boolean timedOut;
+    private volatile String cancelReason = "Query cancelled by client";
+    private long timeoutMs;
+    private long deadlineNanos;
+    private ScheduledFuture<?> watchdog;
+    private ResultLimits resultLimits = ResultLimits.NONE;
+    private FetchStrategy fetchStrategy = FetchStrategy.DEFAULT;
+    private ProgressListener progressListener;
+    private long lastProgressNanos;
+    private long lastProgress;
+    private long rowsFetched;
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private int statementsDone;
+    private int statementsTotal;
+
+    /**
+     * Arm the call deadline: JDBC query timeouts are derived from the remaining time, and the watchdog cancels
+     * whatever statement is running when it expires (covers fetch time, which setQueryTimeout may not).
+     * timeoutMs &lt;= 0 means no deadline.
+     */
+    public void startDeadline(long timeoutMs, ScheduledExecutorService timer) {
+        if (timeoutMs <= 0) return;
+        synchronized (lock) {
+            this.timeoutMs = timeoutMs;
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            this.watchdog = timer.schedule(this::expire, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Report progress to the listener while the call runs; the first report comes after one interval. */
+    public void setProgressListener(ProgressListener listener) {
+        this.progressListener = listener;
+        this.lastProgressNanos = System.nanoTime();
+    }
+
+    /** Bounds for rows returned in memory (execute_sql / fetch_more); exports leave this at {@link ResultLimits#NONE}. */
+    public void setResultLimits(ResultLimits limits) {
+        this.resultLimits = limits != null ? limits : ResultLimits.NONE;
+    }
+
+    ResultLimits getResultLimits() { return resultLimits; }
+
+    /** How the connection's driver is asked to fetch rows (fetch size, streaming, transaction); see {@link FetchStrategy}. */
+    public void setFetchStrategy(FetchStrategy strategy) {
+        this.fetchStrategy = strategy != null ? strategy : FetchStrategy.DEFAULT;
+    }
+
+    FetchStrategy getFetchStrategy() { return fetchStrategy; }
+
+    public long getTimeoutMs() { return timeoutMs; }
+
+    public boolean isCancelled() { return cancelled; }
+
+    /** True if cancellation came from the deadline rather than the client. */
+    public boolean isTimedOut() { return timedOut; }
+
+    /** Cancel the call: marks it cancelled and cancels the in-flight statements, if any. */
+    public void cancel() {
+        cancel(null);
+    }
+
+    /** Cancel with the message reported to the caller (e.g. server shutdown); null keeps the default. */
+    public void cancel(String reason) {
+        List<Statement> toCancel;
+        List<Runnable> actions;
+        synchronized (lock) {
+            if (cancelled) return;
+            if (reason != null) cancelReason = reason;
+            cancelled = true;
+            toCancel = new ArrayList<>(running);
+            actions = new ArrayList<>(cancelActions);
+        }
+        for (Statement st : toCancel) {
+            try { st.cancel(); } catch (SQLException ignored) {}
+        }
+        for (Runnable action : actions) {
+            try { action.run(); } catch (RuntimeException ignored) {}
+        }
+    }
+
+    private void expire() {
+        timedOut = true;
+        cancel();
+    }
+
+    /** Release the watchdog; call once the tool call has finished. */
+    public void close() {
+        synchronized (lock) {
+            if (watchdog != null) watchdog.cancel(false);
+            watchdog = null;
+            running.clear();
+            cancelActions.clear();
+        }
+    }
+
+    /**
+     * Track a statement about to execute and apply the remaining time as its query timeout.
+     * Throws if the call is already cancelled or past its deadline.
+     */
+    void register(Statement st) throws SQLException {
+        synchronized (lock) {
+            checkAlive();
+            running.add(st);
+            if (deadlineNanos != 0) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                st.setQueryTimeout((int) Math.max(1, (remainingMs + 999) / 1000));
+            }
+        }
+    }
+
+    void unregister(Statement st) {
+        synchronized (lock) {
+            running.remove(st);
+        }
+    }
+
+    /**
+     * Run action on cancel (or when the deadline expires) while in-flight work has no Statement to cancel.
+     * Throws if the call is already cancelled or past its deadline.
+     */
+    void registerCancelAction(Runnable action) throws SQLException {
+        synchronized (lock) {
+            checkAlive();
+            cancelActions.add(action);
+        }
+    }
+
+    void unregisterCancelAction(Runnable action) {
+        synchronized (lock) {
+            cancelActions.remove(action);
+        }
+    }
+
+    /** Throw if the call was cancelled or its deadline has passed. */
+    void checkAlive() throws SQLException {
+        if (!timedOut && deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0) {
+            timedOut = true;
+            cancelled = true;
+        }
+        if (cancelled) throw cancelledException();
+    }
+
+    /** Exception describing why the call stopped; also used to replace driver-specific cancel errors. */
+    SQLException cancelledException() {
+        if (timedOut) return new SQLTimeoutException("Query exceeded timeout of " + timeoutMs + " ms and was cancelled");
+        return new SQLException(cancelReason);
+    }
+
+    void statementsPlanned(int total) {
+        statementsTotal = total;
+    }
+
+    void statementCompleted() {
+        statementsDone++;
+        maybeReportProgress();
+    }
+
+    void rowFetched() {
+        // checking the clock on every row would cost more than the rows themselves
+        if ((++rowsFetched & 0xFF) == 0) maybeReportProgress();
+    }
+
+    void rowWritten() {
+        if ((rowsWritten.incrementAndGet() & 0xFF) == 0) maybeReportProgress();
+    }
+
+    void bytesWritten(long n) {
+        bytesWritten.addAndGet(n);
+    }
+
+    private synchronized void maybeReportProgress() {
+        ProgressListener l = progressListener;
+        if (l == null) return;
+        long now = System.nanoTime();
+        if (now - lastProgressNanos < TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MS)) return;
+        // one counter over all kinds of work, so the reported value only grows
+        long rowsWritten = this.rowsWritten.get();
+        long progress = rowsFetched + rowsWritten + statementsDone;
+        if (progress <= lastProgress) return;
+        lastProgressNanos = now;
+        lastProgress = progress;
+        StringBuilder msg = new StringBuilder();
+        if (statementsTotal > 1) msg.append(statementsDone).append(" of ").append(statementsTotal).append(" statements done");
+        if (rowsFetched > 0) {
+            if (msg.length() > 0) msg.append(", ");
+            msg.append(rowsFetched).append(" rows fetched");
+        }
+        if (rowsWritten > 0) {
+            if (msg.length() > 0) msg.append(", ");
+            msg.append(rowsWritten).append(" rows written (").append(bytesWritten.get() / 1024).append(" KB)");
+        }
+        try {
+            l.onProgress(progress, msg.toString());
+        } catch (RuntimeException ignored) {
+            // progress is best effort and must never fail the query
+        }
+    }
+}
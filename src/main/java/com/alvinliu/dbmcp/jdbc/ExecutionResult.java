@@ -13,6 +13,23 @@ public class ExecutionResult {
     private String statementType;
     private long executionTimeMs;
     private String warning;
+    private Boolean truncated;
+    private String truncatedReason;
+    private Long rowsFetched;
+    private String cursorId;
+    private Boolean hasMore;
+    /** Scripts only (more than one statement): statement count, per-statement update counts, failures. */
+    private Integer statements;
+    private long[] updateCounts;
+    private List<StatementError> errors;
+    /** Scripts run with transaction: "committed" or "rolled_back". */
+    private String transaction;
+    /** java.sql.Types per column, for typed encodings; not serialized. */
+    private transient int[] columnTypes;
+    /** SQLState of the failure when success is false (null if the driver gave none); not serialized. */
+    private transient String sqlState;
+    /** Open result set behind cursorId; handed to {@link CursorRegistry}, never serialized. */
+    private transient ResultCursor cursor;
 
     public List<String> getColumns() { return columns; }
     public void setColumns(List<String> columns) { this.columns = columns; }
@@ -34,4 +51,64 @@ public class ExecutionResult {
 
     public String getWarning() { return warning; }
     public void setWarning(String warning) { this.warning = warning; }
+
+    /** Result sets only: true if fetching stopped at a limit (truncatedReason: max_rows, max_result_bytes, max_fetch_ms). */
+    public Boolean getTruncated() { return truncated; }
+    public void setTruncated(Boolean truncated) { this.truncated = truncated; }
+
+    public String getTruncatedReason() { return truncatedReason; }
+    public void setTruncatedReason(String truncatedReason) { this.truncatedReason = truncatedReason; }
+
+    /** Result sets only: rows returned in this response. */
+    public Long getRowsFetched() { return rowsFetched; }
+    public void setRowsFetched(Long rowsFetched) { this.rowsFetched = rowsFetched; }
+
+    /** Set when rows beyond this page remain: pass to fetch_more. */
+    public String getCursorId() { return cursorId; }
+    public void setCursorId(String cursorId) { this.cursorId = cursorId; }
+
+    /** Paged results only: whether fetch_more can return more rows. */
+    public Boolean getHasMore() { return hasMore; }
+    public void setHasMore(Boolean hasMore) { this.hasMore = hasMore; }
+
+    /** Number of statements in the script; null for a single statement. */
+    public Integer getStatements() { return statements; }
+    public void setStatements(Integer statements) { this.statements = statements; }
+
+    /**
+     * Per statement, in order, for the statements that ran: rows affected, -1 for a query, -2 when the driver did not
+     * report a count (Statement.SUCCESS_NO_INFO), -3 if it failed (Statement.EXECUTE_FAILED).
+     */
+    public long[] getUpdateCounts() { return updateCounts; }
+    public void setUpdateCounts(long[] updateCounts) { this.updateCounts = updateCounts; }
+
+    /** Statements of the script that failed; null if none did. */
+    public List<StatementError> getErrors() { return errors; }
+    public void setErrors(List<StatementError> errors) { this.errors = errors; }
+
+    public String getTransaction() { return transaction; }
+    public void setTransaction(String transaction) { this.transaction = transaction; }
+
+    public String getSqlState() { return sqlState; }
+    public void setSqlState(String sqlState) { this.sqlState = sqlState; }
+
+    public int[] getColumnTypes() { return columnTypes; }
+    public void setColumnTypes(int[] columnTypes) { this.columnTypes = columnTypes; }
+
+    public ResultCursor getCursor() { return cursor; }
+    public void setCursor(ResultCursor cursor) { this.cursor = cursor; }
+
+    /** A failed statement of a script: its 1-based position and the error. */
+    public static class StatementError {
+        private final int statement;
+        private final String error;
+
+        public StatementError(int statement, String error) {
+            this.statement = statement;
+            this.error = error;
+        }
+
+        public int getStatement() { return statement; }
+        public String getError() { return error; }
+    }
 }
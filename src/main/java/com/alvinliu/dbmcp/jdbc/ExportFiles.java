@@ -0,0 +1,38 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Export output is written to name.partial next to the target and renamed over it only once complete, so a failed or
+ * cancelled export never leaves a truncated file at the target path (or replaces a good one).
+ */
+final class ExportFiles {
+
+    private ExportFiles() {
+    }
+
+    static Path partialPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".partial");
+    }
+
+    /** Rename the finished file into place: atomically where the file system allows, else a plain replace. */
+    static void commit(Path partial, Path target) throws IOException {
+        try {
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static void discard(Path partial) {
+        try {
+            Files.deleteIfExists(partial);
+        } catch (IOException ignored) {
+            // best effort; the target path is untouched either way
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Export output opened at a byte offset (truncating anything after it): counted bytes, optional gzip members, UTF-8
+ * writer. Used where an export continues an existing file: a checkpoint resume or an incremental append.
+ */
+final class ExportOutput implements Closeable {
+    final BufferedWriter writer;
+    private final FileChannel channel;
+    private final GzipMembers members;
+    private long offset;
+
+    ExportOutput(Path file, long startOffset, boolean gzip, ExecutionContext ctx) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(startOffset);
+        channel.position(startOffset);
+        offset = startOffset;
+        OutputStream counting = new FilterOutputStream(Channels.newOutputStream(channel)) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                offset++;
+                ctx.bytesWritten(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                offset += len;
+                ctx.bytesWritten(len);
+            }
+        };
+        members = gzip ? new GzipMembers(counting) : null;
+        writer = new BufferedWriter(new OutputStreamWriter(members != null ? members : counting, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    /** Everything written so far is on disk and ends on a row (and gzip member) boundary. */
+    void sync() throws IOException {
+        writer.flush();
+        if (members != null) members.finishMember();
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) writer.close();
+    }
+
+    /** Gzip stream that can be ended at any point and continued as a new member of the same file. */
+    private static final class GzipMembers extends OutputStream {
+        private final OutputStream out;
+        private GZIPOutputStream current;
+
+        GzipMembers(OutputStream out) {
+            this.out = out;
+        }
+
+        private GZIPOutputStream current() throws IOException {
+            if (current == null) current = new GZIPOutputStream(out, 1 << 16);
+            return current;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            current().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current().write(b, off, len);
+        }
+
+        void finishMember() throws IOException {
+            if (current != null) {
+                current.finish();
+                current = null;
+            }
+            out.flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (current != null) current.flush();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finishMember();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.alibaba.druid.DbType;
+import com.alvinliu.dbmcp.config.ConnectionEntry;
+import com.alvinliu.dbmcp.core.druid.DbTypes;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * How rows are pulled from the driver on one connection, chosen by its db_type. Left alone, MySQL Connector/J reads
+ * the whole result into memory before returning the first row, PostgreSQL does the same unless autocommit is off,
+ * and Oracle fetches 10 rows per round trip. So:
+ * <ul>
+ * <li>MySQL: exports stream rows one at a time (fetch size Integer.MIN_VALUE). Results returned in memory are not
+ *     streamed: closing a half-read stream makes Connector/J read and discard every remaining row, so a result cut
+ *     by a limit or a cursor closed early would still pull the whole result. With useCursorFetch=true on the URL, a
+ *     server-side cursor returns fetch_size rows per round trip for both.</li>
+ * <li>PostgreSQL: queries run with autocommit off, committed as soon as the result is closed, so the driver reads
+ *     fetch_size rows per round trip from a portal.</li>
+ * <li>Oracle, MariaDB: fetch_size rows per round trip (Oracle row prefetch).</li>
+ * <li>Other databases: fetch_size for exports; the driver's default for results returned in memory.</li>
+ * </ul>
+ * fetch_size is 1000 unless set on the connection; 0 leaves every statement at the driver's default. Results
+ * returned in memory never prefetch more than a page plus the read-ahead row.
+ */
+public final class FetchStrategy {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    /** For callers without a configured connection: fetch size for exports only, as before dialect tuning. */
+    public static final FetchStrategy DEFAULT = new FetchStrategy(null, DEFAULT_FETCH_SIZE, false);
+
+    private final DbType dbType;
+    private final int fetchSize;
+    private final boolean cursorFetch;
+
+    FetchStrategy(DbType dbType, int fetchSize, boolean cursorFetch) {
+        this.dbType = dbType;
+        this.fetchSize = Math.max(0, fetchSize);
+        this.cursorFetch = cursorFetch;
+    }
+
+    /** The strategy for a configured connection: its db_type, fetch_size (negative = default) and URL. */
+    public static FetchStrategy forConnection(ConnectionEntry e) {
+        int size = e.getFetchSize() >= 0 ? e.getFetchSize() : DEFAULT_FETCH_SIZE;
+        String url = e.getUrl() != null ? e.getUrl().toLowerCase() : "";
+        return new FetchStrategy(DbTypes.resolve(e.getDbType()), size, url.contains("usecursorfetch=true"));
+    }
+
+    /** The connection's dialect (null when db_type is unset or unknown); statements are split by its rules too. */
+    DbType getDbType() {
+        return dbType;
+    }
+
+    /** Set the fetch size of a forward-only, read-only statement whose result is written to a file. */
+    void applyToExport(Statement st) throws SQLException {
+        if (fetchSize == 0) return;
+        st.setFetchSize(streamsRows() ? Integer.MIN_VALUE : fetchSize);
+    }
+
+    /**
+     * Set the fetch size of a statement whose rows are returned in memory, pageSize at a time (0 = all at once).
+     * Never streams (see the class comment): MySQL without useCursorFetch keeps the driver's default.
+     */
+    void applyToResult(Statement st, int pageSize) throws SQLException {
+        if (fetchSize == 0 || !tuned() || streamsRows()) return;
+        st.setFetchSize(pageSize > 0 ? Math.min(fetchSize, pageSize + 1) : fetchSize);
+    }
+
+    /**
+     * Before running a query on conn: on PostgreSQL, switch autocommit off so the fetch size applies; the returned
+     * scope ends that transaction. A no-op scope on other databases, with fetch_size 0, or when conn is already
+     * inside a transaction.
+     */
+    Scope begin(Connection conn) throws SQLException {
+        if (!isPostgres() || fetchSize == 0 || !conn.getAutoCommit()) return Scope.NONE;
+        conn.setAutoCommit(false);
+        return new Scope(conn);
+    }
+
+    /** Autocommit switched off by {@link #begin}; {@link #end} restores it. */
+    static final class Scope {
+        static final Scope NONE = new Scope(null);
+
+        private final Connection conn;
+
+        private Scope(Connection conn) {
+            this.conn = conn;
+        }
+
+        /** Commit (roll back after an error), keeping writes by functions the query called; restore autocommit. */
+        void end(boolean commit) {
+            if (conn == null) return;
+            try {
+                if (commit) conn.commit();
+                else conn.rollback();
+            } catch (SQLException ignored) {
+                // an aborted transaction refuses COMMIT; turning autocommit on below ends it either way
+            }
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // the pool resets autocommit when the connection is returned
+            }
+        }
+    }
+
+    private boolean streamsRows() {
+        return isMySql() && !cursorFetch;
+    }
+
+    private boolean isMySql() {
+        return dbType == DbType.mysql;
+    }
+
+    private boolean isPostgres() {
+        return dbType == DbType.postgresql || dbType == DbType.greenplum;
+    }
+
+    private boolean tuned() {
+        return isMySql() || isPostgres() || dbType == DbType.oracle || dbType == DbType.mariadb;
+    }
+}
@@ -0,0 +1,156 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.alvinliu.dbmcp.core.SqlScript;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental export on a watermark column (an updated-at timestamp, a sequence, ORA_ROWSCN selected in the query,
+ * ...). The first run exports everything and stores the largest watermark value in the {@link WatermarkStore}; later
+ * runs filter on watermark &gt; stored value and append only those rows to the file (a new gzip member when
+ * compressed), then move the mark forward. A failed append truncates the file back to its previous end and leaves
+ * the mark alone. The mark also records the file's length, so an append that was never recorded (the process died
+ * mid-write, or storing the mark failed) is cut off by the next run before it appends again. Rows whose watermark is NULL are only exported by the first run; rows committed later with a
+ * watermark below the stored value (e.g. by a long transaction) are not picked up.
+ */
+public final class IncrementalExport {
+
+    private IncrementalExport() {
+    }
+
+    public static final class Result {
+        private final long rowsWritten;
+        private final boolean appended;
+        private final String previousWatermark;
+        private final String watermark;
+
+        Result(long rowsWritten, boolean appended, String previousWatermark, String watermark) {
+            this.rowsWritten = rowsWritten;
+            this.appended = appended;
+            this.previousWatermark = previousWatermark;
+            this.watermark = watermark;
+        }
+
+        /** Rows written by this run (the delta when appended). */
+        public long getRowsWritten() { return rowsWritten; }
+
+        /** False for a full export (first run, reset, or the file was missing). */
+        public boolean isAppended() { return appended; }
+
+        public String getPreviousWatermark() { return previousWatermark; }
+
+        /** Stored high-water mark after this run; null if no watermark value has been seen yet. */
+        public String getWatermark() { return watermark; }
+    }
+
+    /**
+     * Export sql (a single SELECT) past the stored watermark of column for this connection and file. reset ignores
+     * the stored mark and rewrites the file.
+     */
+    public static Result run(Connection conn, String connectionName, String sql, String column, Path filePath,
+                             String formatName, boolean gzip, boolean reset, WatermarkStore store,
+                             ExecutionContext ctx) throws SQLException, IOException {
+        SqlScript script = JdbcExecutor.split(sql, ctx);
+        if (script.size() != 1) {
+            throw new SQLException("Incremental export needs a single SELECT statement");
+        }
+        sql = script.get(0).getText();
+        column = column.trim();
+        if (!PartitionedExport.COLUMN.matcher(column).matches()) throw new SQLException("Invalid watermark_column: " + column);
+        if (!store.begin(filePath)) throw new SQLException("An incremental export to " + filePath + " is already running");
+        try {
+            WatermarkStore.Mark prev = reset ? null : store.get(connectionName, sql, filePath);
+            if (prev != null && !column.equals(prev.getColumn())) {
+                throw new SQLException("Stored watermark for " + filePath + " is on column " + prev.getColumn()
+                    + "; use the same watermark_column or reset_watermark");
+            }
+            boolean append = prev != null && prev.getValue() != null && Files.exists(filePath);
+            Path target = append ? filePath : ExportFiles.partialPath(filePath);
+            if (append && prev.getFileSize() != null && Files.size(filePath) > prev.getFileSize()) {
+                // rows past the recorded length were appended without the mark moving: they are exported again
+                truncate(filePath, prev.getFileSize());
+            }
+            long start = append ? Files.size(filePath) : 0;
+            String q = "SELECT q_.*, q_." + column + " AS " + CheckpointedExport.KEY_ALIAS + " FROM (" + sql + ") q_"
+                + (append ? " WHERE q_." + column + " > ?" : "");
+            Object max = null;
+            long rows = 0;
+            boolean done = false;
+            FetchStrategy.Scope scope = ctx.getFetchStrategy().begin(conn);
+            try {
+                try (ExportOutput out = new ExportOutput(target, start, gzip, ctx);
+                     PreparedStatement ps = conn.prepareStatement(q, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    ctx.getFetchStrategy().applyToExport(ps);
+                    if (append) KeyValues.bind(ps, 1, prev.getValue(), prev.getType());
+                    ctx.register(ps);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        ResultSetMetaData meta = rs.getMetaData();
+                        int markIndex = meta.getColumnCount();
+                        String markType = KeyValues.typeOf(meta.getColumnType(markIndex));
+                        List<String> names = new ArrayList<>();
+                        int[] types = new int[markIndex - 1];
+                        for (int i = 1; i < markIndex; i++) {
+                            names.add(meta.getColumnLabel(i));
+                            types[i - 1] = meta.getColumnType(i);
+                        }
+                        // the watermark is the extra last column; formats only write the first names.size() columns
+                        RowFormat format = TextRowFormats.forName(formatName, start == 0);
+                        format.begin(out.writer, names, types);
+                        while (rs.next()) {
+                            if (ctx.isCancelled()) throw ctx.cancelledException();
+                            Object v = KeyValues.read(rs, markIndex, markType);
+                            if (v != null && (max == null || KeyValues.compare(v, max) > 0)) max = v;
+                            format.writeRow(out.writer, rs);
+                            rows++;
+                            ctx.rowWritten();
+                        }
+                        format.end(out.writer);
+                        out.sync();
+                    } catch (SQLException e) {
+                        throw ctx.isCancelled() ? ctx.cancelledException() : e;
+                    } finally {
+                        ctx.unregister(ps);
+                    }
+                }
+                // commit only after the try above has closed out (gzip trailer written, file flushed)
+                if (!append) ExportFiles.commit(target, filePath);
+                done = true;
+            } finally {
+                scope.end(done);
+                if (!done && append) {
+                    truncate(filePath, start);
+                } else if (!done) {
+                    ExportFiles.discard(target);
+                }
+            }
+            String previous = append ? prev.getValue() : null;
+            long total = rows + (append ? prev.getRowsExported() : 0);
+            if (max != null) {
+                store.put(connectionName, sql, filePath, column, max, total, Files.size(filePath));
+                return new Result(rows, append, previous, KeyValues.format(max));
+            }
+            if (!append) return new Result(rows, false, null, null);
+            // nothing new: the mark stays, the row total stays
+            return new Result(rows, true, previous, previous);
+        } finally {
+            store.end(filePath);
+        }
+    }
+
+    private static void truncate(Path file, long size) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(size);
+        }
+    }
+}
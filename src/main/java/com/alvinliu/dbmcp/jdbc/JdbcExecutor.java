@@ -1,149 +1,470 @@
 package com.alvinliu.dbmcp.jdbc;
 
+import com.alvinliu.dbmcp.core.SqlScript;
+
 import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Execute SQL via JDBC and return ExecutionResult. Splits by semicolon for multiple statements.
+ * Execute SQL via JDBC and return ExecutionResult. Scripts are split into statements by {@link SqlScript} for the
+ * connection's dialect, or taken as the analyzer already split them.
+ * Statements are registered with the call's {@link ExecutionContext} so they can be cancelled and time out.
+ * With a page size, the last statement returns at most one page and leaves the rest in a {@link ResultCursor}.
  */
 public final class JdbcExecutor {
 
     public static ExecutionResult execute(Connection conn, String sql) {
+        return execute(conn, sql, new ExecutionContext());
+    }
+
+    public static ExecutionResult execute(Connection conn, String sql, ExecutionContext ctx) {
+        return execute(conn, sql, ctx, 0);
+    }
+
+    /**
+     * Execute; if pageSize &gt; 0 and the last statement returns more rows than that, the result holds the first page
+     * and an open {@link ResultCursor} that the caller must hand to a {@link CursorRegistry} (or close).
+     */
+    public static ExecutionResult execute(Connection conn, String sql, ExecutionContext ctx, int pageSize) {
+        return execute(conn, sql, ctx, pageSize, false);
+    }
+
+    /**
+     * Execute a statement or script. Runs of consecutive INSERT/UPDATE/DELETE/MERGE statements (other than the last
+     * statement) are sent with addBatch/executeBatch on one Statement, {@link #SCRIPT_BATCH_SIZE} at a time.
+     * Without transaction every statement still stands on its own: each batch is committed as a unit, and a batch
+     * that fails is rolled back and re-run statement by statement, so a failing statement does not stop the script.
+     * With transaction the whole script runs in one transaction that is committed at the end, or rolled back at the
+     * first failure (then nothing after it runs, and the last result is not paged).
+     * The result is the last statement's; for a script it also has the update count of every statement and the
+     * errors of those that failed.
+     */
+    public static ExecutionResult execute(Connection conn, String sql, ExecutionContext ctx, int pageSize,
+                                          boolean transaction) {
+        return execute(conn, split(sql, ctx), ctx, pageSize, transaction);
+    }
+
+    /**
+     * As {@link #execute(Connection, String, ExecutionContext, int, boolean)} for a script that is already split,
+     * e.g. the analysis of the SQL that was reviewed, so the text is not scanned again.
+     */
+    public static ExecutionResult execute(Connection conn, SqlScript script, ExecutionContext ctx, int pageSize,
+                                          boolean transaction) {
         ExecutionResult result = new ExecutionResult();
         long start = System.currentTimeMillis();
-        sql = sql.trim();
-        if (sql.isEmpty()) {
+        List<SqlScript.Statement> statements = script.getStatements();
+        int n = statements.size();
+        if (n == 0) {
             result.setSuccess(false);
             result.setStatementType("UNKNOWN");
             result.setWarning("empty SQL");
             result.setExecutionTimeMs(System.currentTimeMillis() - start);
             return result;
         }
-        String[] statements = isPlsqlDdl(sql) ? new String[] { sql } : splitStatements(sql);
+        ctx.statementsPlanned(n);
+        long[] counts = new long[n];
+        List<ExecutionResult.StatementError> errors = new ArrayList<>();
+        int done = 0;
+        boolean aborted = false;
         ExecutionResult last = null;
-        for (String stmt : statements) {
-            stmt = stmt.trim();
-            if (stmt.isEmpty()) continue;
-            last = executeOne(conn, stmt);
-            last.setExecutionTimeMs(System.currentTimeMillis() - start);
+        try {
+            if (transaction) conn.setAutoCommit(false);
+            while (done < n) {
+                if (ctx.isCancelled()) {
+                    last = new ExecutionResult();
+                    last.setStatementType(statements.get(done).getType());
+                    last.setWarning(ctx.cancelledException().getMessage());
+                    aborted = true;
+                    break;
+                }
+                int end = done;
+                while (end < n - 1 && isBatchable(statements.get(end))) end++;
+                if (end - done >= 2) {
+                    int failed = executeBatched(conn, statements, done, end, counts, errors, ctx, transaction);
+                    if (failed >= 0) {
+                        last = new ExecutionResult();
+                        last.setStatementType(statements.get(failed).getType());
+                        last.setWarning(errors.get(errors.size() - 1).getError());
+                        done = failed + 1;
+                        aborted = true;
+                        break;
+                    }
+                    done = end;
+                    continue;
+                }
+                last = executeOne(conn, statements.get(done), null, ctx, done == n - 1 && !transaction ? pageSize : 0);
+                last.setExecutionTimeMs(System.currentTimeMillis() - start);
+                counts[done] = !last.isSuccess() ? Statement.EXECUTE_FAILED : last.getColumns() != null ? -1 : last.getRowsAffected();
+                if (!last.isSuccess()) errors.add(new ExecutionResult.StatementError(done + 1, last.getWarning()));
+                done++;
+                ctx.statementCompleted();
+                if (!last.isSuccess() && transaction) {
+                    aborted = true;
+                    break;
+                }
+            }
+        } catch (SQLException e) {
+            // a batch stopped by cancel or a lost connection; the statements after it do not run
+            last = new ExecutionResult();
+            last.setStatementType(done < n ? statements.get(done).getType() : "UNKNOWN");
+            last.setWarning(ctx.isCancelled() ? ctx.cancelledException().getMessage() : e.getMessage());
+            aborted = true;
+        } finally {
+            if (transaction) endTransaction(conn, aborted || (last != null && !last.isSuccess()), result);
         }
         if (last != null) {
             result.setColumns(last.getColumns());
+            result.setColumnTypes(last.getColumnTypes());
             result.setRows(last.getRows());
             result.setRowsAffected(last.getRowsAffected());
-            result.setSuccess(last.isSuccess());
+            result.setSuccess(last.isSuccess() && !"rolled_back".equals(result.getTransaction()));
             result.setStatementType(last.getStatementType());
-            result.setWarning(last.getWarning());
+            if (result.getWarning() == null) result.setWarning(last.getWarning());
             result.setExecutionTimeMs(last.getExecutionTimeMs());
+            result.setTruncated(last.getTruncated());
+            result.setTruncatedReason(last.getTruncatedReason());
+            result.setRowsFetched(last.getRowsFetched());
+            result.setCursor(last.getCursor());
         } else {
-            result.setSuccess(true);
-            result.setStatementType(inferStatementType(sql));
+            result.setSuccess(!"rolled_back".equals(result.getTransaction()));
+            result.setStatementType(statements.get(0).getType());
+        }
+        if (n > 1) {
+            result.setStatements(n);
+            result.setUpdateCounts(Arrays.copyOf(counts, done));
+            if (!errors.isEmpty()) {
+                result.setErrors(errors);
+                if (result.getWarning() == null) result.setWarning(errors.size() + " of " + n + " statements failed; see errors");
+            }
+        }
+        result.setExecutionTimeMs(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    /**
+     * Execute a single statement with ? placeholders through a PreparedStatement, binding params in order (see
+     * {@link SqlParams} for how values map to SQL types). Paging works as for {@link #execute(Connection, String,
+     * ExecutionContext, int)}. With the pool's statement cache, repeating the same SQL text reuses the prepared statement.
+     */
+    public static ExecutionResult executePrepared(Connection conn, String sql, List<?> params, ExecutionContext ctx,
+                                                  int pageSize) {
+        long start = System.currentTimeMillis();
+        SqlScript script = split(sql, ctx);
+        if (script.size() != 1) {
+            ExecutionResult result = new ExecutionResult();
+            result.setSuccess(false);
+            result.setStatementType(script.size() == 0 ? "UNKNOWN" : script.get(0).getType());
+            result.setWarning(script.size() == 0 ? "empty SQL" : "params need a single statement");
+            result.setExecutionTimeMs(System.currentTimeMillis() - start);
+            return result;
         }
+        ctx.statementsPlanned(1);
+        ExecutionResult result = executeOne(conn, script.get(0), params, ctx, pageSize);
+        ctx.statementCompleted();
         result.setExecutionTimeMs(System.currentTimeMillis() - start);
         return result;
     }
 
-    /** True if SQL is PL/SQL DDL (CREATE FUNCTION/PROCEDURE/PACKAGE) and must be run as one statement. */
-    private static boolean isPlsqlDdl(String sql) {
-        String u = sql.trim().toUpperCase();
-        if (!u.startsWith("CREATE")) return false;
-        return u.contains(" FUNCTION ") || u.contains(" PROCEDURE ") || u.contains(" PACKAGE ");
+    /** Statements sent per executeBatch for runs of DML in a script. */
+    static final int SCRIPT_BATCH_SIZE = 500;
+
+    /** Plain DML that returns only an update count, so it can go into a JDBC batch. */
+    private static boolean isBatchable(SqlScript.Statement stmt) {
+        String type = stmt.getType();
+        if (!"INSERT".equals(type) && !"UPDATE".equals(type) && !"DELETE".equals(type) && !"MERGE".equals(type)) return false;
+        return !stmt.hasReturning();
     }
 
     /**
-     * Split SQL by semicolon, but do not split on semicolons inside single-quoted strings
-     * (so PL/SQL blocks and DDL like CREATE FUNCTION work as one statement).
+     * Run statements [from, to) as JDBC batches, recording their update counts and errors. Returns -1 when done, or
+     * in a transaction the index of the statement that failed (the caller rolls back). Outside a transaction each
+     * batch is committed on its own; if one fails it is rolled back and its statements are run one at a time.
      */
-    private static String[] splitStatements(String sql) {
-        List<String> list = new ArrayList<>();
-        int start = 0;
-        int len = sql.length();
-        int i = 0;
-        while (start < len) {
-            boolean inSingle = false;
-            int semi = -1;
-            for (i = start; i < len; i++) {
-                char c = sql.charAt(i);
-                if (c == '\'') {
-                    if (inSingle && i + 1 < len && sql.charAt(i + 1) == '\'') {
-                        i++; // skip escaped quote
-                    } else {
-                        inSingle = !inSingle;
+    private static int executeBatched(Connection conn, List<SqlScript.Statement> statements, int from, int to, long[] counts,
+                                      List<ExecutionResult.StatementError> errors, ExecutionContext ctx,
+                                      boolean transaction) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            ctx.register(st);
+            try {
+                for (int i = from; i < to; i += SCRIPT_BATCH_SIZE) {
+                    int end = Math.min(to, i + SCRIPT_BATCH_SIZE);
+                    // before addBatch: the pool only tracks (and rolls back) transactions begun before the statements
+                    if (!transaction) conn.setAutoCommit(false);
+                    try {
+                        for (int k = i; k < end; k++) st.addBatch(statements.get(k).getText());
+                        int[] c = st.executeBatch();
+                        if (!transaction) conn.commit();
+                        for (int k = i; k < end; k++) {
+                            counts[k] = k - i < c.length ? c[k - i] : Statement.SUCCESS_NO_INFO;
+                            ctx.statementCompleted();
+                        }
+                    } catch (BatchUpdateException e) {
+                        if (ctx.isCancelled()) {
+                            if (!transaction) conn.rollback();
+                            throw ctx.cancelledException();
+                        }
+                        st.clearBatch();
+                        if (transaction) {
+                            int failed = i + firstFailure(e.getUpdateCounts(), end - i);
+                            int[] c = e.getUpdateCounts();
+                            for (int k = i; k < failed; k++) counts[k] = c != null && k - i < c.length ? c[k - i] : Statement.SUCCESS_NO_INFO;
+                            counts[failed] = Statement.EXECUTE_FAILED;
+                            errors.add(new ExecutionResult.StatementError(failed + 1, e.getMessage()));
+                            return failed;
+                        }
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                        for (int k = i; k < end; k++) {
+                            ExecutionResult r = executeOne(conn, statements.get(k), null, ctx, 0);
+                            if (ctx.isCancelled()) throw ctx.cancelledException();
+                            counts[k] = r.isSuccess() ? r.getRowsAffected() : Statement.EXECUTE_FAILED;
+                            if (!r.isSuccess()) errors.add(new ExecutionResult.StatementError(k + 1, r.getWarning()));
+                            ctx.statementCompleted();
+                        }
+                    } catch (SQLException e) {
+                        if (!transaction) {
+                            try { conn.rollback(); } catch (SQLException ignored) {}
+                        }
+                        throw e;
+                    } finally {
+                        if (!transaction) conn.setAutoCommit(true);
                     }
-                } else if (!inSingle && c == ';') {
-                    semi = i;
-                    break;
                 }
+                return -1;
+            } finally {
+                ctx.unregister(st);
             }
-            if (semi < 0) {
-                list.add(sql.substring(start).trim());
-                break;
+        }
+    }
+
+    /** Offset of the failed statement in a batch: the first EXECUTE_FAILED count, else the first missing count. */
+    private static int firstFailure(int[] counts, int size) {
+        if (counts == null) return 0;
+        for (int k = 0; k < counts.length; k++) {
+            if (counts[k] == Statement.EXECUTE_FAILED) return k;
+        }
+        return Math.min(counts.length, size - 1);
+    }
+
+    /** Commit, or roll back if the script failed; result.transaction says which, and a failed commit is reported. */
+    private static void endTransaction(Connection conn, boolean rollback, ExecutionResult result) {
+        try {
+            if (rollback) {
+                conn.rollback();
+                result.setTransaction("rolled_back");
+            } else {
+                conn.commit();
+                result.setTransaction("committed");
             }
-            list.add(sql.substring(start, semi).trim());
-            start = semi + 1;
+        } catch (SQLException e) {
+            try { conn.rollback(); } catch (SQLException ignored) {}
+            result.setTransaction("rolled_back");
+            result.setWarning("Commit failed: " + e.getMessage());
+        } finally {
+            try { conn.setAutoCommit(true); } catch (SQLException ignored) {}
         }
-        return list.toArray(new String[0]);
     }
 
-    private static ExecutionResult executeOne(Connection conn, String sql) {
+    /** Split sql into statements for the connection's dialect. */
+    static SqlScript split(String sql, ExecutionContext ctx) {
+        return SqlScript.split(sql, ctx.getFetchStrategy().getDbType());
+    }
+
+    /** One statement; with params (even empty) through a PreparedStatement with the params bound. */
+    private static ExecutionResult executeOne(Connection conn, SqlScript.Statement stmt, List<?> params,
+                                              ExecutionContext ctx, int pageSize) {
+        String sql = stmt.getText();
         ExecutionResult r = new ExecutionResult();
-        r.setStatementType(inferStatementType(sql));
+        r.setStatementType(stmt.getType());
+        ResultLimits limits = ctx.getResultLimits();
+        FetchStrategy fetch = ctx.getFetchStrategy();
+        FetchStrategy.Scope scope = FetchStrategy.Scope.NONE;
+        Statement st = null;
+        boolean detached = false;
         try {
-            try (Statement st = conn.createStatement()) {
-                st.setQueryTimeout(300);
-                boolean isResultSet = st.execute(sql);
+            if (stmt.isQuery()) scope = fetch.begin(conn);
+            if (params != null) {
+                PreparedStatement ps = conn.prepareStatement(sql);
+                st = ps;
+                SqlParams.bind(ps, params);
+            } else {
+                st = conn.createStatement();
+            }
+            fetch.applyToResult(st, pageSize);
+            if (pageSize <= 0 && limits.getMaxRows() > 0 && limits.getMaxRows() < Integer.MAX_VALUE) {
+                // let the driver stop early; one extra row tells us whether the result was cut
+                st.setMaxRows((int) limits.getMaxRows() + 1);
+            }
+            ctx.register(st);
+            try {
+                boolean isResultSet = params != null ? ((PreparedStatement) st).execute() : st.execute(sql);
                 if (isResultSet) {
-                    try (ResultSet rs = st.getResultSet()) {
+                    ResultSet rs = st.getResultSet();
+                    try {
                         ResultSetMetaData meta = rs.getMetaData();
                         int cols = meta.getColumnCount();
                         List<String> columnNames = new ArrayList<>();
+                        int[] columnTypes = new int[cols];
                         for (int i = 1; i <= cols; i++) {
                             columnNames.add(meta.getColumnLabel(i));
+                            columnTypes[i - 1] = meta.getColumnType(i);
                         }
                         r.setColumns(columnNames);
+                        r.setColumnTypes(columnTypes);
+                        ColumnCodec[] codecs = ColumnCodecs.forTypes(columnTypes, limits.getLobPreviewSize());
                         List<List<Object>> rows = new ArrayList<>();
-                        while (rs.next()) {
-                            List<Object> row = new ArrayList<>();
-                            for (int i = 1; i <= cols; i++) {
-                                Object v = rs.getObject(i);
-                                row.add(v instanceof Clob ? clobToString((Clob) v) : v);
+                        String stop = readRows(rs, codecs, pageSize > 0 ? pageSize : Integer.MAX_VALUE, rows, 0, ctx);
+                        setRows(r, rows);
+                        if (stop != null && rs.next()) {
+                            if (pageSize > 0) {
+                                // more rows: keep statement and result set open behind a cursor
+                                r.setCursor(new ResultCursor(st, rs, columnNames, columnTypes, codecs, readRow(rs, codecs),
+                                    rows.size(), scope));
+                                detached = true;
                             }
-                            rows.add(row);
+                            markTruncated(r, stop);
                         }
-                        r.setRows(rows);
-                        r.setRowsAffected(rows.size());
+                    } finally {
+                        if (!detached) rs.close();
                     }
                 } else {
                     r.setRowsAffected(st.getUpdateCount() >= 0 ? st.getUpdateCount() : 0);
                 }
                 r.setSuccess(true);
+            } finally {
+                ctx.unregister(st);
+            }
+        } catch (SQLException e) {
+            r.setSuccess(false);
+            r.setSqlState(e.getSQLState());
+            // drivers report cancel differently (ORA-01013, 57014, ...); report why we cancelled instead
+            r.setWarning(ctx.isCancelled() ? ctx.cancelledException().getMessage() : e.getMessage());
+        } finally {
+            if (st != null && !detached) {
+                try { st.close(); } catch (SQLException ignored) {}
+            }
+            if (!detached) scope.end(r.isSuccess());
+        }
+        return r;
+    }
+
+    /**
+     * Next page from an open cursor (fetch_more). The cursor is marked exhausted after its last row or on error,
+     * so the registry closes it.
+     */
+    public static ExecutionResult fetchMore(ResultCursor cursor, int pageSize, ExecutionContext ctx) {
+        ExecutionResult r = new ExecutionResult();
+        long start = System.currentTimeMillis();
+        r.setStatementType("SELECT");
+        r.setColumns(cursor.getColumns());
+        r.setColumnTypes(cursor.getColumnTypes());
+        ResultSet rs = cursor.getResultSet();
+        ColumnCodec[] codecs = cursor.getCodecs();
+        try {
+            ctx.register(cursor.getStatement());
+            try {
+                List<List<Object>> rows = new ArrayList<>();
+                long bytes = 0;
+                List<Object> pending = cursor.takePending();
+                if (pending != null) {
+                    rows.add(pending);
+                    bytes = estimateBytes(pending);
+                }
+                String stop = readRows(rs, codecs, pageSize, rows, bytes, ctx);
+                if (stop != null && rs.next()) {
+                    cursor.setPending(readRow(rs, codecs));
+                    markTruncated(r, stop);
+                } else {
+                    cursor.setExhausted();
+                }
+                cursor.addRowsFetched(rows.size());
+                setRows(r, rows);
+                r.setSuccess(true);
+            } finally {
+                ctx.unregister(cursor.getStatement());
             }
         } catch (SQLException e) {
+            cursor.setExhausted();
             r.setSuccess(false);
-            r.setWarning(e.getMessage());
+            r.setWarning(ctx.isCancelled() ? ctx.cancelledException().getMessage() : e.getMessage());
         }
+        r.setExecutionTimeMs(System.currentTimeMillis() - start);
         return r;
     }
 
-    private static String clobToString(Clob clob) throws SQLException {
-        if (clob == null) return null;
-        try (Reader r = clob.getCharacterStream()) {
-            if (r == null) return null;
-            StringBuilder sb = new StringBuilder();
-            char[] buf = new char[8192];
-            int n;
-            while ((n = r.read(buf)) >= 0) sb.append(buf, 0, n);
-            return sb.toString();
-        } catch (IOException e) {
-            throw new SQLException("Failed to read CLOB", e);
+    /** Marker returned by {@link #readRows} when the page is full (not a limit, so not reported as truncation). */
+    private static final String PAGE_FULL = "page";
+
+    /**
+     * Append rows until the result set ends (returns null), the page holds pageSize rows ({@link #PAGE_FULL}), or a
+     * {@link ResultLimits} limit is reached (returns its name). Limits are checked before each row is read, so no row
+     * is fetched that would not be returned; bytes are the estimate for rows already in the list.
+     */
+    private static String readRows(ResultSet rs, ColumnCodec[] codecs, int pageSize, List<List<Object>> rows, long bytes,
+                                   ExecutionContext ctx) throws SQLException {
+        ResultLimits limits = ctx.getResultLimits();
+        long startNanos = System.nanoTime();
+        while (true) {
+            if (rows.size() >= pageSize) return PAGE_FULL;
+            String limit = limits.exceeded(rows.size(), bytes, startNanos);
+            if (limit != null) return limit;
+            if (!rs.next()) return null;
+            if (ctx.isCancelled()) throw ctx.cancelledException();
+            List<Object> row = readRow(rs, codecs);
+            rows.add(row);
+            bytes += estimateBytes(row);
+            ctx.rowFetched();
+        }
+    }
+
+    private static void setRows(ExecutionResult r, List<List<Object>> rows) {
+        r.setRows(rows);
+        r.setRowsAffected(rows.size());
+        r.setRowsFetched((long) rows.size());
+        r.setTruncated(false);
+    }
+
+    private static void markTruncated(ExecutionResult r, String stop) {
+        if (PAGE_FULL.equals(stop)) return;
+        r.setTruncated(true);
+        r.setTruncatedReason(stop);
+    }
+
+    /** Rough JSON size of a row: enough to bound memory and response size, not exact. */
+    private static long estimateBytes(List<Object> row) {
+        long n = 2;
+        for (Object v : row) {
+            if (v == null) n += 5;
+            else if (v instanceof CharSequence) n += ((CharSequence) v).length() + 3;
+            else if (v instanceof byte[]) n += ((byte[]) v).length * 4L + 3;
+            else if (v instanceof LobPreview) n += ((LobPreview) v).getPreview().length() + 48;
+            else if (v instanceof Number || v instanceof Boolean) n += 12;
+            else n += 32;
         }
+        return n;
+    }
+
+    /** One row decoded by the column codecs, so the row holds only plain values (see {@link ColumnCodec#read}). */
+    private static List<Object> readRow(ResultSet rs, ColumnCodec[] codecs) throws SQLException {
+        List<Object> row = new ArrayList<>(codecs.length);
+        for (int i = 0; i < codecs.length; i++) {
+            row.add(codecs[i].read(rs, i + 1));
+        }
+        return row;
     }
 
     /**
@@ -151,88 +472,208 @@ public final class JdbcExecutor {
      * Returns the number of rows written. For non–result-set statements writes "Rows affected: N".
      */
     public static long executeToCsvFile(Connection conn, String sql, Path filePath) throws SQLException, IOException {
-        ExecutionResult r = execute(conn, sql);
-        if (!r.isSuccess()) {
-            throw new SQLException(r.getWarning() != null ? r.getWarning() : "Execution failed");
-        }
-        long rowsWritten;
-        try (BufferedWriter w = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
-            if (r.getColumns() != null && r.getRows() != null) {
-                w.write(csvEscapeRow(r.getColumns()));
-                w.newLine();
-                for (List<Object> row : r.getRows()) {
-                    List<String> cells = new ArrayList<>();
-                    for (Object o : row) cells.add(o == null ? "" : o.toString());
-                    w.write(csvEscapeRow(cells));
-                    w.newLine();
-                }
-                rowsWritten = r.getRows().size();
-            } else {
-                w.write("Rows affected: " + r.getRowsAffected());
-                w.newLine();
-                rowsWritten = r.getRowsAffected();
-            }
-        }
-        return rowsWritten;
+        return executeToCsvFile(conn, sql, filePath, new ExecutionContext());
+    }
+
+    public static long executeToCsvFile(Connection conn, String sql, Path filePath, ExecutionContext ctx) throws SQLException, IOException {
+        return exportToFile(conn, sql, filePath, TextRowFormats.csv(), ctx);
     }
 
     /**
      * Execute SQL and write the result to a file as plain text: no header, columns tab-separated per row.
      * No extra newlines added between rows; only newlines present in the cell data are written (e.g. CLOB with line breaks).
-     * CLOB columns are read in full and written as text. Uses UTF-8. Returns the number of rows written.
+     * CLOB columns are streamed as text. Uses UTF-8. Returns the number of rows written.
      */
     public static long executeToTextFile(Connection conn, String sql, Path filePath) throws SQLException, IOException {
-        ExecutionResult r = execute(conn, sql);
-        if (!r.isSuccess()) {
-            throw new SQLException(r.getWarning() != null ? r.getWarning() : "Execution failed");
-        }
-        long rowsWritten;
-        try (BufferedWriter w = Files.newBufferedWriter(filePath, StandardCharsets.UTF_8)) {
-            if (r.getColumns() != null && r.getRows() != null) {
-                for (List<Object> row : r.getRows()) {
-                    for (int i = 0; i < row.size(); i++) {
-                        if (i > 0) w.write('\t');
-                        Object o = row.get(i);
-                        if (o != null) w.write(o.toString());
+        return executeToTextFile(conn, sql, filePath, new ExecutionContext());
+    }
+
+    public static long executeToTextFile(Connection conn, String sql, Path filePath, ExecutionContext ctx) throws SQLException, IOException {
+        return exportToFile(conn, sql, filePath, TextRowFormats.text(), ctx);
+    }
+
+    /**
+     * Execute SQL and stream the last statement's result set to a file in the given format; earlier statements run
+     * as in {@link #execute}. Rows go from a forward-only cursor straight to the file, so memory stays constant
+     * however many rows there are. Rows are written to name.partial, which replaces the file only on success.
+     * Returns the number of rows written; for non–result-set statements writes "Rows affected: N".
+     */
+    public static long exportToFile(Connection conn, String sql, Path filePath, RowFormat format, ExecutionContext ctx)
+            throws SQLException, IOException {
+        return exportToFile(conn, sql, filePath, format, false, ctx);
+    }
+
+    /** As {@link #exportToFile(Connection, String, Path, RowFormat, ExecutionContext)}; gzip compresses the file. */
+    public static long exportToFile(Connection conn, String sql, Path filePath, RowFormat format, boolean gzip,
+                                    ExecutionContext ctx) throws SQLException, IOException {
+        SqlScript script = split(sql, ctx);
+        if (script.size() == 0) throw new SQLException("empty SQL");
+        int last = script.size() - 1;
+        ctx.statementsPlanned(last + 1);
+        for (int i = 0; i < last; i++) {
+            ctx.checkAlive();
+            executeOne(conn, script.get(i), null, ctx, 0);
+            ctx.statementCompleted();
+        }
+        Path partial = ExportFiles.partialPath(filePath);
+        boolean committed = false;
+        String stmt = script.get(last).getText();
+        FetchStrategy.Scope scope = script.get(last).isQuery() ? ctx.getFetchStrategy().begin(conn) : FetchStrategy.Scope.NONE;
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ctx.getFetchStrategy().applyToExport(st);
+            ctx.register(st);
+            try {
+                long rowsWritten;
+                if (st.execute(stmt)) {
+                    try (ResultSet rs = st.getResultSet(); BufferedWriter w = newWriter(partial, gzip, ctx)) {
+                        rowsWritten = writeRows(rs, w, format, ctx);
+                    }
+                } else {
+                    rowsWritten = Math.max(st.getUpdateCount(), 0);
+                    try (BufferedWriter w = newWriter(partial, gzip, ctx)) {
+                        w.write("Rows affected: " + rowsWritten);
+                        w.newLine();
                     }
-                    // do not add newline between rows; only data's own newlines appear
                 }
-                rowsWritten = r.getRows().size();
-            } else {
-                w.write("Rows affected: " + r.getRowsAffected());
-                w.newLine();
-                rowsWritten = r.getRowsAffected();
+                ExportFiles.commit(partial, filePath);
+                committed = true;
+                ctx.statementCompleted();
+                return rowsWritten;
+            } catch (SQLException e) {
+                throw ctx.isCancelled() ? ctx.cancelledException() : e;
+            } finally {
+                ctx.unregister(st);
             }
+        } finally {
+            scope.end(committed);
+            if (!committed) ExportFiles.discard(partial);
         }
-        return rowsWritten;
     }
 
-    /** CSV standard: quote field if it contains comma, double-quote, newline, or CR; escape " as "". */
-    private static String csvEscapeRow(List<String> cells) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < cells.size(); i++) {
-            if (i > 0) sb.append(',');
-            String s = cells.get(i) == null ? "" : cells.get(i);
-            if (s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r")) {
-                sb.append('"').append(s.replace("\"", "\"\"")).append('"');
-            } else {
-                sb.append(s);
+    static long writeRows(ResultSet rs, Writer w, RowFormat format, ExecutionContext ctx) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int cols = meta.getColumnCount();
+        List<String> columnNames = new ArrayList<>(cols);
+        int[] columnTypes = new int[cols];
+        for (int i = 1; i <= cols; i++) {
+            columnNames.add(meta.getColumnLabel(i));
+            columnTypes[i - 1] = meta.getColumnType(i);
+        }
+        format.begin(w, columnNames, columnTypes);
+        long rows = 0;
+        while (rs.next()) {
+            if (ctx.isCancelled()) throw ctx.cancelledException();
+            format.writeRow(w, rs);
+            rows++;
+            ctx.rowWritten();
+        }
+        format.end(w);
+        return rows;
+    }
+
+    /** UTF-8 writer, optionally gzip-compressed, whose file bytes are counted for progress reports. */
+    static BufferedWriter newWriter(Path filePath, boolean gzip, ExecutionContext ctx) throws IOException {
+        OutputStream counting = newOutputStream(filePath, ctx);
+        OutputStream os = gzip ? new GZIPOutputStream(counting, 1 << 16) : counting;
+        return new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /** File output stream whose bytes are counted for progress reports. */
+    private static OutputStream newOutputStream(Path filePath, ExecutionContext ctx) throws IOException {
+        return new FilterOutputStream(Files.newOutputStream(filePath)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                ctx.bytesWritten(len);
+            }
+        };
+    }
+
+    /**
+     * Run a query that returns one row and write one of its values (a CLOB or BLOB) to a file, streamed from the
+     * driver in chunks so the value is never held in memory. Binary columns (BLOB, BINARY, VARBINARY, LONGVARBINARY)
+     * are written byte for byte, all others as UTF-8 text. column is the column label (case-insensitive); null or
+     * empty takes the first column. Written to name.partial, which replaces the file only on success.
+     * Returns the number of bytes written.
+     */
+    public static long executeLobToFile(Connection conn, String sql, String column, Path filePath, ExecutionContext ctx)
+            throws SQLException, IOException {
+        sql = sql.trim();
+        if (sql.isEmpty()) throw new SQLException("empty SQL");
+        ctx.statementsPlanned(1);
+        Path partial = ExportFiles.partialPath(filePath);
+        boolean committed = false;
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setMaxRows(2);
+            ctx.register(st);
+            try {
+                if (!st.execute(sql)) throw new SQLException("lob_to_file needs a query that returns one row");
+                long bytes;
+                try (ResultSet rs = st.getResultSet()) {
+                    ResultSetMetaData meta = rs.getMetaData();
+                    int col = lobColumn(meta, column);
+                    if (!rs.next()) throw new SQLException("query returned no rows");
+                    bytes = isBinaryType(meta.getColumnType(col))
+                        ? copyBinary(rs, col, partial, ctx) : copyText(rs, col, partial, ctx);
+                    ctx.rowWritten();
+                    if (rs.next()) throw new SQLException("query returned more than one row; select a single value");
+                }
+                ExportFiles.commit(partial, filePath);
+                committed = true;
+                ctx.statementCompleted();
+                return bytes;
+            } catch (SQLException e) {
+                throw ctx.isCancelled() ? ctx.cancelledException() : e;
+            } finally {
+                ctx.unregister(st);
+            }
+        } finally {
+            if (!committed) ExportFiles.discard(partial);
+        }
+    }
+
+    private static int lobColumn(ResultSetMetaData meta, String column) throws SQLException {
+        if (column == null || column.isEmpty()) return 1;
+        for (int i = 1; i <= meta.getColumnCount(); i++) {
+            if (meta.getColumnLabel(i).equalsIgnoreCase(column)) return i;
+        }
+        throw new SQLException("column '" + column + "' not in the query result");
+    }
+
+    private static boolean isBinaryType(int sqlType) {
+        return sqlType == Types.BLOB || sqlType == Types.BINARY || sqlType == Types.VARBINARY
+            || sqlType == Types.LONGVARBINARY;
+    }
+
+    private static long copyBinary(ResultSet rs, int col, Path partial, ExecutionContext ctx) throws SQLException, IOException {
+        try (InputStream in = rs.getBinaryStream(col)) {
+            if (in == null) throw new SQLException("value is NULL");
+            long bytes = 0;
+            try (OutputStream out = newOutputStream(partial, ctx)) {
+                byte[] buf = new byte[1 << 16];
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    if (ctx.isCancelled()) throw ctx.cancelledException();
+                    out.write(buf, 0, n);
+                    bytes += n;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private static long copyText(ResultSet rs, int col, Path partial, ExecutionContext ctx) throws SQLException, IOException {
+        try (Reader in = rs.getCharacterStream(col)) {
+            if (in == null) throw new SQLException("value is NULL");
+            try (BufferedWriter out = newWriter(partial, false, ctx)) {
+                char[] buf = new char[1 << 15];
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    if (ctx.isCancelled()) throw ctx.cancelledException();
+                    out.write(buf, 0, n);
+                }
             }
+            return Files.size(partial);
         }
-        return sb.toString();
-    }
-
-    private static String inferStatementType(String sql) {
-        String upper = sql.toUpperCase().trim();
-        if (upper.startsWith("SELECT")) return "SELECT";
-        if (upper.startsWith("INSERT")) return "INSERT";
-        if (upper.startsWith("UPDATE")) return "UPDATE";
-        if (upper.startsWith("DELETE")) return "DELETE";
-        if (upper.startsWith("MERGE")) return "MERGE";
-        if (upper.startsWith("CREATE")) return "DDL";
-        if (upper.startsWith("ALTER")) return "DDL";
-        if (upper.startsWith("DROP")) return "DDL";
-        if (upper.startsWith("TRUNCATE")) return "DDL";
-        return "UNKNOWN";
     }
 }
@@ -22,6 +22,7 @@ public class JdbcPool {
     private final Map<String, Boolean> available = new ConcurrentHashMap<>();
     private final Map<String, SqlAnalyzer> analyzers = new ConcurrentHashMap<>();
     private final Map<String, SqlFormatter> formatters = new ConcurrentHashMap<>();
+    private final Map<String, FetchStrategy> fetchStrategies = new ConcurrentHashMap<>();
 
     public JdbcPool(Config config) {
         this.configs = config.getConnections();
@@ -33,9 +34,12 @@ public class JdbcPool {
         var commandMatch = review != null ? review.getCommandMatch() : null;
         for (ConnectionEntry e : this.configs) {
             if (e.getName() == null || e.getName().isBlank()) continue;
-            String dbType = (e.getDbType() != null && !e.getDbType().isBlank()) ? e.getDbType().trim() : "mysql";
-            analyzers.put(e.getName(), PluginRegistry.getAnalyzer(dbType, wholeText, commandMatch));
+            // as configured (null if unset): the analyzer then splits statements with the same generic rules as the
+            // executor (FetchStrategy), while Druid still parses the unknown dialect as MySQL
+            String dbType = e.getDbType();
+            analyzers.put(e.getName(), PluginRegistry.getAnalyzer(dbType, wholeText, commandMatch, e.isAutoParameterize()));
             formatters.put(e.getName(), PluginRegistry.getFormatter(dbType));
+            fetchStrategies.put(e.getName(), FetchStrategy.forConnection(e));
             if (e.getUrl() == null || e.getUrl().isBlank()) continue;
             try {
                 DruidDataSource ds = createDataSource(e);
@@ -63,6 +67,12 @@ public class JdbcPool {
         ds.setMaxActive(20);
         ds.setMinIdle(0);
         ds.setMaxWait(10_000);
+        // execute_sql with params and the loaders prepare the same SQL text again and again; connections that opt in
+        // keep those statements open so the database can skip parse and plan (each one holds a server-side cursor)
+        if (e.getPreparedStatementCacheSize() > 0) {
+            ds.setPoolPreparedStatements(true);
+            ds.setMaxPoolPreparedStatementPerConnectionSize(e.getPreparedStatementCacheSize());
+        }
         // validation query is DB-specific (e.g. Oracle: SELECT 1 FROM DUAL); skip to avoid driver errors
         try {
             ds.init();
@@ -82,6 +92,10 @@ public class JdbcPool {
         return formatters.getOrDefault(connectionName, PluginRegistry.getFormatter("mysql"));
     }
 
+    public FetchStrategy getFetchStrategy(String connectionName) {
+        return fetchStrategies.getOrDefault(connectionName, FetchStrategy.DEFAULT);
+    }
+
     /** Error message when connection is unavailable: for AI client to show to end user. */
     public static final String MSG_CONNECTION_UNAVAILABLE =
         "Database connection unavailable. Please ask the user to check the database connection; after it is available, use the list_connections tool to re-validate connectivity.";
@@ -158,6 +172,11 @@ public class JdbcPool {
         }
     }
 
+    /** Config entry for a connection name, or null if not configured. */
+    public ConnectionEntry getConnectionEntry(String connectionName) {
+        return configs.stream().filter(c -> connectionName != null && connectionName.equals(c.getName())).findFirst().orElse(null);
+    }
+
     /**
      * Returns [databaseName, schema, driver] for audit/logging. Empty strings if not set.
      */
@@ -0,0 +1,91 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Key column values (checkpoint keys, watermarks) stored as text with a type tag so they can be bound again in a
+ * later query: "number", "timestamp", "date" or "string". The tag comes from the column's SQL type and the value is
+ * read with the matching getter, so driver classes such as oracle.sql.TIMESTAMP never reach the text form.
+ */
+final class KeyValues {
+
+    private KeyValues() {
+    }
+
+    /** Type tag for a key column of the given java.sql.Types (Oracle's TIMESTAMP WITH [LOCAL] TIME ZONE included). */
+    static String typeOf(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return "number";
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case -101:
+            case -102:
+                return "timestamp";
+            case Types.DATE:
+                return "date";
+            default:
+                return "string";
+        }
+    }
+
+    /** Read a key column with the getter for its tag: BigDecimal, Timestamp, Date or String; null for NULL. */
+    static Object read(ResultSet rs, int column, String type) throws SQLException {
+        switch (type) {
+            case "number": return rs.getBigDecimal(column);
+            case "timestamp": return rs.getTimestamp(column);
+            case "date": return rs.getDate(column);
+            default: return rs.getString(column);
+        }
+    }
+
+    /** Type tag for a value read by {@link #read}; null for null. */
+    static String type(Object v) {
+        if (v == null) return null;
+        if (v instanceof Number) return "number";
+        if (v instanceof Timestamp || v instanceof LocalDateTime) return "timestamp";
+        if (v instanceof Date || v instanceof LocalDate) return "date";
+        return "string";
+    }
+
+    static String format(Object v) {
+        if (v == null) return null;
+        if (v instanceof LocalDateTime) return Timestamp.valueOf((LocalDateTime) v).toString();
+        if (v instanceof Number) return new BigDecimal(v.toString()).toPlainString();
+        return v.toString();
+    }
+
+    static void bind(PreparedStatement ps, int index, String value, String type) throws SQLException {
+        switch (type) {
+            case "number": ps.setBigDecimal(index, new BigDecimal(value)); break;
+            case "timestamp": ps.setTimestamp(index, Timestamp.valueOf(value)); break;
+            case "date": ps.setDate(index, Date.valueOf(value)); break;
+            default: ps.setString(index, value);
+        }
+    }
+
+    /** Compare two non-null values of the same column; strings compare by code point, not the database collation. */
+    static int compare(Object a, Object b) {
+        String type = type(a);
+        if (type.equals("number")) return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        if (type.equals("timestamp")) return Timestamp.valueOf(format(a)).compareTo(Timestamp.valueOf(format(b)));
+        if (type.equals("date")) return Date.valueOf(format(a)).compareTo(Date.valueOf(format(b)));
+        return a.toString().compareTo(b.toString());
+    }
+}
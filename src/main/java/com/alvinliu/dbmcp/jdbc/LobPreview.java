@@ -0,0 +1,24 @@
+package com.alvinliu.dbmcp.jdbc;
+
+/**
+ * In-memory value of a CLOB or BLOB longer than the connection's lob_preview_size: the first characters (base64 of
+ * the first bytes for binary) and the full length, so one large document does not have to be read into memory.
+ * Serialized as {"preview": "...", "length": 1048576, "truncated": true}; lob_to_file writes the whole value.
+ */
+public final class LobPreview {
+    private final String preview;
+    private final long length;
+    private final boolean truncated = true;
+
+    public LobPreview(String preview, long length) {
+        this.preview = preview;
+        this.length = length;
+    }
+
+    public String getPreview() { return preview; }
+
+    /** Characters for a CLOB, bytes for a BLOB. */
+    public long getLength() { return length; }
+
+    public boolean isTruncated() { return truncated; }
+}
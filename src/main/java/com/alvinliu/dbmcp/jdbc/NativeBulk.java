@@ -0,0 +1,244 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.alibaba.druid.DbType;
+import com.alvinliu.dbmcp.core.SqlScript;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The databases' own bulk paths, used instead of row-at-a-time JDBC where they exist, only when a tool is called with
+ * method "native": the database parses and formats values itself (COPY reads a base64 string for bytea as escape
+ * format, y/n as booleans, and writes t/f and \x hex), which differs from the JDBC conversions of the other paths.
+ * <ul>
+ *   <li>PostgreSQL: COPY ... TO STDOUT / FROM STDIN through the pgjdbc CopyManager, for CSV exports and loads. A
+ *   COPY load is all or nothing, so when the data is refused the load falls back to batched INSERTs, which reject
+ *   the bad rows one by one.</li>
+ *   <li>MySQL and MariaDB: LOAD DATA LOCAL INFILE for loads (needs allowLoadLocalInfile=true on the JDBC URL and
+ *   local_infile on the server). The server skips rows it cannot insert and reports warnings instead of errors, which
+ *   is why it is used only when asked for explicitly.</li>
+ * </ul>
+ * Oracle needs no special path: the Oracle driver already sends JDBC batches as array DML, which is what
+ * {@link CsvLoad} does. The drivers are reached by reflection, so none of them is a build dependency; when the
+ * driver or the feature is not available the methods return null and the caller uses the generic JDBC path.
+ */
+public final class NativeBulk {
+    /** Method names reported in results. */
+    public static final String JDBC = "jdbc";
+    public static final String COPY = "copy";
+    public static final String LOAD_DATA = "load_data";
+
+    private NativeBulk() {
+    }
+
+    /** Whether a CSV export of this database can use COPY TO STDOUT. */
+    public static boolean canExportCsv(DbType dbType) {
+        return dbType == DbType.postgresql || dbType == DbType.greenplum;
+    }
+
+    /**
+     * Export a single query with COPY (query) TO STDOUT as CSV with header, written like {@link JdbcExecutor#exportToFile}
+     * (through name.partial, optionally gzip). Returns the row count, or null if the statement is not a single query
+     * or the connection is not pgjdbc; nothing is written then.
+     */
+    public static Long exportCsv(Connection conn, String sql, Path filePath, boolean gzip, ExecutionContext ctx)
+            throws SQLException, IOException {
+        SqlScript script = JdbcExecutor.split(sql, ctx);
+        if (script.size() != 1 || !isQuery(script.get(0))) return null;
+        sql = script.get(0).getText();
+        Copy copy = Copy.of(conn);
+        if (copy == null) return null;
+        Path partial = ExportFiles.partialPath(filePath);
+        boolean committed = false;
+        try {
+            long rows;
+            try (BufferedWriter w = JdbcExecutor.newWriter(partial, gzip, ctx)) {
+                rows = copy.run(ctx, "copyOut", "COPY (" + sql + ") TO STDOUT WITH (FORMAT csv, HEADER true)", w);
+            }
+            ExportFiles.commit(partial, filePath);
+            committed = true;
+            return rows;
+        } finally {
+            if (!committed) ExportFiles.discard(partial);
+        }
+    }
+
+    /**
+     * Load a CSV file with the database's bulk path: COPY FROM STDIN on PostgreSQL, LOAD DATA LOCAL INFILE on
+     * MySQL/MariaDB. Returns null when there is no such path, it is disabled, or (COPY) the data was refused; the
+     * caller then loads with {@link CsvLoad#run}.
+     */
+    public static CsvLoad.Result loadCsv(JdbcPool pool, String connectionName, DbType dbType, Path filePath,
+                                         String table, List<String> columns, boolean header, char delimiter,
+                                         boolean emptyAsNull, ExecutionContext ctx) throws SQLException, IOException {
+        String insert = CsvLoad.insertSql(table, columns);
+        String columnList = insert.substring(insert.indexOf('(') + 1, insert.indexOf(')'));
+        if (dbType == DbType.postgresql || dbType == DbType.greenplum) {
+            return copyIn(pool, connectionName, filePath, table, columnList, header, delimiter, emptyAsNull, ctx);
+        }
+        if (dbType == DbType.mysql || dbType == DbType.mariadb) {
+            return loadData(pool, connectionName, filePath, table, columns, header, delimiter, emptyAsNull, ctx);
+        }
+        return null;
+    }
+
+    private static CsvLoad.Result copyIn(JdbcPool pool, String connectionName, Path filePath, String table,
+                                         String columnList, boolean header, char delimiter, boolean emptyAsNull,
+                                         ExecutionContext ctx) throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder("COPY ").append(table).append(" (").append(columnList)
+            .append(") FROM STDIN WITH (FORMAT csv, HEADER ").append(header)
+            .append(", DELIMITER ").append(delimiter == '\t' ? "E'\\t'" : "'" + (delimiter == '\'' ? "''" : delimiter) + "'");
+        // COPY reads unquoted empty fields as NULL, like CsvLoad; FORCE_NOT_NULL keeps them as ''
+        if (!emptyAsNull) sql.append(", FORCE_NOT_NULL (").append(columnList).append(')');
+        sql.append(')');
+        try (Connection conn = pool.getConnection(connectionName)) {
+            Copy copy = Copy.of(conn);
+            if (copy == null) return null;
+            long rows;
+            try (BufferedReader r = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+                skipBom(r);
+                rows = copy.run(ctx, "copyIn", sql.toString(), r);
+            } catch (SQLException e) {
+                // bad data (class 22) or a constraint (class 23): the batched path finds and rejects the rows
+                String state = e.getSQLState();
+                if (!ctx.isCancelled() && state != null && (state.startsWith("22") || state.startsWith("23"))) return null;
+                throw e;
+            }
+            for (long i = 0; i < rows; i++) ctx.rowWritten();
+            return new CsvLoad.Result(rows, rows, 0, List.of(), COPY, 0);
+        }
+    }
+
+    private static CsvLoad.Result loadData(JdbcPool pool, String connectionName, Path filePath, String table,
+                                           List<String> columns, boolean header, char delimiter, boolean emptyAsNull,
+                                           ExecutionContext ctx) throws SQLException {
+        // read every field into a variable so CRLF line ends and empty fields can be handled like CsvLoad does
+        StringBuilder vars = new StringBuilder();
+        StringBuilder set = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            String v = "@c" + (i + 1);
+            String value = i == columns.size() - 1 ? "TRIM(TRAILING '\\r' FROM " + v + ")" : v;
+            if (emptyAsNull) value = "NULLIF(" + value + ", '')";
+            vars.append(i > 0 ? ", " : "").append(v);
+            set.append(i > 0 ? ", " : "").append(columns.get(i)).append(" = ").append(value);
+        }
+        String sql = "LOAD DATA LOCAL INFILE '" + filePath.toString().replace("\\", "\\\\").replace("'", "''")
+            + "' INTO TABLE " + table + " CHARACTER SET utf8mb4"
+            + " FIELDS TERMINATED BY '" + (delimiter == '\t' ? "\\t" : delimiter == '\'' ? "''" : delimiter == '\\' ? "\\\\" : String.valueOf(delimiter))
+            + "' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY ''"
+            + " LINES TERMINATED BY '\\n'" + (header ? " IGNORE 1 LINES" : "")
+            + " (" + vars + ") SET " + set;
+        try (Connection conn = pool.getConnection(connectionName); Statement st = conn.createStatement()) {
+            ctx.register(st);
+            try {
+                long rows;
+                try {
+                    rows = st.executeUpdate(sql);
+                } catch (SQLException e) {
+                    if (!ctx.isCancelled() && localInfileDisabled(e)) return null;
+                    throw e;
+                }
+                long warnings = 0;
+                try (ResultSet rs = st.executeQuery("SHOW COUNT(*) WARNINGS")) {
+                    if (rs.next()) warnings = rs.getLong(1);
+                }
+                for (long i = 0; i < rows; i++) ctx.rowWritten();
+                return new CsvLoad.Result(-1, rows, -1, List.of(), LOAD_DATA, warnings);
+            } catch (SQLException e) {
+                throw ctx.isCancelled() ? ctx.cancelledException() : e;
+            } finally {
+                ctx.unregister(st);
+            }
+        }
+    }
+
+    /** Client (Connector/J, MariaDB) or server (local_infile=OFF, error 3948 / 1148) refuses LOAD DATA LOCAL. */
+    private static boolean localInfileDisabled(SQLException e) {
+        String msg = e.getMessage() != null ? e.getMessage().toLowerCase(Locale.ROOT) : "";
+        return e.getErrorCode() == 3948 || e.getErrorCode() == 1148
+            || msg.contains("local data is disabled") || msg.contains("local infile") || msg.contains("allowlocalinfile")
+            || msg.contains("allowloadlocalinfile");
+    }
+
+    private static boolean isQuery(SqlScript.Statement stmt) {
+        String keyword = stmt.getKeyword();
+        return stmt.isQuery() || "VALUES".equals(keyword) || "TABLE".equals(keyword)
+            || keyword.isEmpty() && stmt.getText().startsWith("(");
+    }
+
+    private static void skipBom(Reader r) throws IOException {
+        r.mark(1);
+        if (r.read() != '\uFEFF') r.reset();
+    }
+
+    /** pgjdbc's CopyManager and cancelQuery on one connection, reached by reflection. */
+    private static final class Copy {
+        private final Object connection;
+        private final Object manager;
+
+        private Copy(Object connection, Object manager) {
+            this.connection = connection;
+            this.manager = manager;
+        }
+
+        /** The connection's CopyManager, or null if this is not a pgjdbc connection. */
+        static Copy of(Connection conn) throws SQLException {
+            Class<?> pg;
+            try {
+                pg = Class.forName("org.postgresql.PGConnection", false, conn.getClass().getClassLoader());
+            } catch (ClassNotFoundException e) {
+                try {
+                    pg = Class.forName("org.postgresql.PGConnection");
+                } catch (ClassNotFoundException e2) {
+                    return null;
+                }
+            }
+            try {
+                Object pgConn = conn.unwrap(pg);
+                return pgConn != null ? new Copy(pgConn, pg.getMethod("getCopyAPI").invoke(pgConn)) : null;
+            } catch (SQLException | ReflectiveOperationException e) {
+                return null;
+            }
+        }
+
+        /** copyOut(sql, Writer) or copyIn(sql, Reader); ctx cancel sends the backend a cancel request. */
+        long run(ExecutionContext ctx, String method, String sql, Object stream) throws SQLException, IOException {
+            Runnable cancel = () -> {
+                try {
+                    connection.getClass().getMethod("cancelQuery").invoke(connection);
+                } catch (ReflectiveOperationException ignored) {
+                    // best effort, as for Statement.cancel
+                }
+            };
+            ctx.registerCancelAction(cancel);
+            try {
+                Method m = manager.getClass().getMethod(method, String.class, "copyOut".equals(method) ? Writer.class : Reader.class);
+                return ((Number) m.invoke(manager, sql, stream)).longValue();
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (ctx.isCancelled()) throw ctx.cancelledException();
+                if (cause instanceof SQLException) throw (SQLException) cause;
+                if (cause instanceof IOException) throw (IOException) cause;
+                throw new SQLException(cause != null ? cause.getMessage() : e.getMessage(), cause);
+            } catch (ReflectiveOperationException e) {
+                throw new SQLException("PostgreSQL COPY is not available: " + e.getMessage(), e);
+            } finally {
+                ctx.unregisterCancelAction(cancel);
+            }
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.alibaba.druid.DbType;
+import com.alvinliu.dbmcp.config.ConnectionEntry;
+import com.alvinliu.dbmcp.core.SqlScript;
+import com.alvinliu.dbmcp.core.druid.DbTypes;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Parallel export of one SELECT split into key ranges of an integer partition column. A coordinator connection reads
+ * MIN/MAX of the column; each range runs on its own pooled connection and thread and writes its own file. Unless
+ * shard files are requested, the part files are then concatenated in key order (also valid for gzip: the result is
+ * a multi-member gzip file). Rows with a NULL key go to the first partition. Output appears at the target paths
+ * only once every partition has succeeded (see {@link ExportFiles}).
+ * <p>
+ * Where the dialect allows it, all partitions read the same snapshot: Oracle flashes back to the coordinator's SCN
+ * (DBMS_FLASHBACK), PostgreSQL imports the coordinator's exported snapshot (SET TRANSACTION SNAPSHOT). MySQL cannot
+ * share a snapshot between sessions, so each partition opens its own consistent-snapshot transaction as it starts.
+ * Other databases read without a snapshot. If the snapshot cannot be set up (e.g. no EXECUTE on DBMS_FLASHBACK) the
+ * export runs without one and the result says why.
+ */
+public final class PartitionedExport {
+
+    /** Simple or quoted column name of the wrapped query's result; it is spliced into SQL. */
+    static final Pattern COLUMN = Pattern.compile("[A-Za-z_][A-Za-z0-9_$#]*|\"[^\"]+\"|`[^`]+`|\\[[^\\]]+\\]");
+
+    private PartitionedExport() {
+    }
+
+    public static final class Result {
+        private final long rowsWritten;
+        private final int partitions;
+        private final List<Path> files;
+        private final String snapshot;
+        private final String snapshotWarning;
+
+        Result(long rowsWritten, int partitions, List<Path> files, String snapshot, String snapshotWarning) {
+            this.rowsWritten = rowsWritten;
+            this.partitions = partitions;
+            this.files = files;
+            this.snapshot = snapshot;
+            this.snapshotWarning = snapshotWarning;
+        }
+
+        public long getRowsWritten() { return rowsWritten; }
+
+        /** Partitions actually used (fewer than requested when the key range is small). */
+        public int getPartitions() { return partitions; }
+
+        /** The merged file, or one file per partition in key order. */
+        public List<Path> getFiles() { return files; }
+
+        /** "oracle_scn", "postgresql_snapshot", "mysql_per_partition" or "none". */
+        public String getSnapshot() { return snapshot; }
+
+        /** Why no snapshot was used although the dialect supports one; null otherwise. */
+        public String getSnapshotWarning() { return snapshotWarning; }
+    }
+
+    /**
+     * Export sql (a single SELECT) in up to partitions ranges of column. formats supplies the {@link RowFormat} for
+     * partition i (0-based), so only the first part of a merged CSV carries the header. With shardFiles the parts
+     * are kept as name-partNNN.ext next to filePath instead of being merged into it.
+     */
+    public static Result run(JdbcPool pool, String connectionName, String sql, String column, int partitions,
+                             Path filePath, IntFunction<RowFormat> formats, boolean gzip, boolean shardFiles,
+                             ExecutionContext ctx) throws SQLException, IOException {
+        SqlScript script = JdbcExecutor.split(sql, ctx);
+        if (script.size() != 1) {
+            throw new SQLException("Partitioned export needs a single SELECT statement");
+        }
+        sql = script.get(0).getText();
+        column = column.trim();
+        if (!COLUMN.matcher(column).matches()) throw new SQLException("Invalid partition_column: " + column);
+        if (partitions < 1) throw new SQLException("partitions must be at least 1");
+
+        ConnectionEntry entry = pool.getConnectionEntry(connectionName);
+        Snapshot snapshot = new Snapshot(DbTypes.resolve(entry != null ? entry.getDbType() : null));
+        List<Path> parts = new ArrayList<>();
+        Path merged = ExportFiles.partialPath(filePath);
+        try (Connection coordinator = pool.getConnection(connectionName)) {
+            snapshot.begin(coordinator);
+            try {
+                long[] bounds = bounds(coordinator, sql, column, partitions, ctx);
+                int n = Math.max(1, bounds.length - 1);
+                List<Path> files = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    Path file = shardFiles ? shardPath(filePath, i, n)
+                        : filePath.resolveSibling(filePath.getFileName() + ".part" + (i + 1));
+                    files.add(file);
+                    parts.add(ExportFiles.partialPath(file));
+                }
+                long rows = runPartitions(pool, connectionName, sql, column, bounds, parts, formats, gzip, snapshot, ctx);
+                // nothing appears at the target paths until every partition has finished
+                if (shardFiles) {
+                    for (int i = 0; i < n; i++) ExportFiles.commit(parts.get(i), files.get(i));
+                } else {
+                    try (OutputStream out = Files.newOutputStream(merged)) {
+                        for (Path p : parts) Files.copy(p, out);
+                    }
+                    ExportFiles.commit(merged, filePath);
+                    files = List.of(filePath);
+                }
+                return new Result(rows, n, files, snapshot.mode, snapshot.warning);
+            } finally {
+                snapshot.leave(coordinator);
+            }
+        } finally {
+            for (Path p : parts) ExportFiles.discard(p);
+            ExportFiles.discard(merged);
+        }
+    }
+
+    /**
+     * Range boundaries b[0..n]: partition i covers b[i] &lt;= key &lt; b[i+1], with the first and last ranges open
+     * ended. An empty array means no key values (one unfiltered partition).
+     */
+    private static long[] bounds(Connection conn, String sql, String column, int partitions, ExecutionContext ctx)
+            throws SQLException {
+        Object min;
+        Object max;
+        try (Statement st = conn.createStatement()) {
+            ctx.register(st);
+            try (ResultSet rs = st.executeQuery("SELECT MIN(" + column + "), MAX(" + column + ") FROM (" + sql + ") q_")) {
+                rs.next();
+                min = rs.getObject(1);
+                max = rs.getObject(2);
+            } catch (SQLException e) {
+                throw ctx.isCancelled() ? ctx.cancelledException() : e;
+            } finally {
+                ctx.unregister(st);
+            }
+        }
+        if (min == null || max == null) return new long[0];
+        long lo = toLong(min, column);
+        long hi = toLong(max, column);
+        double span = (double) hi - lo + 1;
+        int n = (int) Math.max(1, Math.min(partitions, span));
+        long[] b = new long[n + 1];
+        b[0] = lo;
+        for (int i = 1; i < n; i++) b[i] = lo + (long) (span * i / n);
+        b[n] = hi;
+        return b;
+    }
+
+    private static long toLong(Object v, String column) throws SQLException {
+        try {
+            return new BigDecimal(v.toString()).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new SQLException("partition_column " + column + " must be an integer column (got " + v + ")");
+        }
+    }
+
+    private static long runPartitions(JdbcPool pool, String connectionName, String sql, String column, long[] bounds,
+                                      List<Path> parts, IntFunction<RowFormat> formats, boolean gzip, Snapshot snapshot,
+                                      ExecutionContext ctx) throws SQLException, IOException {
+        int n = parts.size();
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "db-mcp-export-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                int part = i;
+                futures.add(threads.submit(() -> exportPartition(pool, connectionName, sql, column, bounds, part, n,
+                    parts.get(part), formats.apply(part), gzip, snapshot, ctx)));
+            }
+            long rows = 0;
+            Throwable failure = null;
+            for (Future<Long> f : futures) {
+                try {
+                    rows += f.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                        // stop the other partitions; the first error is the one reported
+                        ctx.cancel("Query cancelled: another partition failed");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    ctx.cancel("Query cancelled: interrupted");
+                    throw new SQLException("Interrupted while exporting partitions");
+                }
+            }
+            if (failure instanceof SQLException) throw (SQLException) failure;
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure != null) throw new SQLException(failure.getMessage(), failure);
+            return rows;
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static long exportPartition(JdbcPool pool, String connectionName, String sql, String column, long[] bounds,
+                                        int part, int n, Path target, RowFormat format, boolean gzip,
+                                        Snapshot snapshot, ExecutionContext ctx) throws SQLException, IOException {
+        StringBuilder q = new StringBuilder("SELECT * FROM (").append(sql).append(") q_");
+        List<Long> params = new ArrayList<>();
+        if (bounds.length > 0 && n > 1) {
+            List<String> conds = new ArrayList<>();
+            if (part > 0) {
+                conds.add(column + " >= ?");
+                params.add(bounds[part]);
+            }
+            if (part < n - 1) {
+                conds.add(column + " < ?");
+                params.add(bounds[part + 1]);
+            }
+            q.append(" WHERE ");
+            if (part == 0) q.append("(").append(String.join(" AND ", conds)).append(") OR ").append(column).append(" IS NULL");
+            else q.append(String.join(" AND ", conds));
+        }
+        try (Connection conn = pool.getConnection(connectionName)) {
+            snapshot.join(conn);
+            // no-op where the snapshot already opened a transaction
+            FetchStrategy.Scope scope = ctx.getFetchStrategy().begin(conn);
+            try (PreparedStatement ps = conn.prepareStatement(q.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                ctx.getFetchStrategy().applyToExport(ps);
+                for (int i = 0; i < params.size(); i++) ps.setLong(i + 1, params.get(i));
+                ctx.register(ps);
+                try (ResultSet rs = ps.executeQuery(); BufferedWriter w = JdbcExecutor.newWriter(target, gzip, ctx)) {
+                    return JdbcExecutor.writeRows(rs, w, format, ctx);
+                } catch (SQLException e) {
+                    throw ctx.isCancelled() ? ctx.cancelledException() : e;
+                } finally {
+                    ctx.unregister(ps);
+                }
+            } finally {
+                scope.end(true);
+                snapshot.leave(conn);
+            }
+        }
+    }
+
+    /** out.csv.gz -&gt; out-part001.csv.gz */
+    private static Path shardPath(Path filePath, int part, int n) {
+        String name = filePath.getFileName().toString();
+        int dot = name.indexOf('.', 1);
+        String suffix = String.format("-part%0" + Math.max(3, String.valueOf(n).length()) + "d", part + 1);
+        return filePath.resolveSibling(dot > 0 ? name.substring(0, dot) + suffix + name.substring(dot) : name + suffix);
+    }
+
+    /** Shared read snapshot for the coordinator and the partitions; see the class comment. */
+    private static final class Snapshot {
+        private final DbType dbType;
+        private String mode = "none";
+        private String token;
+        private String warning;
+
+        Snapshot(DbType dbType) {
+            this.dbType = dbType;
+        }
+
+        /** Take the snapshot on the coordinator, which then reads at it too. Falls back to no snapshot on error. */
+        void begin(Connection conn) {
+            try {
+                if (dbType == DbType.oracle) {
+                    try (Statement st = conn.createStatement();
+                         ResultSet rs = st.executeQuery("SELECT DBMS_FLASHBACK.GET_SYSTEM_CHANGE_NUMBER FROM DUAL")) {
+                        rs.next();
+                        token = rs.getString(1);
+                    }
+                    mode = "oracle_scn";
+                } else if (dbType == DbType.postgresql) {
+                    mode = "postgresql_snapshot";
+                    conn.setAutoCommit(false);
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+                        try (ResultSet rs = st.executeQuery("SELECT pg_export_snapshot()")) {
+                            rs.next();
+                            token = rs.getString(1);
+                        }
+                    }
+                    return;
+                } else if (dbType == DbType.mysql || dbType == DbType.mariadb) {
+                    mode = "mysql_per_partition";
+                } else {
+                    return;
+                }
+                join(conn);
+            } catch (SQLException e) {
+                leave(conn);
+                mode = "none";
+                token = null;
+                warning = "Snapshot not available, partitions read without one: " + e.getMessage();
+            }
+        }
+
+        /** Make a partition connection read at the snapshot. */
+        void join(Connection conn) throws SQLException {
+            switch (mode) {
+                case "oracle_scn":
+                    try (CallableStatement cs = conn.prepareCall("{call DBMS_FLASHBACK.ENABLE_AT_SYSTEM_CHANGE_NUMBER(?)}")) {
+                        cs.setLong(1, Long.parseLong(token));
+                        cs.execute();
+                    }
+                    break;
+                case "postgresql_snapshot":
+                    conn.setAutoCommit(false);
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+                        // token comes from pg_export_snapshot(), not from the caller
+                        st.execute("SET TRANSACTION SNAPSHOT '" + token + "'");
+                    }
+                    break;
+                case "mysql_per_partition":
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("SET TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+                        st.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        /** Undo {@link #join} before the connection goes back to the pool. Best effort. */
+        void leave(Connection conn) {
+            try {
+                if (dbType == DbType.oracle) {
+                    if (token != null) {
+                        try (CallableStatement cs = conn.prepareCall("{call DBMS_FLASHBACK.DISABLE}")) {
+                            cs.execute();
+                        }
+                    }
+                } else if (dbType == DbType.postgresql) {
+                    if (!conn.getAutoCommit()) {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                } else if (dbType == DbType.mysql || dbType == DbType.mariadb) {
+                    try (Statement st = conn.createStatement()) {
+                        st.execute("ROLLBACK");
+                    }
+                }
+            } catch (SQLException ignored) {
+                // the connection is about to be returned; nothing more to do
+            }
+        }
+    }
+}
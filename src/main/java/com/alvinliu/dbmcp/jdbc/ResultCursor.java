@@ -0,0 +1,110 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * A result set left open after the first page of execute_sql, together with its statement and pinned connection.
+ * Created by {@link JdbcExecutor}, owned by {@link CursorRegistry}; read further with
+ * {@link JdbcExecutor#fetchMore(ResultCursor, int, ExecutionContext)}. One row is always read ahead so we know
+ * whether more rows exist without an extra round trip per page.
+ */
+public final class ResultCursor {
+    private final Statement statement;
+    private final ResultSet resultSet;
+    private final List<String> columns;
+    private final int[] columnTypes;
+    private final ColumnCodec[] codecs;
+    private final FetchStrategy.Scope scope;
+    private List<Object> pending;
+    private long rowsFetched;
+    private boolean exhausted;
+
+    private String id;
+    private String connectionName;
+    private String owner;
+    private Connection connection;
+    private int pageSize;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+    private boolean busy;
+
+    ResultCursor(Statement statement, ResultSet resultSet, List<String> columns, int[] columnTypes,
+                 ColumnCodec[] codecs, List<Object> pending, long rowsFetched, FetchStrategy.Scope scope) {
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.columns = columns;
+        this.columnTypes = columnTypes;
+        this.codecs = codecs;
+        this.pending = pending;
+        this.rowsFetched = rowsFetched;
+        this.scope = scope;
+    }
+
+    public String getId() { return id; }
+
+    public String getConnectionName() { return connectionName; }
+
+    /** Page size of the execute_sql call that opened the cursor; the default for fetch_more. */
+    public int getPageSize() { return pageSize; }
+
+    /** Rows returned to the client so far, over all pages. */
+    public long getRowsFetched() { return rowsFetched; }
+
+    /** True once the last row was read or a fetch failed; the registry then closes the cursor. */
+    public boolean isExhausted() { return exhausted; }
+
+    List<String> getColumns() { return columns; }
+
+    int[] getColumnTypes() { return columnTypes; }
+
+    ColumnCodec[] getCodecs() { return codecs; }
+
+    Statement getStatement() { return statement; }
+
+    ResultSet getResultSet() { return resultSet; }
+
+    /** Read-ahead row not yet returned, or null. */
+    List<Object> takePending() {
+        List<Object> p = pending;
+        pending = null;
+        return p;
+    }
+
+    void setPending(List<Object> row) { this.pending = row; }
+
+    void addRowsFetched(long n) { rowsFetched += n; }
+
+    void setExhausted() { exhausted = true; }
+
+    void attach(String id, Connection connection, String connectionName, String owner, int pageSize) {
+        this.id = id;
+        this.connection = connection;
+        this.connectionName = connectionName;
+        this.owner = owner;
+        this.pageSize = pageSize;
+    }
+
+    String getOwner() { return owner; }
+
+    long getLastUsedMillis() { return lastUsedMillis; }
+
+    boolean isBusy() { return busy; }
+
+    void setBusy(boolean busy) {
+        this.busy = busy;
+        this.lastUsedMillis = System.currentTimeMillis();
+    }
+
+    /** Close the result set and statement, end the fetch transaction if any, and return the connection to the pool. */
+    void close() {
+        try { resultSet.close(); } catch (SQLException ignored) {}
+        try { statement.close(); } catch (SQLException ignored) {}
+        scope.end(true);
+        if (connection != null) {
+            try { connection.close(); } catch (SQLException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.alvinliu.dbmcp.jdbc;
+
+/**
+ * Bounds on a result returned in memory: rows, estimated serialized bytes and wall-clock fetch time; 0 = unlimited.
+ * Fetching stops at the first limit reached and the result is marked truncated with the limit's name.
+ * CLOB and BLOB values longer than the LOB preview size are returned as a {@link LobPreview}.
+ */
+public final class ResultLimits {
+    public static final ResultLimits NONE = new ResultLimits(0, 0, 0, 0);
+
+    private final long maxRows;
+    private final long maxBytes;
+    private final long maxFetchMs;
+    private final int lobPreviewSize;
+
+    public ResultLimits(long maxRows, long maxBytes, long maxFetchMs, int lobPreviewSize) {
+        this.maxRows = Math.max(0, maxRows);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxFetchMs = Math.max(0, maxFetchMs);
+        this.lobPreviewSize = Math.max(0, lobPreviewSize);
+    }
+
+    public long getMaxRows() { return maxRows; }
+
+    public long getMaxBytes() { return maxBytes; }
+
+    public long getMaxFetchMs() { return maxFetchMs; }
+
+    /** Characters of a CLOB (bytes of a BLOB) returned before it is cut to a preview; 0 = whole values. */
+    public int getLobPreviewSize() { return lobPreviewSize; }
+
+    /** Tighter of a configured limit and a requested one, treating 0 as unlimited. */
+    public static long tighter(long configured, long requested) {
+        if (requested <= 0) return configured;
+        if (configured <= 0) return requested;
+        return Math.min(configured, requested);
+    }
+
+    /** Name of the limit reached after rows / bytes so far and fetch time since startNanos, or null. */
+    String exceeded(long rows, long bytes, long startNanos) {
+        if (maxRows > 0 && rows >= maxRows) return "max_rows";
+        if (maxBytes > 0 && bytes >= maxBytes) return "max_result_bytes";
+        if (maxFetchMs > 0 && System.nanoTime() - startNanos >= maxFetchMs * 1_000_000L) return "max_fetch_ms";
+        return null;
+    }
+}
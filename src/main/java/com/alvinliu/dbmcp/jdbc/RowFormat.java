@@ -0,0 +1,24 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Encodes a result set into a file one row at a time, for {@link JdbcExecutor#exportToFile}. Implementations keep
+ * reusable buffers, so use a new instance per export.
+ */
+public interface RowFormat {
+
+    /** Called once before the first row with the column labels and java.sql.Types. */
+    void begin(Writer out, List<String> columns, int[] types) throws IOException;
+
+    /** Write the current row of rs (columns 1..n). */
+    void writeRow(Writer out, ResultSet rs) throws IOException, SQLException;
+
+    /** Called once after the last row. */
+    default void end(Writer out) throws IOException {
+    }
+}
@@ -0,0 +1,86 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.alvinliu.dbmcp.core.UntypedString;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.DateTimeException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binds the params of execute_sql to a PreparedStatement. Plain JSON values bind by their JSON type: integers as long,
+ * other numbers as BigDecimal, strings, booleans, and null. For other SQL types pass {"type": t, "value": v}, where v
+ * is a string (or number) converted as t: string, int, decimal, double, bool, date (2024-01-31), time (10:15:00),
+ * timestamp (2024-01-31T10:15:00 or 2024-01-31 10:15:00), binary (base64); a null value binds a NULL of that type.
+ */
+public final class SqlParams {
+
+    private SqlParams() {
+    }
+
+    static void bind(PreparedStatement ps, List<?> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object p = params.get(i);
+            int idx = i + 1;
+            try {
+                if (p instanceof Map) {
+                    Map<?, ?> typed = (Map<?, ?>) p;
+                    int type = sqlType(typed.get("type"));
+                    Object v = typed.get("value");
+                    CsvLoad.setValue(ps, idx, type, v != null ? plain(v) : null);
+                } else if (p == null) {
+                    try {
+                        ps.setNull(idx, Types.NULL);
+                    } catch (SQLException e) {
+                        // drivers without an untyped NULL (e.g. Oracle)
+                        ps.setNull(idx, Types.VARCHAR);
+                    }
+                } else if (p instanceof Long || p instanceof Integer) {
+                    ps.setLong(idx, ((Number) p).longValue());
+                } else if (p instanceof BigDecimal) {
+                    ps.setBigDecimal(idx, (BigDecimal) p);
+                } else if (p instanceof Boolean) {
+                    ps.setBoolean(idx, (Boolean) p);
+                } else if (p instanceof String) {
+                    ps.setString(idx, (String) p);
+                } else if (p instanceof UntypedString) {
+                    // auto-parameterized literal on PostgreSQL: the server infers the type, as for the literal
+                    ps.setObject(idx, ((UntypedString) p).getValue(), Types.OTHER);
+                } else {
+                    throw new IllegalArgumentException("use a string, number, boolean, null or {\"type\", \"value\"}");
+                }
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new SQLException("params[" + i + "]: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /** Number text without an exponent or a trailing .0 for integral values (JSON non-integers arrive as BigDecimal). */
+    private static String plain(Object v) {
+        if (v instanceof BigDecimal) {
+            BigDecimal d = (BigDecimal) v;
+            return d.stripTrailingZeros().scale() <= 0 ? d.toBigInteger().toString() : d.toPlainString();
+        }
+        return v.toString();
+    }
+
+    private static int sqlType(Object name) {
+        String t = name != null ? name.toString().trim().toLowerCase() : "";
+        switch (t) {
+            case "string": return Types.VARCHAR;
+            case "int": case "integer": case "long": return Types.BIGINT;
+            case "decimal": case "number": return Types.DECIMAL;
+            case "double": case "float": return Types.DOUBLE;
+            case "bool": case "boolean": return Types.BOOLEAN;
+            case "date": return Types.DATE;
+            case "time": return Types.TIME;
+            case "timestamp": return Types.TIMESTAMP;
+            case "binary": return Types.VARBINARY;
+            default: throw new IllegalArgumentException("unknown type '" + t + "' (use string, int, decimal, double, bool, "
+                + "date, time, timestamp or binary)");
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * CSV, plain-text and JSON Lines {@link RowFormat}s. Values are read and encoded by the {@link ColumnCodec} of each
+ * column, picked once in begin from the column types. CSV and text rows are encoded into one reused buffer and copied
+ * to the writer, so no per-row strings or lists are built. LOBs are never read in full: CLOBs are copied from their
+ * reader and BLOBs (and LONGVARBINARY) base64-encoded from their stream in chunks, in every format.
+ * JSON Lines keeps the column types from the result set metadata.
+ */
+public final class TextRowFormats {
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Column kinds from {@link #lobColumns}: read through the codec, streamed as text, streamed as base64. */
+    private static final byte VALUE = 0;
+    private static final byte CLOB = 1;
+    private static final byte BINARY_LOB = 2;
+
+    /** How {@link Buffered#copyClob} writes the text. */
+    private static final int PLAIN = 0;
+    private static final int CSV_QUOTED = 1;
+    private static final int JSON_STRING = 2;
+
+    private TextRowFormats() {
+    }
+
+    /** Header line, then one line per row. Fields are quoted per RFC 4180 when needed; CLOBs are always quoted. */
+    public static RowFormat csv() {
+        return new Csv(true);
+    }
+
+    /** CSV without the header line (later parts of a partitioned export). */
+    public static RowFormat csv(boolean header) {
+        return new Csv(header);
+    }
+
+    /** No header; columns tab-separated. No newline is added between rows, only newlines in the data appear. */
+    public static RowFormat text() {
+        return new Text();
+    }
+
+    /**
+     * One JSON object per line keyed by column label. Integers, decimals and booleans stay JSON numbers and booleans
+     * (NaN and infinities become strings), dates and timestamps are ISO-8601 strings, binary values are base64.
+     */
+    public static RowFormat jsonLines() {
+        return new JsonLines();
+    }
+
+    /** Format name used by query_to_file: "csv", "text" or "jsonl"; null if unknown. header only affects CSV. */
+    public static RowFormat forName(String name, boolean header) {
+        switch (name) {
+            case "csv": return csv(header);
+            case "text": return text();
+            case "jsonl": return jsonLines();
+            default: return null;
+        }
+    }
+
+    private abstract static class Buffered implements RowFormat {
+        final StringBuilder buf = new StringBuilder(256);
+        private char[] chars = new char[8192];
+        /** Whole 3-byte groups, so each chunk encodes to base64 that joins up with the next. */
+        private final byte[] bytes = new byte[6144];
+        private final byte[] encoded = new byte[8192];
+
+        /** Copy the buffer to out and clear it. */
+        void drain(Writer out) throws IOException {
+            int n = buf.length();
+            if (n == 0) return;
+            if (chars.length < n) chars = new char[Math.max(n, chars.length * 2)];
+            buf.getChars(0, n, chars, 0);
+            out.write(chars, 0, n);
+            buf.setLength(0);
+        }
+
+        /**
+         * Stream the column's LOB to out in chunks: a CLOB as text in the given quoting (CSV wraps it in quotes and
+         * doubles quotes, JSON writes a string literal), binary as base64. Writes nothing for NULL.
+         */
+        void copyLob(Writer out, ResultSet rs, int column, byte kind, int quoting) throws IOException, SQLException {
+            if (kind == CLOB) {
+                Clob v = rs.getClob(column);
+                if (v != null) copyClob(out, v, quoting);
+                return;
+            }
+            try (InputStream in = rs.getBinaryStream(column)) {
+                if (in != null) copyBase64(out, in, quoting == JSON_STRING);
+            }
+        }
+
+        /** Stream a CLOB to out through the shared char buffer, escaped for the quoting, and free it. */
+        void copyClob(Writer out, Clob clob, int quoting) throws IOException, SQLException {
+            drain(out);
+            if (quoting != PLAIN) out.write('"');
+            try (Reader r = clob.getCharacterStream()) {
+                int n;
+                while (r != null && (n = r.read(chars)) >= 0) {
+                    if (quoting == PLAIN) out.write(chars, 0, n);
+                    else if (quoting == CSV_QUOTED) writeCsvEscaped(out, n);
+                    else writeJsonEscaped(out, n);
+                }
+            } finally {
+                ColumnCodecs.free(clob);
+            }
+            if (quoting != PLAIN) out.write('"');
+        }
+
+        private void writeCsvEscaped(Writer out, int n) throws IOException {
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                if (chars[i] == '"') {
+                    out.write(chars, from, i + 1 - from);
+                    out.write('"');
+                    from = i + 1;
+                }
+            }
+            out.write(chars, from, n - from);
+        }
+
+        /** Escapes as Gson does for a string value: quote, backslash, control characters and U+2028/U+2029. */
+        private void writeJsonEscaped(Writer out, int n) throws IOException {
+            int from = 0;
+            for (int i = 0; i < n; i++) {
+                char c = chars[i];
+                String escape;
+                if (c == '"') escape = "\\\"";
+                else if (c == '\\') escape = "\\\\";
+                else if (c == '\n') escape = "\\n";
+                else if (c == '\r') escape = "\\r";
+                else if (c == '\t') escape = "\\t";
+                else if (c < 0x20 || c == '\u2028' || c == '\u2029') escape = String.format("\\u%04x", (int) c);
+                else continue;
+                out.write(chars, from, i - from);
+                out.write(escape);
+                from = i + 1;
+            }
+            out.write(chars, from, n - from);
+        }
+
+        /** Base64 of the stream in chunks; quote wraps it in double quotes (a JSON string). */
+        void copyBase64(Writer out, InputStream in, boolean quote) throws IOException {
+            drain(out);
+            if (quote) out.write('"');
+            Base64.Encoder encoder = Base64.getEncoder();
+            int n;
+            while ((n = readFully(in)) > 0) {
+                int len = encoder.encode(n == bytes.length ? bytes : Arrays.copyOf(bytes, n), encoded);
+                for (int i = 0; i < len; i++) chars[i] = (char) encoded[i];
+                out.write(chars, 0, len);
+                if (n < bytes.length) break;
+            }
+            if (quote) out.write('"');
+        }
+
+        /** Fill the byte buffer unless the stream ends first; returns the bytes read. */
+        private int readFully(InputStream in) throws IOException {
+            int n = 0;
+            int k;
+            while (n < bytes.length && (k = in.read(bytes, n, bytes.length - n)) >= 0) n += k;
+            return n;
+        }
+    }
+
+    private static final class Csv extends Buffered {
+        private final boolean header;
+        private int cols;
+        private ColumnCodec[] codecs;
+        private byte[] lobs;
+
+        Csv(boolean header) {
+            this.header = header;
+        }
+
+        @Override
+        public void begin(Writer out, List<String> columns, int[] types) throws IOException {
+            cols = columns.size();
+            codecs = ColumnCodecs.forTypes(types);
+            lobs = lobColumns(types);
+            if (!header) return;
+            for (int i = 0; i < cols; i++) {
+                if (i > 0) buf.append(',');
+                appendField(columns.get(i));
+            }
+            buf.append(NEWLINE);
+            drain(out);
+        }
+
+        @Override
+        public void writeRow(Writer out, ResultSet rs) throws IOException, SQLException {
+            for (int i = 1; i <= cols; i++) {
+                if (i > 1) buf.append(',');
+                if (lobs[i - 1] != VALUE) {
+                    copyLob(out, rs, i, lobs[i - 1], CSV_QUOTED);
+                    continue;
+                }
+                int start = buf.length();
+                if (codecs[i - 1].appendText(buf, rs, i)) quoteFrom(start);
+            }
+            buf.append(NEWLINE);
+            drain(out);
+        }
+
+        /** Quote the text appended since start if it contains comma, double-quote, newline, or CR; escape " as "". */
+        private void quoteFrom(int start) {
+            int quotes = 0;
+            boolean quote = false;
+            for (int i = start; i < buf.length(); i++) {
+                char c = buf.charAt(i);
+                if (c == '"') quotes++;
+                quote |= c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) return;
+            if (quotes == 0) {
+                buf.insert(start, '"').append('"');
+                return;
+            }
+            String s = buf.substring(start);
+            buf.setLength(start);
+            appendField(s);
+        }
+
+        /** Quote the field if it contains comma, double-quote, newline, or CR; escape " as "". */
+        private void appendField(String s) {
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                char c = s.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                buf.append(s);
+                return;
+            }
+            buf.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') buf.append('"');
+                buf.append(c);
+            }
+            buf.append('"');
+        }
+    }
+
+    private static final class Text extends Buffered {
+        private int cols;
+        private ColumnCodec[] codecs;
+        private byte[] lobs;
+
+        @Override
+        public void begin(Writer out, List<String> columns, int[] types) {
+            cols = columns.size();
+            codecs = ColumnCodecs.forTypes(types);
+            lobs = lobColumns(types);
+        }
+
+        @Override
+        public void writeRow(Writer out, ResultSet rs) throws IOException, SQLException {
+            for (int i = 1; i <= cols; i++) {
+                if (i > 1) buf.append('\t');
+                if (lobs[i - 1] != VALUE) {
+                    copyLob(out, rs, i, lobs[i - 1], PLAIN);
+                } else {
+                    codecs[i - 1].appendText(buf, rs, i);
+                }
+            }
+            drain(out);
+        }
+    }
+
+    private static byte[] lobColumns(int[] types) {
+        byte[] lobs = new byte[types.length];
+        for (int i = 0; i < types.length; i++) {
+            int t = types[i];
+            if (t == Types.CLOB || t == Types.NCLOB) lobs[i] = CLOB;
+            else if (t == Types.BLOB || t == Types.LONGVARBINARY) lobs[i] = BINARY_LOB;
+        }
+        return lobs;
+    }
+
+    private static final class JsonLines extends Buffered {
+        private String[] names;
+        private ColumnCodec[] codecs;
+        private byte[] lobs;
+        private JsonWriter json;
+
+        @Override
+        public void begin(Writer out, List<String> columns, int[] types) {
+            this.names = columns.toArray(new String[0]);
+            this.codecs = ColumnCodecs.forTypes(types);
+            this.lobs = lobColumns(types);
+            json = new JsonWriter(out);
+            // one top-level value per line
+            json.setLenient(true);
+        }
+
+        @Override
+        public void writeRow(Writer out, ResultSet rs) throws IOException, SQLException {
+            json.beginObject();
+            for (int i = 1; i <= names.length; i++) {
+                json.name(names[i - 1]);
+                if (lobs[i - 1] == VALUE) {
+                    codecs[i - 1].writeJson(json, rs, i);
+                    continue;
+                }
+                if (lobs[i - 1] == CLOB) {
+                    Clob v = rs.getClob(i);
+                    if (v == null) {
+                        json.nullValue();
+                    } else {
+                        rawValue();
+                        copyClob(out, v, JSON_STRING);
+                    }
+                    continue;
+                }
+                try (InputStream in = rs.getBinaryStream(i)) {
+                    if (in == null) {
+                        json.nullValue();
+                    } else {
+                        rawValue();
+                        copyBase64(out, in, true);
+                    }
+                }
+
+            }
+            json.endObject();
+            out.write('\n');
+        }
+
+        /**
+         * Let the writer emit the pending name and separator with an empty raw value; the LOB is then written as a
+         * string literal straight to the same underlying writer (JsonWriter does not buffer).
+         */
+        private void rawValue() throws IOException {
+            json.jsonValue("");
+        }
+    }
+}
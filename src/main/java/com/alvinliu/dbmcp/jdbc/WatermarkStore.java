@@ -0,0 +1,108 @@
+package com.alvinliu.dbmcp.jdbc;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * High-water marks of incremental exports ({@link IncrementalExport}), one per connection, query and output file,
+ * kept in a small JSON file (server.watermark_file). The file is rewritten atomically after each successful export.
+ */
+public final class WatermarkStore {
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    /** One stored watermark: the largest watermark_column value exported so far. */
+    public static final class Mark {
+        private String connection;
+        private String sql;
+        private String filePath;
+        private String column;
+        private String value;
+        private String type;
+        private long rowsExported;
+        /** Length of the file when the mark was stored; null in marks written before it was recorded. */
+        private Long fileSize;
+        private String updatedAt;
+
+        public String getColumn() { return column; }
+        public String getValue() { return value; }
+        String getType() { return type; }
+        /** Rows exported to the file over all runs. */
+        public long getRowsExported() { return rowsExported; }
+        Long getFileSize() { return fileSize; }
+    }
+
+    private static final class State {
+        List<Mark> marks = new ArrayList<>();
+    }
+
+    private final Path file;
+    private final Map<String, Mark> marks = new LinkedHashMap<>();
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    /** Load the state file if it exists; an unreadable file is reported and replaced on the next save. */
+    public WatermarkStore(Path file) {
+        this.file = file;
+        if (!Files.exists(file)) return;
+        try {
+            State s = GSON.fromJson(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), State.class);
+            if (s != null && s.marks != null) {
+                for (Mark m : s.marks) marks.put(key(m.connection, m.sql, m.filePath), m);
+            }
+        } catch (IOException | JsonParseException e) {
+            System.err.println("[db_mcp] watermark file " + file + " unreadable, starting empty: " + e.getMessage());
+        }
+    }
+
+    public Path getFile() { return file; }
+
+    private static String key(String connection, String sql, String filePath) {
+        return connection + '\u0000' + sql + '\u0000' + filePath;
+    }
+
+    synchronized Mark get(String connection, String sql, Path filePath) {
+        return marks.get(key(connection, sql, filePath.toString()));
+    }
+
+    synchronized void put(String connection, String sql, Path filePath, String column, Object value, long rowsExported,
+                          long fileSize) throws IOException {
+        Mark m = new Mark();
+        m.connection = connection;
+        m.sql = sql;
+        m.filePath = filePath.toString();
+        m.column = column;
+        m.value = KeyValues.format(value);
+        m.type = KeyValues.type(value);
+        m.rowsExported = rowsExported;
+        m.fileSize = fileSize;
+        m.updatedAt = Instant.now().toString();
+        marks.put(key(connection, sql, m.filePath), m);
+        State s = new State();
+        s.marks.addAll(marks.values());
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, GSON.toJson(s).getBytes(StandardCharsets.UTF_8));
+        ExportFiles.commit(tmp, file);
+    }
+
+    /** Claim an output file so two incremental exports cannot append to it at once; false if already claimed. */
+    boolean begin(Path filePath) {
+        return running.add(filePath.toString());
+    }
+
+    void end(Path filePath) {
+        running.remove(filePath.toString());
+    }
+}
@@ -0,0 +1,221 @@
+package com.alvinliu.dbmcp.mcp;
+
+import com.alvinliu.dbmcp.jdbc.ExecutionResult;
+import com.alvinliu.dbmcp.jdbc.LobPreview;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * execute_sql / fetch_more result with format "columnar": column-major instead of one array per row.
+ * Each column has a type tag from the JDBC metadata (int, number, bool, string, date, time, timestamp, binary) and
+ * its non-null values; nulls are listed separately as runs [start, length]. Low-cardinality string columns are
+ * dictionary-encoded as {"dict": [...], "codes": [...]}. Binary values are base64; dates and times are strings.
+ * LOBs cut to a preview are objects {"preview", "length", "truncated"} among the column's values.
+ * Values are streamed straight from the rows.
+ * <pre>
+ * {"format":"columnar","rowCount":3,"columns":[
+ *   {"name":"ID","type":"int","values":[1,2,3]},
+ *   {"name":"STATUS","type":"string","nulls":[[2,1]],"dict":["open"],"codes":[0,0]}],
+ *  "rowsAffected":3,"success":true,...}
+ * </pre>
+ */
+final class ColumnarPayload implements JsonRpcWriter.Payload {
+    static final String FORMAT = "columnar";
+    /** Columns with fewer non-null values than this are never dictionary-encoded. */
+    private static final int DICT_MIN_VALUES = 8;
+
+    private final ExecutionResult result;
+
+    ColumnarPayload(ExecutionResult result) {
+        this.result = result;
+    }
+
+    @Override
+    public void writeTo(JsonWriter w) throws IOException {
+        List<String> names = result.getColumns();
+        List<List<Object>> rows = result.getRows();
+        w.beginObject();
+        w.name("format").value(FORMAT);
+        w.name("rowCount").value(rows != null ? rows.size() : 0);
+        w.name("columns");
+        if (names == null || rows == null) {
+            w.nullValue();
+        } else {
+            int[] types = result.getColumnTypes();
+            w.beginArray();
+            for (int c = 0; c < names.size(); c++) {
+                writeColumn(w, names.get(c), types != null && c < types.length ? types[c] : Types.OTHER, rows, c);
+            }
+            w.endArray();
+        }
+        w.name("rowsAffected").value(result.getRowsAffected());
+        w.name("success").value(result.isSuccess());
+        w.name("statementType").value(result.getStatementType());
+        w.name("executionTimeMs").value(result.getExecutionTimeMs());
+        w.name("warning").value(result.getWarning());
+        w.name("truncated").value(result.getTruncated());
+        w.name("truncatedReason").value(result.getTruncatedReason());
+        w.name("rowsFetched").value(result.getRowsFetched());
+        w.name("cursorId").value(result.getCursorId());
+        w.name("hasMore").value(result.getHasMore());
+        w.name("statements").value(result.getStatements());
+        w.name("updateCounts");
+        if (result.getUpdateCounts() == null) {
+            w.nullValue();
+        } else {
+            w.beginArray();
+            for (long c : result.getUpdateCounts()) w.value(c);
+            w.endArray();
+        }
+        w.name("errors");
+        if (result.getErrors() == null) {
+            w.nullValue();
+        } else {
+            w.beginArray();
+            for (ExecutionResult.StatementError e : result.getErrors()) {
+                w.beginObject().name("statement").value(e.getStatement()).name("error").value(e.getError()).endObject();
+            }
+            w.endArray();
+        }
+        w.name("transaction").value(result.getTransaction());
+        w.endObject();
+    }
+
+    private static void writeColumn(JsonWriter w, String name, int sqlType, List<List<Object>> rows, int c) throws IOException {
+        String tag = typeTag(sqlType);
+        w.beginObject();
+        w.name("name").value(name);
+        w.name("type").value(tag);
+        int nonNull = writeNullRuns(w, rows, c);
+        Map<String, Integer> dict = "string".equals(tag) ? dictionary(rows, c, nonNull) : null;
+        if (dict != null) {
+            w.name("dict").beginArray();
+            for (String v : dict.keySet()) w.value(v);
+            w.endArray();
+            w.name("codes").beginArray();
+            for (List<Object> row : rows) {
+                Object v = row.get(c);
+                if (v != null) w.value(dict.get(v.toString()));
+            }
+            w.endArray();
+        } else {
+            w.name("values").beginArray();
+            for (List<Object> row : rows) {
+                Object v = row.get(c);
+                if (v != null) writeValue(w, v);
+            }
+            w.endArray();
+        }
+        w.endObject();
+    }
+
+    /** Write "nulls": [[start, length], ...] if the column has nulls; returns the number of non-null values. */
+    private static int writeNullRuns(JsonWriter w, List<List<Object>> rows, int c) throws IOException {
+        int n = rows.size();
+        int nonNull = 0;
+        boolean open = false;
+        for (int i = 0; i < n; ) {
+            if (rows.get(i).get(c) != null) {
+                nonNull++;
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < n && rows.get(i).get(c) == null) i++;
+            if (!open) {
+                w.name("nulls").beginArray();
+                open = true;
+            }
+            w.beginArray().value(start).value(i - start).endArray();
+        }
+        if (open) w.endArray();
+        return nonNull;
+    }
+
+    /**
+     * Insertion-ordered dictionary if the column repeats values enough to pay off (at most half as many distinct
+     * values as non-null values), else null.
+     */
+    private static Map<String, Integer> dictionary(List<List<Object>> rows, int c, int nonNull) {
+        if (nonNull < DICT_MIN_VALUES) return null;
+        int maxDistinct = nonNull / 2;
+        Map<String, Integer> dict = new LinkedHashMap<>();
+        for (List<Object> row : rows) {
+            Object v = row.get(c);
+            if (v == null) continue;
+            if (v instanceof LobPreview) return null;
+            dict.putIfAbsent(v.toString(), dict.size());
+            if (dict.size() > maxDistinct) return null;
+        }
+        return dict;
+    }
+
+    private static void writeValue(JsonWriter w, Object v) throws IOException {
+        if (v instanceof Boolean) {
+            w.value((Boolean) v);
+        } else if (v instanceof Float) {
+            // as float, so 0.1 stays 0.1 rather than its double expansion
+            float f = (Float) v;
+            if (Float.isNaN(f) || Float.isInfinite(f)) w.value(v.toString());
+            else w.value(f);
+        } else if (v instanceof Double) {
+            double d = (Double) v;
+            if (Double.isNaN(d) || Double.isInfinite(d)) w.value(v.toString());
+            else w.value(d);
+        } else if (v instanceof BigDecimal) {
+            // plain decimal text (no exponent: JsonWriter.value would print 0.0000001 as 1E-7)
+            w.jsonValue(((BigDecimal) v).toPlainString());
+        } else if (v instanceof Number) {
+            w.value((Number) v);
+        } else if (v instanceof byte[]) {
+            w.value(Base64.getEncoder().encodeToString((byte[]) v));
+        } else if (v instanceof LobPreview) {
+            LobPreview lob = (LobPreview) v;
+            w.beginObject().name("preview").value(lob.getPreview()).name("length").value(lob.getLength())
+                .name("truncated").value(true).endObject();
+        } else {
+            w.value(v.toString());
+        }
+    }
+
+    static String typeTag(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return "int";
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return "number";
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return "bool";
+            case Types.DATE:
+                return "date";
+            case Types.TIME:
+            case Types.TIME_WITH_TIMEZONE:
+                return "time";
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return "timestamp";
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return "binary";
+            default:
+                return "string";
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.alvinliu.dbmcp.mcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads newline-delimited JSON-RPC frames as raw bytes, bounded by a size limit. Frames up to spoolBytes stay in
+ * memory; larger ones are spooled to a temp file and parsed from disk, so a multi-megabyte message is never held as
+ * a String. Frames over maxBytes are skipped up to the next newline and reported as oversize.
+ */
+final class FrameReader {
+
+    /** One message frame. Close it to delete a spool file. */
+    static final class Frame implements Closeable {
+        private final byte[] data;
+        private final int length;
+        private final Path spool;
+        private final long size;
+        private final boolean oversize;
+
+        private Frame(byte[] data, int length, Path spool, long size, boolean oversize) {
+            this.data = data;
+            this.length = length;
+            this.spool = spool;
+            this.size = size;
+            this.oversize = oversize;
+        }
+
+        /** Bytes in the frame (for oversize frames: bytes read before giving up, at least maxBytes + 1). */
+        long size() { return size; }
+
+        boolean isOversize() { return oversize; }
+
+        boolean isBlank() {
+            if (spool != null || oversize) return false;
+            for (int i = 0; i < length; i++) {
+                if (!Character.isWhitespace(data[i])) return false;
+            }
+            return true;
+        }
+
+        Reader openReader() throws IOException {
+            if (spool != null) return Files.newBufferedReader(spool, StandardCharsets.UTF_8);
+            return new InputStreamReader(new ByteArrayInputStream(data, 0, length), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            if (spool != null) {
+                try { Files.deleteIfExists(spool); } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private final InputStream in;
+    private final long maxBytes;
+    private final int spoolBytes;
+    private final boolean splitLines;
+    private final byte[] buf = new byte[1 << 16];
+    private int pos;
+    private int limit;
+
+    FrameReader(InputStream in, long maxBytes, int spoolBytes) {
+        this(in, maxBytes, spoolBytes, true);
+    }
+
+    private FrameReader(InputStream in, long maxBytes, int spoolBytes, boolean splitLines) {
+        this.in = in;
+        this.maxBytes = maxBytes;
+        this.spoolBytes = spoolBytes;
+        this.splitLines = splitLines;
+    }
+
+    /** Read a whole stream (e.g. an HTTP request body) as one frame, with the same size limit and spooling. */
+    static Frame readAll(InputStream in, long maxBytes, int spoolBytes) throws IOException {
+        Frame f = new FrameReader(in, maxBytes, spoolBytes, false).next();
+        return f != null ? f : new Frame(new byte[0], 0, null, 0, false);
+    }
+
+    /** Next frame, or null at end of stream. */
+    Frame next() throws IOException {
+        byte[] acc = new byte[1024];
+        int accLen = 0;
+        Path spool = null;
+        OutputStream spoolOut = null;
+        long size = 0;
+        boolean oversize = false;
+        boolean sawAny = false;
+        try {
+            while (true) {
+                if (pos >= limit) {
+                    limit = in.read(buf);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (!sawAny) return null;
+                        break;
+                    }
+                }
+                sawAny = true;
+                int start = pos;
+                int nl = -1;
+                for (int i = pos; splitLines && i < limit; i++) {
+                    if (buf[i] == '\n') {
+                        nl = i;
+                        break;
+                    }
+                }
+                int end = nl >= 0 ? nl : limit;
+                pos = nl >= 0 ? nl + 1 : limit;
+                int n = end - start;
+                size += n;
+                if (!oversize && size > maxBytes) {
+                    oversize = true;
+                    if (spoolOut != null) spoolOut.close();
+                    spoolOut = null;
+                    acc = null;
+                } else if (!oversize) {
+                    if (spoolOut == null && accLen + n > spoolBytes) {
+                        spool = Files.createTempFile("db_mcp-request-", ".json");
+                        spoolOut = Files.newOutputStream(spool);
+                        spoolOut.write(acc, 0, accLen);
+                        acc = null;
+                    }
+                    if (spoolOut != null) {
+                        spoolOut.write(buf, start, n);
+                    } else {
+                        if (accLen + n > acc.length) acc = Arrays.copyOf(acc, Math.max(acc.length * 2, accLen + n));
+                        System.arraycopy(buf, start, acc, accLen, n);
+                        accLen += n;
+                    }
+                }
+                if (nl >= 0) break;
+            }
+            if (spoolOut != null) spoolOut.close();
+            spoolOut = null;
+            if (oversize) {
+                if (spool != null) Files.deleteIfExists(spool);
+                return new Frame(null, 0, null, size, true);
+            }
+            Frame f = new Frame(acc, accLen, spool, size, false);
+            spool = null;
+            return f;
+        } finally {
+            if (spoolOut != null) {
+                try { spoolOut.close(); } catch (IOException ignored) {}
+            }
+            if (spool != null) {
+                try { Files.deleteIfExists(spool); } catch (IOException ignored) {}
+            }
+        }
+    }
+}
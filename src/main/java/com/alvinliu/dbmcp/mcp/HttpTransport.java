@@ -0,0 +1,286 @@
+package com.alvinliu.dbmcp.mcp;
+
+import com.alvinliu.dbmcp.config.ServerConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * MCP Streamable HTTP transport on 127.0.0.1, so several clients share one server process: one JDBC pool, one set of
+ * analyzers and one audit log. POST /mcp carries one JSON-RPC message or batch; requests are answered with an
+ * application/json body, notifications with 202. initialize creates a session returned in Mcp-Session-Id, which later requests must
+ * send; DELETE ends it. Server-initiated streams (GET) are not offered. A tools/call with a progressToken from a
+ * client that accepts text/event-stream is answered as an SSE stream: progress notifications, then the response.
+ * Every request must carry {@code Authorization: Bearer <token>}; the token is generated at start and written to an
+ * owner-only file next to the config (see {@link #getTokenFile()}), so other local users and processes cannot connect.
+ */
+public final class HttpTransport {
+    static final String SESSION_HEADER = "Mcp-Session-Id";
+    private static final String PATH = "/mcp";
+    /** Sessions idle this long (no requests, nothing running) are dropped. */
+    private static final long SESSION_IDLE_MS = 30 * 60_000L;
+
+    private final McpServer server;
+    private final ServerConfig serverConfig;
+    private final HttpServer http;
+    private final ExecutorService handlers;
+    private final byte[] expectedAuth;
+    private final Path tokenFile;
+    private final Map<String, McpSession> sessions = new ConcurrentHashMap<>();
+
+    private HttpTransport(McpServer server, HttpServer http, ExecutorService handlers, String token, Path tokenFile) {
+        this.server = server;
+        this.serverConfig = server.getConfig().getServer();
+        this.http = http;
+        this.handlers = handlers;
+        this.expectedAuth = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.tokenFile = tokenFile;
+    }
+
+    /** Bind 127.0.0.1:port (0 = any free port), write the bearer token file and start serving. */
+    public static HttpTransport start(McpServer server, int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        String token = newToken();
+        Path tokenFile = tokenFileFor(server.getConfig().getConfigPath(), http.getAddress().getPort());
+        try {
+            writeOwnerOnly(tokenFile, token);
+        } catch (IOException e) {
+            http.stop(0);
+            throw new IOException("cannot write HTTP token file " + tokenFile + ": " + e.getMessage(), e);
+        }
+        tokenFile.toFile().deleteOnExit();
+        // handler threads mostly wait for workers; size them above the worker bound so pings are never starved
+        ExecutorService handlers = McpServer.newWorkerExecutor(server.getConfig().getServer().getMaxConcurrentCalls() * 2);
+        HttpTransport t = new HttpTransport(server, http, handlers, token, tokenFile);
+        http.createContext(PATH, t::handle);
+        http.setExecutor(handlers);
+        http.start();
+        return t;
+    }
+
+    public int getPort() {
+        return http.getAddress().getPort();
+    }
+
+    /** File holding this server's bearer token; clients send it as {@code Authorization: Bearer <token>}. */
+    public Path getTokenFile() {
+        return tokenFile;
+    }
+
+    /** Stop accepting requests and cancel whatever the HTTP sessions still have running. */
+    public void stop() {
+        http.stop(0);
+        for (McpSession s : sessions.values()) {
+            s.cancelAll("Query cancelled: server shutting down");
+            server.sessionClosed(s);
+        }
+        sessions.clear();
+        handlers.shutdown();
+        try { Files.deleteIfExists(tokenFile); } catch (IOException ignored) {}
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            if (!isLocalOrigin(ex.getRequestHeaders().getFirst("Origin"))) {
+                sendStatus(ex, 403);
+                return;
+            }
+            if (!isAuthorized(ex.getRequestHeaders().getFirst("Authorization"))) {
+                ex.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                sendError(ex, 401, -32600, "Unauthorized: send Authorization: Bearer <token> (token in " + tokenFile + ")");
+                return;
+            }
+            String method = ex.getRequestMethod();
+            if ("POST".equals(method)) {
+                handlePost(ex);
+            } else if ("DELETE".equals(method)) {
+                handleDelete(ex);
+            } else {
+                ex.getResponseHeaders().set("Allow", "POST, DELETE");
+                sendStatus(ex, 405);
+            }
+        } finally {
+            ex.close();
+        }
+    }
+
+    private void handlePost(HttpExchange ex) throws IOException {
+        expireIdleSessions();
+        JsonRpcRequest.Message msg;
+        try (FrameReader.Frame frame = FrameReader.readAll(ex.getRequestBody(),
+                serverConfig.getMaxRequestBytes(), serverConfig.getRequestSpoolBytes())) {
+            if (frame.isOversize()) {
+                sendError(ex, 413, -32600, "Invalid Request: message exceeds max_request_bytes ("
+                    + serverConfig.getMaxRequestBytes() + ")");
+                return;
+            }
+            try (Reader r = frame.openReader()) {
+                msg = JsonRpcRequest.parseMessage(r);
+            } catch (Exception e) {
+                sendError(ex, 400, -32700, "Parse error");
+                return;
+            }
+        }
+
+        JsonRpcRequest req = msg.batch ? null : msg.requests.get(0);
+        String sessionId = ex.getRequestHeaders().getFirst(SESSION_HEADER);
+        McpSession session;
+        if (sessionId == null && req != null && "initialize".equals(req.getMethod())) {
+            session = new McpSession();
+            sessions.put(session.getId(), session);
+            ex.getResponseHeaders().set(SESSION_HEADER, session.getId());
+        } else if (sessionId == null) {
+            sendError(ex, 400, -32600, "Invalid Request: missing " + SESSION_HEADER + " header (send initialize first)");
+            return;
+        } else {
+            session = sessions.get(sessionId);
+            if (session == null) {
+                sendError(ex, 404, -32600, "Session not found or expired; re-initialize");
+                return;
+            }
+        }
+
+        if (msg.batch) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            CompletableFuture<Void> written = server.handleBatch(session,
+                JsonRpcWriter.responseOnly(body, McpServer.GSON), msg.requests);
+            session.track(written);
+            written.join();
+            session.touch();
+            sendBody(ex, body);
+            return;
+        }
+        if (req.getProgressToken() != null && !req.isNotification() && acceptsEventStream(ex)) {
+            ex.getResponseHeaders().set("Content-Type", "text/event-stream");
+            ex.getResponseHeaders().set("Cache-Control", "no-cache");
+            ex.sendResponseHeaders(200, 0);
+            try (OutputStream os = ex.getResponseBody()) {
+                server.handleRequest(session, JsonRpcWriter.eventStream(os, McpServer.GSON), req).join();
+            }
+            session.touch();
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        JsonRpcWriter out = JsonRpcWriter.responseOnly(body, McpServer.GSON);
+        server.handleRequest(session, out, req).join();
+        session.touch();
+        sendBody(ex, body);
+    }
+
+    /** 200 with the JSON response, or 202 when there is none (notifications only). */
+    private static void sendBody(HttpExchange ex, ByteArrayOutputStream body) throws IOException {
+        if (body.size() == 0) {
+            sendStatus(ex, 202);
+            return;
+        }
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, body.size());
+        try (OutputStream os = ex.getResponseBody()) {
+            body.writeTo(os);
+        }
+    }
+
+    private void handleDelete(HttpExchange ex) throws IOException {
+        String sessionId = ex.getRequestHeaders().getFirst(SESSION_HEADER);
+        McpSession session = sessionId != null ? sessions.remove(sessionId) : null;
+        if (session == null) {
+            sendStatus(ex, 404);
+            return;
+        }
+        session.cancelAll("Query cancelled: session closed");
+        server.sessionClosed(session);
+        sendStatus(ex, 200);
+    }
+
+    private void expireIdleSessions() {
+        long cutoff = System.currentTimeMillis() - SESSION_IDLE_MS;
+        sessions.values().removeIf(s -> {
+            if (s.getLastActiveMillis() >= cutoff || !s.isIdle()) return false;
+            server.sessionClosed(s);
+            return true;
+        });
+    }
+
+    private static boolean acceptsEventStream(HttpExchange ex) {
+        for (String accept : ex.getRequestHeaders().getOrDefault("Accept", List.of())) {
+            if (accept.contains("text/event-stream")) return true;
+        }
+        return false;
+    }
+
+    /** DNS-rebinding guard: browsers send Origin; only accept pages served from this machine. */
+    private static boolean isLocalOrigin(String origin) {
+        if (origin == null || origin.isBlank()) return true;
+        try {
+            String host = URI.create(origin.trim()).getHost();
+            return "localhost".equalsIgnoreCase(host) || "127.0.0.1".equals(host) || "[::1]".equals(host);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean isAuthorized(String authorization) {
+        if (authorization == null) return false;
+        // constant-time compare: do not leak how much of the token matched
+        return MessageDigest.isEqual(expectedAuth, authorization.trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /** db_mcp_http_&lt;port&gt;.token in the config file's directory (the working directory without one). */
+    private static Path tokenFileFor(String configPath, int port) {
+        Path dir = configPath != null ? Paths.get(configPath).toAbsolutePath().getParent() : null;
+        String name = "db_mcp_http_" + port + ".token";
+        return dir != null ? dir.resolve(name) : Paths.get(name).toAbsolutePath();
+    }
+
+    /** The token gives access to every configured database: create the file readable by its owner only. */
+    private static void writeOwnerOnly(Path file, String content) throws IOException {
+        Files.deleteIfExists(file);
+        try {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // non-POSIX file system (Windows): the file inherits the config directory's ACL
+            Files.createFile(file);
+        }
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendError(HttpExchange ex, int status, int code, String message) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        JsonRpcWriter.responseOnly(body, McpServer.GSON).writeError(null, code, message, null);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(status, body.size());
+        try (OutputStream os = ex.getResponseBody()) {
+            body.writeTo(os);
+        }
+    }
+
+    private static void sendStatus(HttpExchange ex, int status) throws IOException {
+        ex.sendResponseHeaders(status, -1);
+    }
+}
@@ -0,0 +1,179 @@
+package com.alvinliu.dbmcp.mcp;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One JSON-RPC 2.0 request or notification, read with a streaming {@link JsonReader} instead of a generic Gson map.
+ * Numbers keep their JSON type: integers become Long (so an id of 7 is echoed back as 7, not 7.0), others BigDecimal
+ * (so 0.1 or 12345678901234567890.5 reach a bind unchanged).
+ * For tools/call the tool name and arguments are lifted out of params. A message may also be a batch array.
+ */
+final class JsonRpcRequest {
+
+    /** A parsed message: one request, or the entries of a batch array (possibly empty). */
+    static final class Message {
+        final boolean batch;
+        final List<JsonRpcRequest> requests;
+
+        private Message(boolean batch, List<JsonRpcRequest> requests) {
+            this.batch = batch;
+            this.requests = requests;
+        }
+    }
+
+    private Object id;
+    private boolean invalid;
+    private boolean hasId;
+    private String method;
+    private Map<String, Object> params = Collections.emptyMap();
+
+    Object getId() { return id; }
+
+    /** Notifications carry no id and get no response. */
+    boolean isNotification() { return !hasId; }
+
+    String getMethod() { return method; }
+
+    /** Batch entry that was not a JSON object; answered with Invalid Request. */
+    boolean isInvalid() { return invalid; }
+
+    Map<String, Object> getParams() { return params; }
+
+    /** tools/call: params.name. */
+    String getToolName() {
+        Object n = params.get("name");
+        return n != null ? n.toString() : null;
+    }
+
+    /** tools/call: params.arguments, never null. */
+    @SuppressWarnings("unchecked")
+    Map<String, Object> getArguments() {
+        Object a = params.get("arguments");
+        return a instanceof Map ? (Map<String, Object>) a : Collections.emptyMap();
+    }
+
+    /** params._meta.progressToken (string or number), or null when the client did not ask for progress. */
+    Object getProgressToken() {
+        Object meta = params.get("_meta");
+        if (!(meta instanceof Map)) return null;
+        Object t = ((Map<?, ?>) meta).get("progressToken");
+        return t instanceof String || t instanceof Number ? t : null;
+    }
+
+    /** Parse one request object; throws on malformed JSON or a non-object message. */
+    static JsonRpcRequest parse(Reader reader) throws IOException {
+        JsonReader r = new JsonReader(reader);
+        JsonRpcRequest req = readRequest(r);
+        if (r.peek() != JsonToken.END_DOCUMENT) throw new IOException("Trailing data after JSON-RPC message");
+        return req;
+    }
+
+    /** Parse a request object or a batch array; throws on malformed JSON. */
+    static Message parseMessage(Reader reader) throws IOException {
+        JsonReader r = new JsonReader(reader);
+        Message m;
+        if (r.peek() == JsonToken.BEGIN_ARRAY) {
+            List<JsonRpcRequest> list = new ArrayList<>();
+            r.beginArray();
+            while (r.hasNext()) {
+                if (r.peek() == JsonToken.BEGIN_OBJECT) {
+                    list.add(readRequest(r));
+                } else {
+                    r.skipValue();
+                    JsonRpcRequest bad = new JsonRpcRequest();
+                    bad.invalid = true;
+                    list.add(bad);
+                }
+            }
+            r.endArray();
+            m = new Message(true, list);
+        } else {
+            m = new Message(false, Collections.singletonList(readRequest(r)));
+        }
+        if (r.peek() != JsonToken.END_DOCUMENT) throw new IOException("Trailing data after JSON-RPC message");
+        return m;
+    }
+
+    private static JsonRpcRequest readRequest(JsonReader r) throws IOException {
+        JsonRpcRequest req = new JsonRpcRequest();
+        r.beginObject();
+        while (r.hasNext()) {
+            String key = r.nextName();
+            switch (key) {
+                case "id":
+                    req.hasId = true;
+                    req.id = readValue(r);
+                    break;
+                case "method":
+                    Object m = readValue(r);
+                    req.method = m != null ? m.toString() : null;
+                    break;
+                case "params":
+                    Object p = readValue(r);
+                    if (p instanceof Map) {
+                        @SuppressWarnings("unchecked")
+                        Map<String, Object> pm = (Map<String, Object>) p;
+                        req.params = pm;
+                    }
+                    break;
+                default:
+                    r.skipValue();
+            }
+        }
+        r.endObject();
+        return req;
+    }
+
+    /** Read any JSON value into String / Long / BigDecimal / Boolean / null / LinkedHashMap / ArrayList. */
+    static Object readValue(JsonReader r) throws IOException {
+        JsonToken t = r.peek();
+        switch (t) {
+            case BEGIN_OBJECT: {
+                Map<String, Object> m = new LinkedHashMap<>();
+                r.beginObject();
+                while (r.hasNext()) m.put(r.nextName(), readValue(r));
+                r.endObject();
+                return m;
+            }
+            case BEGIN_ARRAY: {
+                List<Object> l = new ArrayList<>();
+                r.beginArray();
+                while (r.hasNext()) l.add(readValue(r));
+                r.endArray();
+                return l;
+            }
+            case STRING:
+                return r.nextString();
+            case NUMBER:
+                return parseNumber(r.nextString());
+            case BOOLEAN:
+                return r.nextBoolean();
+            case NULL:
+                r.nextNull();
+                return null;
+            default:
+                throw new IOException("Unexpected JSON token: " + t);
+        }
+    }
+
+    private static Object parseNumber(String s) {
+        if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(s);
+            } catch (NumberFormatException ignored) {
+                // out of long range
+            }
+        }
+        return new BigDecimal(s);
+    }
+}
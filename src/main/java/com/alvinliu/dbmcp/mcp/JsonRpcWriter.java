@@ -0,0 +1,285 @@
+package com.alvinliu.dbmcp.mcp;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Single writer for JSON-RPC messages (one JSON object per line). Each message is serialized once into a byte buffer
+ * outside the lock; tool results are written into the MCP text content through {@link JsonStringWriter}, so the
+ * payload is not serialized to a String and then escaped again. Only writing a complete message to the stream (one
+ * explicit flush each) holds the lock, so messages from concurrent tool calls never interleave and a multi-MB result
+ * does not block pings or progress notifications while it is being serialized.
+ * Messages are framed as JSON lines (stdio) or as server-sent events (HTTP responses that stream notifications);
+ * a writer for a plain application/json HTTP response drops notifications, since only one message fits in the body.
+ */
+final class JsonRpcWriter {
+
+    /** Writes a tool result payload as JSON. */
+    interface Payload {
+        void writeTo(JsonWriter w) throws IOException;
+    }
+
+    private static final byte[] NEWLINE = { '\n' };
+    private static final byte[] EVENT_END = { '\n', '\n' };
+
+    private final Gson gson;
+    private final BufferedOutputStream out;
+    private final Writer chars;
+    private final String prefix;
+    private final byte[] terminator;
+    private final boolean notifications;
+
+    /** JSON lines with notifications (stdio). */
+    JsonRpcWriter(OutputStream out, Gson gson) {
+        this(out, gson, "", NEWLINE, true);
+    }
+
+    /** Server-sent events ("data: &lt;message&gt;" + blank line) with notifications. */
+    static JsonRpcWriter eventStream(OutputStream out, Gson gson) {
+        return new JsonRpcWriter(out, gson, "data: ", EVENT_END, true);
+    }
+
+    /** A single response message; notifications are dropped. */
+    static JsonRpcWriter responseOnly(OutputStream out, Gson gson) {
+        return new JsonRpcWriter(out, gson, "", NEWLINE, false);
+    }
+
+    private JsonRpcWriter(OutputStream out, Gson gson, String prefix, byte[] terminator, boolean notifications) {
+        this.gson = gson;
+        this.prefix = prefix;
+        this.terminator = terminator;
+        this.notifications = notifications;
+        this.out = new BufferedOutputStream(out, 1 << 16);
+        // OutputStreamWriter.flush() would also flush the stream; shield it so only endMessage() hits the pipe
+        this.chars = new OutputStreamWriter(new FilterOutputStream(this.out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, StandardCharsets.UTF_8);
+    }
+
+    void writeResult(Object id, Object result) {
+        send(w -> {
+            beginResponse(w, id);
+            w.write(",\"result\":");
+            gson.toJson(result, w);
+            w.write('}');
+        });
+    }
+
+    /** Result whose JSON was serialized ahead of time (e.g. the static tools/list response). */
+    synchronized void writeRawResult(Object id, byte[] resultJson) {
+        try {
+            chars.write(prefix);
+            beginResponse(chars, id);
+            chars.write(",\"result\":");
+            chars.flush();
+            out.write(resultJson);
+            chars.write('}');
+            endMessage();
+        } catch (IOException e) {
+            clientGone();
+        }
+    }
+
+    void writeError(Object id, int code, String message, Object data) {
+        send(w -> {
+            beginResponse(w, id);
+            w.write(",\"error\":{\"code\":");
+            w.write(Integer.toString(code));
+            w.write(",\"message\":");
+            gson.toJson(message, w);
+            if (data != null) {
+                w.write(",\"data\":");
+                gson.toJson(data, w);
+            }
+            w.write("}}");
+        });
+    }
+
+    /** MCP tool result: {"content":[{"type":"text","text":"&lt;payload JSON&gt;"}]}, payload serialized and escaped in one pass. */
+    void writeToolResult(Object id, Payload payload) {
+        send(w -> {
+            beginResponse(w, id);
+            w.write(",\"result\":{\"content\":[{\"type\":\"text\",\"text\":\"");
+            JsonWriter jw = gson.newJsonWriter(new JsonStringWriter(w));
+            payload.writeTo(jw);
+            jw.flush();
+            w.write("\"}]}}");
+        });
+    }
+
+    void writeToolError(Object id, String message) {
+        send(w -> {
+            beginResponse(w, id);
+            w.write(",\"result\":{\"content\":[{\"type\":\"text\",\"text\":");
+            gson.toJson(message, w);
+            w.write("}],\"isError\":true}}");
+        });
+    }
+
+    /** Batch response: the given complete response messages (no framing) as one JSON array. */
+    synchronized void writeBatch(List<byte[]> responses) {
+        if (responses.isEmpty()) return;
+        try {
+            chars.write(prefix);
+            chars.write('[');
+            chars.flush();
+            for (int i = 0; i < responses.size(); i++) {
+                if (i > 0) out.write(',');
+                out.write(responses.get(i));
+            }
+            chars.write(']');
+            endMessage();
+        } catch (IOException e) {
+            clientGone();
+        }
+    }
+
+    /** Server-to-client notification, e.g. notifications/progress. */
+    void writeNotification(String method, Object params) {
+        if (!notifications) return;
+        send(w -> {
+            w.write("{\"jsonrpc\":\"2.0\",\"method\":");
+            gson.toJson(method, w);
+            w.write(",\"params\":");
+            gson.toJson(params, w);
+            w.write('}');
+        });
+    }
+
+    /** Writes one message (without framing) as JSON text. */
+    private interface Message {
+        void writeTo(Writer w) throws IOException;
+    }
+
+    /**
+     * Serialize the message into a buffer without holding the lock, then frame and write it under the lock, so a
+     * large result being serialized does not hold up pings, progress notifications or other calls' responses.
+     */
+    private void send(Message message) {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+        try {
+            Writer w = new OutputStreamWriter(buf, StandardCharsets.UTF_8);
+            message.writeTo(w);
+            w.flush();
+        } catch (IOException e) {
+            // only a payload can fail here (the buffer cannot); there is no complete message to send
+            return;
+        }
+        synchronized (this) {
+            try {
+                chars.write(prefix);
+                chars.flush();
+                buf.writeTo(out);
+                endMessage();
+            } catch (IOException e) {
+                clientGone();
+            }
+        }
+    }
+
+    private void beginResponse(Writer w, Object id) throws IOException {
+        w.write("{\"jsonrpc\":\"2.0\",\"id\":");
+        gson.toJson(id, w);
+    }
+
+    private void endMessage() throws IOException {
+        chars.flush();
+        out.write(terminator);
+        out.flush();
+    }
+
+    private void clientGone() {
+        // stdout closed: nothing to report to; the reader loop sees EOF and shuts down
+    }
+
+    /**
+     * Escapes everything written to it as the body of a JSON string literal (quotes not included). Runs of characters
+     * that need no escaping are passed through in bulk.
+     */
+    static final class JsonStringWriter extends Writer {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+        private final Writer target;
+
+        JsonStringWriter(Writer target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            int end = off + len;
+            int run = off;
+            for (int i = off; i < end; i++) {
+                char c = cbuf[i];
+                String esc = escape(c);
+                if (esc == null) continue;
+                if (i > run) target.write(cbuf, run, i - run);
+                target.write(esc);
+                run = i + 1;
+            }
+            if (end > run) target.write(cbuf, run, end - run);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            int end = off + len;
+            int run = off;
+            for (int i = off; i < end; i++) {
+                String esc = escape(str.charAt(i));
+                if (esc == null) continue;
+                if (i > run) target.write(str, run, i - run);
+                target.write(esc);
+                run = i + 1;
+            }
+            if (end > run) target.write(str, run, end - run);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            String esc = escape((char) c);
+            if (esc != null) target.write(esc);
+            else target.write(c);
+        }
+
+        private static String escape(char c) {
+            switch (c) {
+                case '"': return "\\\"";
+                case '\\': return "\\\\";
+                case '\n': return "\\n";
+                case '\r': return "\\r";
+                case '\t': return "\\t";
+                case '\b': return "\\b";
+                case '\f': return "\\f";
+                case '\u2028': return "\\u2028";
+                case '\u2029': return "\\u2029";
+                default:
+                    if (c < 0x20) return "\\u00" + HEX[c >> 4] + HEX[c & 0xF];
+                    return null;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
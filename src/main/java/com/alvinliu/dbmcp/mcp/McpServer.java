@@ -1,48 +1,89 @@
 package com.alvinliu.dbmcp.mcp;
 
+import com.alibaba.druid.DbType;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import com.alvinliu.dbmcp.audit.Auditor;
 import com.alvinliu.dbmcp.config.Config;
+import com.alvinliu.dbmcp.config.ConnectionEntry;
 import com.alvinliu.dbmcp.confirm.ConfirmRequest;
 import com.alvinliu.dbmcp.confirm.Confirmer;
 import com.alvinliu.dbmcp.core.AnalysisResult;
 import com.alvinliu.dbmcp.core.SqlAnalyzer;
 import com.alvinliu.dbmcp.core.SqlFormatter;
+import com.alvinliu.dbmcp.core.druid.DbTypes;
+import com.alvinliu.dbmcp.jdbc.CheckpointedExport;
+import com.alvinliu.dbmcp.jdbc.CsvLoad;
+import com.alvinliu.dbmcp.jdbc.CursorRegistry;
+import com.alvinliu.dbmcp.jdbc.ExecutionContext;
 import com.alvinliu.dbmcp.jdbc.ExecutionResult;
+import com.alvinliu.dbmcp.jdbc.IncrementalExport;
 import com.alvinliu.dbmcp.jdbc.JdbcExecutor;
 import com.alvinliu.dbmcp.jdbc.JdbcPool;
+import com.alvinliu.dbmcp.jdbc.NativeBulk;
+import com.alvinliu.dbmcp.jdbc.PartitionedExport;
+import com.alvinliu.dbmcp.jdbc.ResultCursor;
+import com.alvinliu.dbmcp.jdbc.ResultLimits;
+import com.alvinliu.dbmcp.jdbc.RowFormat;
+import com.alvinliu.dbmcp.jdbc.TextRowFormats;
+import com.alvinliu.dbmcp.jdbc.WatermarkStore;
 
 import java.io.*;
-import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * MCP server: JSON-RPC 2.0 over stdio. Tools: list_connections, execute_sql, execute_sql_file, query_to_csv_file, query_to_text_file.
+ * MCP server: JSON-RPC 2.0 over stdio (and optionally Streamable HTTP, see {@link HttpTransport}).
+ * Tools: list_connections, execute_sql, fetch_more, execute_sql_file, query_to_csv_file, query_to_text_file, query_to_file,
+ * lob_to_file, load_csv_file.
  * Supports require_confirm_for_ddl, danger_keywords confirmation, audit log, verbose stderr (same as Go version).
+ * One instance holds the pool, analyzers, auditor and worker pool; each client connection is an {@link McpSession}.
+ * tools/call runs on a bounded worker pool (virtual threads on JDK 21+); initialize, ping and tools/list are answered
+ * inline on the reader thread. Responses go through a {@link JsonRpcWriter} so each JSON line stays intact.
+ * Each call gets an {@link ExecutionContext} keyed by request id: notifications/cancelled and the per-call deadline
+ * (timeout_ms argument, else the connection's query_timeout_ms) cancel the running statement.
+ * When a request carries params._meta.progressToken, the call reports rows and statements as notifications/progress.
+ * JSON-RPC batch arrays run their entries in parallel and are answered with one array once all are done; calls on
+ * the same connection are capped by server.max_concurrent_per_connection.
+ * execute_sql with page_size returns one page and keeps the rest open in a {@link CursorRegistry} for fetch_more.
+ * Both return row-major results, or column-major ones with format "columnar" (see {@link ColumnarPayload}).
  */
 public class McpServer {
     private static final String PROTOCOL_VERSION = "2024-11-05";
     private static final int ERR_CODE_USER_REJECTED = -32000;
-    private static final Gson GSON = new GsonBuilder().serializeNulls().create();
-    private static final Type MAP_TYPE = new TypeToken<Map<String, Object>>() {}.getType();
+    static final Gson GSON = new GsonBuilder().serializeNulls().create();
 
     private final Config config;
     private final JdbcPool pool;
     private final Auditor auditor;
     private final Confirmer confirmer;
-    private final BufferedReader reader;
-    private final PrintWriter writer;
+    private volatile byte[] toolsListResult;
+    private final ExecutorService workers;
+    private final Semaphore callSlots;
+    private final Map<String, Semaphore> connectionSlots = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService deadlines;
+    private final CursorRegistry cursors;
+    private final WatermarkStore watermarks;
     private volatile String lastVerboseMsg;
     private volatile long lastVerboseAt;
 
-    public McpServer(Config config, JdbcPool pool, InputStream in, OutputStream out) {
+    public McpServer(Config config, JdbcPool pool) {
         this.config = config;
         this.pool = pool;
         this.confirmer = new Confirmer();
@@ -63,53 +104,177 @@ public class McpServer {
             }
         }
         this.auditor = a;
-        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
-        this.writer = new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), true);
+        Path watermarkFile = Paths.get(config.getServer().getWatermarkFile());
+        if (config.getConfigPath() != null && !watermarkFile.isAbsolute() && Paths.get(config.getConfigPath()).getParent() != null) {
+            watermarkFile = Paths.get(config.getConfigPath()).getParent().resolve(watermarkFile);
+        }
+        this.watermarks = new WatermarkStore(watermarkFile);
+        int maxCalls = config.getServer().getMaxConcurrentCalls();
+        this.callSlots = new Semaphore(maxCalls);
+        this.workers = newWorkerExecutor(maxCalls);
+        this.deadlines = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-mcp-deadline");
+            t.setDaemon(true);
+            return t;
+        });
+        this.cursors = new CursorRegistry(config.getServer().getCursorTtlMs(),
+            config.getServer().getMaxCursorsPerConnection(), deadlines);
     }
 
-    public void run() throws IOException {
+    /**
+     * Virtual-thread-per-task executor when running on JDK 21+ (looked up reflectively; we compile for 11),
+     * otherwise a cached pool of daemon threads (idle ones exit after a minute). Concurrency is bounded by
+     * {@link #callSlots} either way; the pool is not, because a call waiting for a connection slot gives its call slot
+     * back (see {@link #acquireSlot(String, ExecutionContext, int)}) but keeps its thread.
+     */
+    static ExecutorService newWorkerExecutor(int size) {
         try {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                handleRequest(line);
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ignored) {
+            // JDK < 21
+        }
+        AtomicInteger seq = new AtomicInteger();
+        ThreadFactory tf = r -> {
+            Thread t = new Thread(r, "db-mcp-call-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(size, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<>(), tf);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    Config getConfig() { return config; }
+
+    /**
+     * Serve one client over a pair of byte streams (stdio) until end of input. Calls still running when the client
+     * goes away are cancelled and awaited before returning; the shared pool stays open (see {@link #close()}).
+     */
+    public void serve(InputStream in, OutputStream out) throws IOException {
+        McpSession session = new McpSession();
+        FrameReader reader = new FrameReader(in, config.getServer().getMaxRequestBytes(), config.getServer().getRequestSpoolBytes());
+        JsonRpcWriter writer = new JsonRpcWriter(out, GSON);
+        try {
+            FrameReader.Frame frame;
+            while ((frame = reader.next()) != null) {
+                try (FrameReader.Frame f = frame) {
+                    handleFrame(session, writer, f);
+                }
             }
         } finally {
-            pool.close();
-            if (auditor != null) {
-                try { auditor.close(); } catch (IOException ignored) {}
-            }
+            session.cancelAll("Query cancelled: client disconnected");
+            session.awaitPending();
+            sessionClosed(session);
         }
     }
 
-    private void handleRequest(String line) {
-        Map<String, Object> req;
+    /** Release what a finished session still holds (open cursors and their connections). */
+    void sessionClosed(McpSession session) {
+        cursors.closeOwnedBy(session.getId());
+    }
+
+    /** Stop the worker pool and release the JDBC pools and audit log. */
+    public void close() {
+        workers.shutdown();
         try {
-            req = GSON.fromJson(line, MAP_TYPE);
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        deadlines.shutdownNow();
+        cursors.closeAll();
+        pool.close();
+        if (auditor != null) {
+            try { auditor.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void handleFrame(McpSession session, JsonRpcWriter out, FrameReader.Frame frame) {
+        if (frame.isBlank()) return;
+        if (frame.isOversize()) {
+            out.writeError(null, -32600, "Invalid Request: message exceeds max_request_bytes ("
+                + config.getServer().getMaxRequestBytes() + ")", null);
+            return;
+        }
+        JsonRpcRequest.Message msg;
+        try (Reader r = frame.openReader()) {
+            msg = JsonRpcRequest.parseMessage(r);
         } catch (Exception e) {
-            sendError(null, -32700, "Parse error", null);
+            out.writeError(null, -32700, "Parse error", null);
             return;
         }
-        String method = (String) req.get("method");
-        Object id = req.get("id");
+        if (msg.batch) {
+            // the array is written by a stage after the entries complete: awaitPending must wait for it too
+            session.track(handleBatch(session, out, msg.requests));
+        } else {
+            handleRequest(session, out, msg.requests.get(0));
+        }
+    }
+
+    /**
+     * Handle a batch: every entry is dispatched like a single request (tools/call entries run in parallel), each
+     * response is captured, and one array is written once all are done. Notifications contribute nothing; an
+     * all-notification batch gets no response.
+     */
+    CompletableFuture<Void> handleBatch(McpSession session, JsonRpcWriter out, List<JsonRpcRequest> batch) {
+        if (batch.isEmpty()) {
+            out.writeError(null, -32600, "Invalid Request: empty batch", null);
+            return CompletableFuture.completedFuture(null);
+        }
+        List<ByteArrayOutputStream> bodies = new ArrayList<>(batch.size());
+        List<CompletableFuture<Void>> pending = new ArrayList<>(batch.size());
+        for (JsonRpcRequest req : batch) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            JsonRpcWriter entryOut = JsonRpcWriter.responseOnly(body, GSON);
+            bodies.add(body);
+            if (req.isInvalid()) {
+                entryOut.writeError(null, -32600, "Invalid Request", null);
+            } else {
+                pending.add(handleRequest(session, entryOut, req));
+            }
+        }
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+            List<byte[]> responses = new ArrayList<>();
+            for (ByteArrayOutputStream body : bodies) {
+                byte[] b = body.toByteArray();
+                int len = b.length;
+                while (len > 0 && (b[len - 1] == '\n' || b[len - 1] == '\r')) len--;
+                if (len > 0) responses.add(Arrays.copyOf(b, len));
+            }
+            out.writeBatch(responses);
+            return null;
+        });
+    }
+
+    /**
+     * Handle one request for a session, writing the response to out. Cheap methods are answered before returning;
+     * for tools/call the returned future completes once the worker has written the response.
+     */
+    CompletableFuture<Void> handleRequest(McpSession session, JsonRpcWriter out, JsonRpcRequest req) {
+        String method = req.getMethod();
+        Object id = req.getId();
+        session.touch();
         if ("initialize".equals(method)) {
-            handleInitialize(id);
+            handleInitialize(out, id);
         } else if ("initialized".equals(method) || "notifications/initialized".equals(method)) {
+        } else if ("notifications/cancelled".equals(method)) {
+            session.cancel(req.getParams().get("requestId"));
         } else if ("tools/list".equals(method)) {
-            handleToolsList(id);
+            handleToolsList(out, id);
         } else if ("tools/call".equals(method)) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> params = (Map<String, Object>) req.get("params");
-            handleToolsCall(id, params);
+            return dispatchToolsCall(session, out, req);
         } else if ("ping".equals(method)) {
-            sendResult(id, Map.of("status", "ok"));
+            out.writeResult(id, Map.of("status", "ok"));
         } else {
             if (id != null) {
-                sendError(id, -32601, "Method not found: " + method, null);
+                out.writeError(id, -32601, "Method not found: " + method, null);
             }
         }
+        return CompletableFuture.completedFuture(null);
     }
 
-    private void handleInitialize(Object id) {
+    private void handleInitialize(JsonRpcWriter out, Object id) {
         Map<String, Object> result = new LinkedHashMap<>();
         result.put("protocolVersion", PROTOCOL_VERSION);
         result.put("capabilities", Map.of(
@@ -117,25 +282,60 @@ public class McpServer {
             "logging", Collections.emptyMap()
         ));
         result.put("serverInfo", Map.of("name", "db-mcp-server", "version", "1.0.0"));
-        sendResult(id, result);
+        out.writeResult(id, result);
     }
 
-    private void handleToolsList(Object id) {
+    /** The tool list never changes at runtime: serialize it once and replay the bytes. */
+    private void handleToolsList(JsonRpcWriter out, Object id) {
+        byte[] cached = toolsListResult;
+        if (cached == null) {
+            cached = GSON.toJson(Map.of("tools", buildToolList())).getBytes(StandardCharsets.UTF_8);
+            toolsListResult = cached;
+        }
+        out.writeRawResult(id, cached);
+    }
+
+    private List<Map<String, Object>> buildToolList() {
         List<Map<String, Object>> tools = new ArrayList<>();
         tools.add(tool(
             "execute_sql",
             "Execute SQL against the configured database. When multiple connections are configured, use the 'connection' argument (call list_connections to see names). SQL that matches danger_keywords or DDL (if require_confirm_for_ddl) opens a confirmation window.",
             Map.of(
-                "sql", prop("string", "SQL to run: one or multiple statements (separated by semicolon)."),
+                "sql", prop("string", "SQL to run: one or multiple statements (separated by semicolon; a ; inside strings, quoted names, comments or dollar-quoted bodies does not split). Consecutive INSERT/UPDATE/DELETE/MERGE statements are sent to the database in batches; scripts report updateCounts per statement and errors for failed ones."),
+                "params", prop("array", "Optional: values for the ? placeholders of a single statement, in order; the statement is prepared and the values bound (strings, numbers, booleans, null). For other SQL types pass {\"type\": \"date\"|\"time\"|\"timestamp\"|\"decimal\"|\"int\"|\"double\"|\"bool\"|\"string\"|\"binary\", \"value\": \"...\"} (binary as base64). Repeating the same SQL text with new params reuses the cached prepared statement."),
+                "page_size", prop("integer", "Optional: return at most this many rows; if more remain, the result has cursorId and hasMore=true, and fetch_more returns the next page."),
+                "transaction", prop("boolean", "Optional: for scripts, run all statements in one transaction, committed at the end and rolled back at the first failing statement (the last result is then not paged). Default: each statement stands on its own."),
+                "format", prop("string", "Optional: \"rows\" (default) or \"columnar\": column-major values with a type tag per column, null runs, and dictionary-encoded low-cardinality strings; much smaller for wide or repetitive results."),
+                "max_rows", prop("integer", "Optional: stop after this many rows (result has truncated=true, truncatedReason). Can only lower the connection's limit."),
+                "max_result_bytes", prop("integer", "Optional: stop once the result reaches about this many bytes. Can only lower the connection's limit (default 32 MB)."),
+                "max_fetch_ms", prop("integer", "Optional: stop fetching rows after this many milliseconds and return what was read. Can only lower the connection's limit."),
+                "timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statement is cancelled when it expires. Defaults to the connection's query_timeout_ms."),
                 "connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one.")
             ),
             List.of("sql")
         ));
+        tools.add(tool(
+            "fetch_more",
+            "Return the next page of a result that execute_sql left open (its cursorId). The cursor is closed after the last row, after a few minutes without use, or when close is true.",
+            Map.of(
+                "cursor_id", prop("string", "cursorId from the previous execute_sql or fetch_more result."),
+                "page_size", prop("integer", "Optional: rows to return; defaults to the page_size of the original execute_sql."),
+                "close", prop("boolean", "Optional: true to close the cursor without fetching (release it when no more rows are needed)."),
+                "format", prop("string", "Optional: \"rows\" (default) or \"columnar\": column-major values with a type tag per column, null runs, and dictionary-encoded low-cardinality strings; much smaller for wide or repetitive results."),
+                "max_rows", prop("integer", "Optional: stop after this many rows (result has truncated=true, truncatedReason). Can only lower the connection's limit."),
+                "max_result_bytes", prop("integer", "Optional: stop once the result reaches about this many bytes. Can only lower the connection's limit (default 32 MB)."),
+                "max_fetch_ms", prop("integer", "Optional: stop fetching rows after this many milliseconds and return what was read. Can only lower the connection's limit."),
+                "timeout_ms", prop("integer", "Optional deadline for this call in milliseconds. Defaults to the connection's query_timeout_ms.")
+            ),
+            List.of("cursor_id")
+        ));
         tools.add(tool(
             "execute_sql_file",
             "Read SQL from a file, analyze it (same rules as execute_sql). If review is required (danger_keywords or DDL), a confirmation window shows the formatted file content. On approve, execute the file contents. File path is relative to server working directory unless absolute.",
             Map.of(
                 "file_path", prop("string", "Absolute path to the SQL file (callers must use absolute path; relative path depends on server working directory and may fail)."),
+                "transaction", prop("boolean", "Optional: run the whole script in one transaction, committed at the end and rolled back at the first failing statement. Default: each statement stands on its own and later statements still run after a failure."),
+                "timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statement is cancelled when it expires. Defaults to the connection's query_timeout_ms."),
                 "connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one.")
             ),
             List.of("file_path")
@@ -152,21 +352,76 @@ public class McpServer {
             Map.of(
                 "sql", prop("string", "SQL to run (e.g. SELECT). Single or multiple statements; last result is written."),
                 "file_path", prop("string", "Absolute path of the output CSV file."),
+                "timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statement is cancelled when it expires. Defaults to the connection's query_timeout_ms."),
                 "connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one.")
             ),
             List.of("sql", "file_path")
         ));
         tools.add(tool(
             "query_to_text_file",
-            "Execute the given SQL and write the result to a file as plain text: no header, columns tab-separated. No extra newlines added between rows; only newlines in the cell data are written. CLOB columns are read in full. Use for procedure source or any query (including CLOB). file_path must be absolute. No confirmation dialog.",
+            "Execute the given SQL and write the result to a file as plain text: no header, columns tab-separated. No extra newlines added between rows; only newlines in the cell data are written. CLOB columns are written in full. Use for procedure source or any query (including CLOB). file_path must be absolute. No confirmation dialog.",
             Map.of(
                 "sql", prop("string", "SQL to run (e.g. SELECT text FROM user_source ...). Single or multiple statements; last result is written."),
                 "file_path", prop("string", "Absolute path of the output text file (e.g. .sql)."),
+                "timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statement is cancelled when it expires. Defaults to the connection's query_timeout_ms."),
+                "connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one.")
+            ),
+            List.of("sql", "file_path")
+        ));
+        tools.add(tool(
+            "query_to_file",
+            "Execute the given SQL and stream the result to a file as CSV, plain text or JSON Lines, optionally gzip-compressed. JSON Lines keeps column types (numbers, booleans, ISO dates, base64 binary) so the file loads directly into analytics tools. file_path must be absolute. No confirmation dialog.",
+            Map.ofEntries(
+                Map.entry("sql", prop("string", "SQL to run (e.g. SELECT). Single or multiple statements; last result is written.")),
+                Map.entry("file_path", prop("string", "Absolute path of the output file. A .gz suffix turns on gzip unless compression is given.")),
+                Map.entry("format", prop("string", "Optional: \"csv\", \"text\" or \"jsonl\". Defaults from the file extension (.jsonl/.ndjson, .txt, else csv).")),
+                Map.entry("compression", prop("string", "Optional: \"gzip\" or \"none\". Defaults to gzip when file_path ends with .gz.")),
+                Map.entry("partition_column", prop("string", "Optional: integer column of the (single SELECT) result to split on; key ranges are exported in parallel, each on its own connection, reading one snapshot where the database supports it.")),
+                Map.entry("partitions", prop("integer", "Optional: number of parallel ranges with partition_column (default 4; at most max_concurrent_per_connection - 1).")),
+                Map.entry("shard_files", prop("boolean", "Optional: with partition_column, keep one file per range (name-part001.ext, ...) instead of merging them into file_path.")),
+                Map.entry("checkpoint_column", prop("string", "Optional: non-NULL ordered column of the (single SELECT) result; rows are exported in its order and progress is checkpointed to file_path.checkpoint.json so a failed export can be resumed.")),
+                Map.entry("resume", prop("boolean", "Optional: with checkpoint_column, continue a failed export after its last checkpoint instead of starting over (starts fresh if there is no checkpoint).")),
+                Map.entry("watermark_column", prop("string", "Optional: incremental export on this column of the (single SELECT) result, e.g. an updated-at timestamp or sequence. The first run exports all rows; later runs with the same sql, connection and file_path append only rows whose value is above the stored high-water mark.")),
+                Map.entry("reset_watermark", prop("boolean", "Optional: with watermark_column, forget the stored high-water mark and rewrite the file with all rows.")),
+                Map.entry("method", prop("string", "Optional: \"jdbc\" (default) reads rows through JDBC; \"native\" uses the database's bulk export where there is one (PostgreSQL COPY TO STDOUT for CSV of a single query; values are then formatted by the database, e.g. booleans as t/f and bytea as \\x hex).")),
+                Map.entry("timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statement is cancelled when it expires. Defaults to the connection's query_timeout_ms.")),
+                Map.entry("connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one."))
+            ),
+            List.of("sql", "file_path")
+        ));
+        tools.add(tool(
+            "lob_to_file",
+            "Run a query that returns one row and write one CLOB or BLOB value to a file, streamed from the database without loading it into memory. Binary columns are written as raw bytes, others as UTF-8 text. Use it for values that execute_sql returns only as a preview. file_path must be absolute. No confirmation dialog.",
+            Map.of(
+                "sql", prop("string", "Query returning exactly one row, e.g. SELECT doc FROM docs WHERE id = 42."),
+                "file_path", prop("string", "Absolute path of the output file."),
+                "column", prop("string", "Optional: label of the column to write. Defaults to the first column."),
+                "timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statement is cancelled when it expires. Defaults to the connection's query_timeout_ms."),
                 "connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one.")
             ),
             List.of("sql", "file_path")
         ));
-        sendResult(id, Map.of("tools", tools));
+        tools.add(tool(
+            "load_csv_file",
+            "Load a CSV file into a table with batched INSERTs (addBatch/executeBatch), optionally on several connections in parallel. The file is streamed, values are converted to the column types, and rows the database refuses are rejected one by one instead of failing the load; the result reports rows loaded and rejected. The INSERT goes through the same review as execute_sql. file_path must be absolute.",
+            Map.ofEntries(
+                Map.entry("file_path", prop("string", "Absolute path of the CSV file (UTF-8, RFC 4180 quoting).")),
+                Map.entry("table", prop("string", "Target table, optionally schema.table.")),
+                Map.entry("columns", arrayProp("string", "Optional: target column names in file order. Defaults to the header line.")),
+                Map.entry("header", prop("boolean", "Optional: the first line is a header and is not loaded (default true). Without a header, columns is required.")),
+                Map.entry("delimiter", prop("string", "Optional: field delimiter, one character or \"tab\" (default \",\").")),
+                Map.entry("empty_as_null", prop("boolean", "Optional: load unquoted empty fields as NULL (default true); a quoted \"\" stays an empty string.")),
+                Map.entry("batch_size", prop("integer", "Optional: rows per executeBatch (default 1000).")),
+                Map.entry("commit_size", prop("integer", "Optional: rows per commit on each connection (default 10000, at least batch_size).")),
+                Map.entry("parallelism", prop("integer", "Optional: connections loading in parallel (default 1; at most max_concurrent_per_connection).")),
+                Map.entry("max_rejected", prop("integer", "Optional: stop the load once more than this many rows are rejected (default 1000). Rows committed before that stay loaded.")),
+                Map.entry("method", prop("string", "Optional: \"jdbc\" (default) uses batched INSERTs with the documented conversions; \"native\" uses PostgreSQL COPY FROM STDIN (the database parses the values; batch_size, commit_size, parallelism and max_rejected do not apply; falls back to batched INSERTs if the data is refused) or MySQL/MariaDB LOAD DATA LOCAL INFILE (needs allowLoadLocalInfile=true; the server skips bad rows with warnings instead of rejecting them).")),
+                Map.entry("timeout_ms", prop("integer", "Optional deadline for this call in milliseconds; the running statements are cancelled when it expires. Defaults to the connection's query_timeout_ms.")),
+                Map.entry("connection", prop("string", "Which configured database to use. Required when multiple connections; omit when only one."))
+            ),
+            List.of("file_path", "table")
+        ));
+        return tools;
     }
 
     private Map<String, Object> tool(String name, String description, Map<String, Object> properties, List<String> required) {
@@ -188,31 +443,73 @@ public class McpServer {
         return p;
     }
 
-    @SuppressWarnings("unchecked")
-    private void handleToolsCall(Object id, Map<String, Object> params) {
-        if (params == null) {
-            sendToolError(id, "Missing params");
+    private Map<String, Object> arrayProp(String itemType, String description) {
+        Map<String, Object> p = prop("array", description);
+        p.put("items", Map.of("type", itemType));
+        return p;
+    }
+
+    /** Run tools/call on the worker pool so slow queries do not hold up the reader loop. */
+    private CompletableFuture<Void> dispatchToolsCall(McpSession session, JsonRpcWriter out, JsonRpcRequest req) {
+        Object id = req.getId();
+        ToolCall call = new ToolCall(session, out, id, req.getArguments(), new ExecutionContext());
+        Object progressToken = req.getProgressToken();
+        if (progressToken != null) {
+            call.getContext().setProgressListener((progress, message) -> sendProgress(call, progressToken, progress, message));
+        }
+        session.begin(id, call.getContext());
+        CompletableFuture<Void> f = CompletableFuture.runAsync(() -> {
+            try {
+                callSlots.acquire();
+                try {
+                    handleToolsCall(req, call);
+                } finally {
+                    callSlots.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sendToolError(call, "Server is shutting down");
+            } catch (RuntimeException e) {
+                sendToolError(call, "Internal error: " + e.getMessage());
+            } finally {
+                call.getContext().close();
+                session.end(id, call.getContext());
+            }
+        }, workers);
+        session.track(f);
+        return f;
+    }
+
+    private void handleToolsCall(JsonRpcRequest req, ToolCall call) {
+        if (req.getParams().isEmpty()) {
+            sendToolError(call, "Missing params");
             return;
         }
-        String name = (String) params.get("name");
-        Map<String, Object> args = (Map<String, Object>) params.get("arguments");
-        if (args == null) args = Map.of();
+        String name = req.getToolName();
         if ("list_connections".equals(name)) {
             List<Map<String, Object>> connections = pool.listConnectionsWithStatus();
             Map<String, Object> out = new LinkedHashMap<>();
             out.put("connections", connections);
             out.put("message", "Use these names as the 'connection' argument in execute_sql. Unavailable connections are retried on each list_connections call.");
-            sendToolResult(id, GSON.toJson(out));
+            sendToolResult(call, out);
         } else if ("execute_sql".equals(name)) {
-            handleExecuteSql(id, args);
+            handleExecuteSql(call);
+        } else if ("fetch_more".equals(name)) {
+            handleFetchMore(call);
         } else if ("execute_sql_file".equals(name)) {
-            handleExecuteSqlFile(id, args);
+            handleExecuteSqlFile(call);
         } else if ("query_to_csv_file".equals(name)) {
-            handleQueryToCsvFile(id, args);
+            handleQueryToCsvFile(call);
         } else if ("query_to_text_file".equals(name)) {
-            handleQueryToTextFile(id, args);
+            handleQueryToTextFile(call);
+        } else if ("query_to_file".equals(name)) {
+            handleQueryToFile(call);
+        } else if ("lob_to_file".equals(name)) {
+            handleLobToFile(call);
+        } else if ("load_csv_file".equals(name)) {
+            handleLoadCsvFile(call);
         } else {
-            sendToolError(id, "Unknown tool: " + name);
+            sendToolError(call, "Unknown tool: " + name);
         }
     }
 
@@ -237,16 +534,18 @@ public class McpServer {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void handleExecuteSqlFile(Object id, Map<String, Object> args) {
+    @SuppressWarnings({"unchecked", "try"})
+    private void handleExecuteSqlFile(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
         Object pathArg = args.get("file_path");
         if (pathArg == null) {
-            sendToolError(id, "Missing required parameter: file_path");
+            sendToolError(call, "Missing required parameter: file_path");
             return;
         }
         String filePath = pathArg.toString().trim();
         if (filePath.isEmpty()) {
-            sendToolError(id, "file_path cannot be empty");
+            sendToolError(call, "file_path cannot be empty");
             return;
         }
         Path path = Paths.get(filePath);
@@ -259,16 +558,16 @@ public class McpServer {
         try {
             sql = Files.readString(path, StandardCharsets.UTF_8);
         } catch (IOException e) {
-            sendToolError(id, "Cannot read file: " + e.getMessage());
+            sendToolError(call, "Cannot read file: " + e.getMessage());
             return;
         }
         if (sql == null || sql.isBlank()) {
-            sendToolError(id, "File is empty");
+            sendToolError(call, "File is empty");
             return;
         }
         sql = stripTrailingSlashLine(sql).trim();
         if (sql.isEmpty()) {
-            sendToolError(id, "File contains no SQL (only \"/\" lines)");
+            sendToolError(call, "File contains no SQL (only \"/\" lines)");
             return;
         }
 
@@ -277,7 +576,7 @@ public class McpServer {
         if (connectionName.isEmpty() && names.size() == 1) {
             connectionName = names.get(0);
         } else if (connectionName.isEmpty() && names.size() > 1) {
-            sendToolError(id, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
             return;
         }
         String displayConnection = connectionName.isEmpty() ? (names.isEmpty() ? "" : names.get(0)) : connectionName;
@@ -314,7 +613,7 @@ public class McpServer {
                 approved = confirmer.confirm(req);
             } catch (Exception e) {
                 logAudit(sql, analysis.getMatchedKeywords(), false, "CONFIRM_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver);
-                sendToolError(id, "Confirmation dialog error: " + e.getMessage());
+                sendToolError(call, "Confirmation dialog error: " + e.getMessage());
                 return;
             }
             if (!approved) {
@@ -322,41 +621,55 @@ public class McpServer {
                 Map<String, Object> data = new LinkedHashMap<>();
                 data.put("code", "USER_REJECTED");
                 data.put("matched_keywords", analysis.getMatchedKeywords() != null ? analysis.getMatchedKeywords() : List.of());
-                sendError(id, ERR_CODE_USER_REJECTED, "Execution cancelled by user", data);
+                sendError(call, ERR_CODE_USER_REJECTED, "Execution cancelled by user", data);
                 return;
             }
         }
 
-        try (Connection conn = pool.getConnection(connKey)) {
-            ExecutionResult result = JdbcExecutor.execute(conn, sql);
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx); Connection conn = pool.getConnection(connKey)) {
+            ExecutionResult result = executeAnalyzed(conn, sql, analysis, ctx, 0, Boolean.TRUE.equals(args.get("transaction")));
             logAudit(sql, analysis.getMatchedKeywords(), true, "SUCCESS", displayConnection, dbName, schema, driver);
             verboseLog("[debug] Execute File Action: " + analysis.getStatementType() + ", Connection: " + displayConnection + ", File: " + path);
-            sendToolResult(id, GSON.toJson(result));
+            sendToolResult(call, result);
         } catch (Exception e) {
             logAudit(sql, analysis.getMatchedKeywords(), false, "EXECUTION_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver);
             if (JdbcPool.isConnectionError(e)) {
                 pool.markUnavailable(connKey);
-                sendToolError(id, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
             } else {
-                sendToolError(id, "SQL execution failed: " + e.getMessage());
+                sendToolError(call, "SQL execution failed: " + e.getMessage());
             }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void handleExecuteSql(Object id, Map<String, Object> args) {
+    @SuppressWarnings({"unchecked", "try"})
+    private void handleExecuteSql(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
         Object sqlArg = args.get("sql");
         if (sqlArg == null) {
-            sendToolError(id, "Missing required parameter: sql");
+            sendToolError(call, "Missing required parameter: sql");
             return;
         }
         String sql = sqlArg.toString().trim();
+        Boolean columnar = columnarFormat(args);
+        if (columnar == null) {
+            sendToolError(call, "Invalid format: use \"rows\" or \"columnar\"");
+            return;
+        }
+        Object paramsArg = args.get("params");
+        if (paramsArg != null && !(paramsArg instanceof List)) {
+            sendToolError(call, "Invalid params: expected an array of values");
+            return;
+        }
+        List<Object> params = (List<Object>) paramsArg;
         String connectionName = args.get("connection") != null ? args.get("connection").toString().trim() : "";
         List<String> names = pool.getNames();
         if (connectionName.isEmpty() && names.size() == 1) {
             connectionName = names.get(0);
         } else if (connectionName.isEmpty() && names.size() > 1) {
-            sendToolError(id, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
             return;
         }
         String displayConnection = connectionName.isEmpty() ? (names.isEmpty() ? "" : names.get(0)) : connectionName;
@@ -393,7 +706,7 @@ public class McpServer {
                 approved = confirmer.confirm(req);
             } catch (Exception e) {
                 logAudit(sql, analysis.getMatchedKeywords(), false, "CONFIRM_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver);
-                sendToolError(id, "Confirmation dialog error: " + e.getMessage());
+                sendToolError(call, "Confirmation dialog error: " + e.getMessage());
                 return;
             }
             if (!approved) {
@@ -401,43 +714,180 @@ public class McpServer {
                 Map<String, Object> data = new LinkedHashMap<>();
                 data.put("code", "USER_REJECTED");
                 data.put("matched_keywords", analysis.getMatchedKeywords() != null ? analysis.getMatchedKeywords() : List.of());
-                sendError(id, ERR_CODE_USER_REJECTED, "Execution cancelled by user", data);
+                sendError(call, ERR_CODE_USER_REJECTED, "Execution cancelled by user", data);
                 return;
             }
         }
 
-        try (Connection conn = pool.getConnection(connKey)) {
-            ExecutionResult result = JdbcExecutor.execute(conn, sql);
-            logAudit(sql, analysis.getMatchedKeywords(), true, "SUCCESS", displayConnection, dbName, schema, driver);
-            verboseLog("[debug] Execute Action: " + analysis.getStatementType() + ", Connection: " + displayConnection);
-            sendToolResult(id, GSON.toJson(result));
+        armDeadline(ctx, args, connKey);
+        ctx.setResultLimits(resultLimits(args, connKey));
+        int pageSize = intArg(args, "page_size", config.getServer().getDefaultPageSize());
+        // audited as it runs: with auto_parameterize, the text with ? binds
+        String executedSql = sql;
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx)) {
+            Connection conn = pool.getConnection(connKey);
+            boolean pinned = false;
+            try {
+                ExecutionResult result;
+                if (params != null) {
+                    result = JdbcExecutor.executePrepared(conn, sql, params, ctx, pageSize);
+                } else if (analysis.getParameterizedSql() != null) {
+                    // auto_parameterize: the literals go in as binds
+                    executedSql = analysis.getParameterizedSql();
+                    result = JdbcExecutor.executePrepared(conn, executedSql, analysis.getParameters(), ctx, pageSize);
+                    if (!result.isSuccess() && !ctx.isCancelled() && isBindTypeMismatch(result.getSqlState())) {
+                        // a bind can be typed differently from the literal; the statement failed on the types, so it
+                        // changed nothing and the text as written can run. Any other error is reported as is.
+                        verboseLog("[debug] Parameterized statement failed (" + result.getWarning() + "); running it as written");
+                        executedSql = sql;
+                        result = executeAnalyzed(conn, sql, analysis, ctx, pageSize, false);
+                    }
+                } else {
+                    result = executeAnalyzed(conn, sql, analysis, ctx, pageSize, Boolean.TRUE.equals(args.get("transaction")));
+                }
+                if (result.getCursor() != null) {
+                    // the cursor now owns the connection; it goes back to the pool when the cursor closes
+                    result.setCursorId(cursors.open(result.getCursor(), conn, connKey, call.getSession().getId(), pageSize));
+                    result.setHasMore(true);
+                    pinned = true;
+                } else if (pageSize > 0 && result.getColumns() != null) {
+                    result.setHasMore(false);
+                }
+                logAudit(executedSql, analysis.getMatchedKeywords(), true, "SUCCESS", displayConnection, dbName, schema, driver);
+                verboseLog("[debug] Execute Action: " + analysis.getStatementType() + ", Connection: " + displayConnection);
+                sendQueryResult(call, result, columnar);
+            } finally {
+                if (!pinned) conn.close();
+            }
         } catch (Exception e) {
-            logAudit(sql, analysis.getMatchedKeywords(), false, "EXECUTION_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver);
+            logAudit(executedSql, analysis.getMatchedKeywords(), false, "EXECUTION_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver);
             if (JdbcPool.isConnectionError(e)) {
                 pool.markUnavailable(connKey);
-                sendToolError(id, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
             } else {
-                sendToolError(id, "SQL execution failed: " + e.getMessage());
+                sendToolError(call, "SQL execution failed: " + e.getMessage());
             }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void handleQueryToCsvFile(Object id, Map<String, Object> args) {
+    /**
+     * SQLStates for a bind whose type does not fit where the literal did: 42883 undefined operator and 42804 datatype
+     * mismatch (PostgreSQL, DB2), 22018 invalid character value for cast (H2, SQL Server, DB2).
+     */
+    private static boolean isBindTypeMismatch(String sqlState) {
+        return "42883".equals(sqlState) || "42804".equals(sqlState) || "22018".equals(sqlState);
+    }
+
+    private void handleFetchMore(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
+        Object idArg = args.get("cursor_id");
+        if (idArg == null || idArg.toString().isBlank()) {
+            sendToolError(call, "Missing required parameter: cursor_id");
+            return;
+        }
+        String cursorId = idArg.toString().trim();
+        String owner = call.getSession().getId();
+        Boolean columnar = columnarFormat(args);
+        if (columnar == null) {
+            sendToolError(call, "Invalid format: use \"rows\" or \"columnar\"");
+            return;
+        }
+        if (Boolean.TRUE.equals(args.get("close")) || "true".equals(String.valueOf(args.get("close")))) {
+            boolean closed = cursors.close(cursorId, owner);
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("cursor_id", cursorId);
+            out.put("closed", closed);
+            out.put("message", closed ? "Cursor closed" : "Cursor not open (already exhausted, expired or in use)");
+            sendToolResult(call, out);
+            return;
+        }
+        ResultCursor cursor;
+        try {
+            cursor = cursors.acquire(cursorId, owner);
+        } catch (SQLException e) {
+            sendToolError(call, e.getMessage());
+            return;
+        }
+        ExecutionResult page;
+        try {
+            armDeadline(ctx, args, cursor.getConnectionName());
+            ctx.setResultLimits(resultLimits(args, cursor.getConnectionName()));
+            int pageSize = intArg(args, "page_size", cursor.getPageSize());
+            if (pageSize <= 0) pageSize = cursor.getPageSize();
+            page = JdbcExecutor.fetchMore(cursor, pageSize, ctx);
+            if (!cursor.isExhausted()) page.setCursorId(cursorId);
+            page.setHasMore(!cursor.isExhausted());
+        } finally {
+            // release before responding: the client may ask for the next page as soon as it sees this one
+            cursors.release(cursor);
+        }
+        verboseLog("[debug] Fetch More: Connection: " + cursor.getConnectionName() + ", rows so far: " + cursor.getRowsFetched());
+        sendQueryResult(call, page, columnar);
+    }
+
+    /** format argument: false for "rows" (default), true for "columnar", null if unrecognized. */
+    private static Boolean columnarFormat(Map<String, Object> args) {
+        Object v = args.get("format");
+        String f = v != null ? v.toString().trim() : "";
+        if (f.isEmpty() || "rows".equalsIgnoreCase(f)) return false;
+        if (ColumnarPayload.FORMAT.equalsIgnoreCase(f)) return true;
+        return null;
+    }
+
+    /**
+     * method argument of the bulk tools: "jdbc" (default) or "native"; null if invalid. Native paths parse and format
+     * values differently from the JDBC conversions, so they are only used when asked for.
+     */
+    private static String bulkMethod(Map<String, Object> args) {
+        Object v = args.get("method");
+        String m = v != null ? v.toString().trim().toLowerCase() : "";
+        if (m.isEmpty()) return "jdbc";
+        return "native".equals(m) || "jdbc".equals(m) ? m : null;
+    }
+
+    /** Long tool argument, 0 when absent or not a number. */
+    private static long longArg(Map<String, Object> args, String key) {
+        Object v = args.get(key);
+        if (v instanceof Number) return ((Number) v).longValue();
+        if (v != null && !v.toString().isBlank()) {
+            try {
+                return (long) Double.parseDouble(v.toString().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return 0;
+    }
+
+    /** Integer tool argument (JSON number or numeric string), or def when absent or not a number. */
+    private static int intArg(Map<String, Object> args, String key, int def) {
+        Object v = args.get(key);
+        if (v instanceof Number) return ((Number) v).intValue();
+        if (v != null && !v.toString().isBlank()) {
+            try {
+                return (int) Double.parseDouble(v.toString().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        return def;
+    }
+
+    @SuppressWarnings({"unchecked", "try"})
+    private void handleQueryToCsvFile(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
         Object sqlArg = args.get("sql");
         Object pathArg = args.get("file_path");
         if (sqlArg == null || pathArg == null) {
-            sendToolError(id, "Missing required parameter: sql or file_path");
+            sendToolError(call, "Missing required parameter: sql or file_path");
             return;
         }
         String sql = sqlArg.toString().trim();
         if (sql.isEmpty()) {
-            sendToolError(id, "sql cannot be empty");
+            sendToolError(call, "sql cannot be empty");
             return;
         }
         Path path = Paths.get(pathArg.toString().trim());
         if (!path.isAbsolute()) {
-            sendToolError(id, "file_path must be an absolute path");
+            sendToolError(call, "file_path must be an absolute path");
             return;
         }
         String connectionName = args.get("connection") != null ? args.get("connection").toString().trim() : "";
@@ -445,7 +895,7 @@ public class McpServer {
         if (connectionName.isEmpty() && names.size() == 1) {
             connectionName = names.get(0);
         } else if (connectionName.isEmpty() && names.size() > 1) {
-            sendToolError(id, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
             return;
         }
         String connKey = connectionName.isEmpty() ? names.get(0) : connectionName;
@@ -455,41 +905,100 @@ public class McpServer {
         String dbName = (meta != null && meta.length > 0) ? meta[0] : displayConnection;
         String schema = (meta != null && meta.length > 1) ? meta[1] : "";
         String driver = (meta != null && meta.length > 2) ? meta[2] : "";
-        try (Connection conn = pool.getConnection(connKey)) {
-            long rowsWritten = JdbcExecutor.executeToCsvFile(conn, sql, path);
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx); Connection conn = pool.getConnection(connKey)) {
+            long rowsWritten = JdbcExecutor.executeToCsvFile(conn, sql, path, ctx);
             logAudit(sql, null, true, "QUERY_TO_CSV", displayConnection, dbName, schema, driver, path.toString());
             Map<String, Object> out = new LinkedHashMap<>();
             out.put("file_path", path.toString());
             out.put("rows_written", rowsWritten);
             out.put("message", "CSV written to " + path.toString());
-            sendToolResult(id, GSON.toJson(out));
+            sendToolResult(call, out);
         } catch (Exception e) {
             logAudit(sql, null, false, "QUERY_TO_CSV_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
             if (JdbcPool.isConnectionError(e)) {
                 pool.markUnavailable(connKey);
-                sendToolError(id, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+            } else {
+                sendToolError(call, "query_to_csv_file failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void handleLobToFile(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
+        Object sqlArg = args.get("sql");
+        Object pathArg = args.get("file_path");
+        if (sqlArg == null || pathArg == null) {
+            sendToolError(call, "Missing required parameter: sql or file_path");
+            return;
+        }
+        String sql = sqlArg.toString().trim();
+        if (sql.isEmpty()) {
+            sendToolError(call, "sql cannot be empty");
+            return;
+        }
+        Path path = Paths.get(pathArg.toString().trim());
+        if (!path.isAbsolute()) {
+            sendToolError(call, "file_path must be an absolute path");
+            return;
+        }
+        String column = args.get("column") != null ? args.get("column").toString().trim() : null;
+        String connectionName = args.get("connection") != null ? args.get("connection").toString().trim() : "";
+        List<String> names = pool.getNames();
+        if (connectionName.isEmpty() && names.size() == 1) {
+            connectionName = names.get(0);
+        } else if (connectionName.isEmpty() && names.size() > 1) {
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            return;
+        }
+        String connKey = connectionName.isEmpty() ? names.get(0) : connectionName;
+        String displayConnection = connectionName.isEmpty() ? (names.isEmpty() ? "" : names.get(0)) : connectionName;
+        if (displayConnection.isEmpty()) displayConnection = "default";
+        String[] meta = pool.getConnectionMeta(connKey);
+        String dbName = (meta != null && meta.length > 0) ? meta[0] : displayConnection;
+        String schema = (meta != null && meta.length > 1) ? meta[1] : "";
+        String driver = (meta != null && meta.length > 2) ? meta[2] : "";
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx); Connection conn = pool.getConnection(connKey)) {
+            long bytes = JdbcExecutor.executeLobToFile(conn, sql, column, path, ctx);
+            logAudit(sql, null, true, "LOB_TO_FILE", displayConnection, dbName, schema, driver, path.toString());
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("file_path", path.toString());
+            out.put("bytes", bytes);
+            out.put("message", "LOB written to " + path.toString());
+            sendToolResult(call, out);
+        } catch (Exception e) {
+            logAudit(sql, null, false, "LOB_TO_FILE_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
+            if (JdbcPool.isConnectionError(e)) {
+                pool.markUnavailable(connKey);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
             } else {
-                sendToolError(id, "query_to_csv_file failed: " + e.getMessage());
+                sendToolError(call, "lob_to_file failed: " + e.getMessage());
             }
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void handleQueryToTextFile(Object id, Map<String, Object> args) {
+    @SuppressWarnings({"unchecked", "try"})
+    private void handleQueryToTextFile(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
         Object sqlArg = args.get("sql");
         Object pathArg = args.get("file_path");
         if (sqlArg == null || pathArg == null) {
-            sendToolError(id, "Missing required parameter: sql or file_path");
+            sendToolError(call, "Missing required parameter: sql or file_path");
             return;
         }
         String sql = sqlArg.toString().trim();
         if (sql.isEmpty()) {
-            sendToolError(id, "sql cannot be empty");
+            sendToolError(call, "sql cannot be empty");
             return;
         }
         Path path = Paths.get(pathArg.toString().trim());
         if (!path.isAbsolute()) {
-            sendToolError(id, "file_path must be an absolute path");
+            sendToolError(call, "file_path must be an absolute path");
             return;
         }
         String connectionName = args.get("connection") != null ? args.get("connection").toString().trim() : "";
@@ -497,7 +1006,7 @@ public class McpServer {
         if (connectionName.isEmpty() && names.size() == 1) {
             connectionName = names.get(0);
         } else if (connectionName.isEmpty() && names.size() > 1) {
-            sendToolError(id, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
             return;
         }
         String connKey = connectionName.isEmpty() ? names.get(0) : connectionName;
@@ -507,25 +1016,455 @@ public class McpServer {
         String dbName = (meta != null && meta.length > 0) ? meta[0] : displayConnection;
         String schema = (meta != null && meta.length > 1) ? meta[1] : "";
         String driver = (meta != null && meta.length > 2) ? meta[2] : "";
-        try (Connection conn = pool.getConnection(connKey)) {
-            long rowsWritten = JdbcExecutor.executeToTextFile(conn, sql, path);
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx); Connection conn = pool.getConnection(connKey)) {
+            long rowsWritten = JdbcExecutor.executeToTextFile(conn, sql, path, ctx);
             logAudit(sql, null, true, "QUERY_TO_TEXT", displayConnection, dbName, schema, driver, path.toString());
             Map<String, Object> out = new LinkedHashMap<>();
             out.put("file_path", path.toString());
             out.put("rows_written", rowsWritten);
             out.put("message", "Text written to " + path.toString());
-            sendToolResult(id, GSON.toJson(out));
+            sendToolResult(call, out);
         } catch (Exception e) {
             logAudit(sql, null, false, "QUERY_TO_TEXT_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
             if (JdbcPool.isConnectionError(e)) {
                 pool.markUnavailable(connKey);
-                sendToolError(id, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+            } else {
+                sendToolError(call, "query_to_text_file failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "try"})
+    private void handleQueryToFile(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
+        Object sqlArg = args.get("sql");
+        Object pathArg = args.get("file_path");
+        if (sqlArg == null || pathArg == null) {
+            sendToolError(call, "Missing required parameter: sql or file_path");
+            return;
+        }
+        String sql = sqlArg.toString().trim();
+        if (sql.isEmpty()) {
+            sendToolError(call, "sql cannot be empty");
+            return;
+        }
+        Path path = Paths.get(pathArg.toString().trim());
+        if (!path.isAbsolute()) {
+            sendToolError(call, "file_path must be an absolute path");
+            return;
+        }
+        String fileName = path.getFileName().toString().toLowerCase();
+        String compression = args.get("compression") != null ? args.get("compression").toString().trim().toLowerCase() : "";
+        if (compression.isEmpty()) compression = fileName.endsWith(".gz") ? "gzip" : "none";
+        if (!"gzip".equals(compression) && !"none".equals(compression)) {
+            sendToolError(call, "Invalid compression: use \"gzip\" or \"none\"");
+            return;
+        }
+        String baseName = fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - 3) : fileName;
+        String formatName = args.get("format") != null ? args.get("format").toString().trim().toLowerCase() : "";
+        if (formatName.isEmpty()) {
+            if (baseName.endsWith(".jsonl") || baseName.endsWith(".ndjson")) formatName = "jsonl";
+            else if (baseName.endsWith(".txt")) formatName = "text";
+            else formatName = "csv";
+        }
+        RowFormat format = TextRowFormats.forName(formatName, true);
+        if (format == null) {
+            sendToolError(call, "Invalid format: use \"csv\", \"text\" or \"jsonl\"");
+            return;
+        }
+        String connectionName = args.get("connection") != null ? args.get("connection").toString().trim() : "";
+        List<String> names = pool.getNames();
+        if (connectionName.isEmpty() && names.size() == 1) {
+            connectionName = names.get(0);
+        } else if (connectionName.isEmpty() && names.size() > 1) {
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            return;
+        }
+        String connKey = connectionName.isEmpty() ? names.get(0) : connectionName;
+        String displayConnection = connectionName.isEmpty() ? (names.isEmpty() ? "" : names.get(0)) : connectionName;
+        if (displayConnection.isEmpty()) displayConnection = "default";
+        String[] meta = pool.getConnectionMeta(connKey);
+        String dbName = (meta != null && meta.length > 0) ? meta[0] : displayConnection;
+        String schema = (meta != null && meta.length > 1) ? meta[1] : "";
+        String driver = (meta != null && meta.length > 2) ? meta[2] : "";
+        String partitionColumn = args.get("partition_column") != null ? args.get("partition_column").toString().trim() : "";
+        String checkpointColumn = args.get("checkpoint_column") != null ? args.get("checkpoint_column").toString().trim() : "";
+        boolean resume = Boolean.TRUE.equals(args.get("resume"));
+        String watermarkColumn = args.get("watermark_column") != null ? args.get("watermark_column").toString().trim() : "";
+        int modes = (partitionColumn.isEmpty() ? 0 : 1) + (checkpointColumn.isEmpty() ? 0 : 1) + (watermarkColumn.isEmpty() ? 0 : 1);
+        if (modes > 1) {
+            sendToolError(call, "Use only one of partition_column, checkpoint_column and watermark_column");
+            return;
+        }
+        if (resume && checkpointColumn.isEmpty()) {
+            sendToolError(call, "resume needs checkpoint_column");
+            return;
+        }
+        String method = bulkMethod(args);
+        if (method == null) {
+            sendToolError(call, "Invalid method: use \"jdbc\" or \"native\"");
+            return;
+        }
+        if (!partitionColumn.isEmpty()) {
+            handlePartitionedExport(call, sql, path, formatName, compression, partitionColumn, connKey,
+                displayConnection, dbName, schema, driver);
+            return;
+        }
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx); Connection conn = pool.getConnection(connKey)) {
+            long rowsWritten;
+            String usedMethod = null;
+            CheckpointedExport.Result checkpointed = null;
+            IncrementalExport.Result incremental = null;
+            if (!watermarkColumn.isEmpty()) {
+                incremental = IncrementalExport.run(conn, connKey, sql, watermarkColumn, path, formatName,
+                    "gzip".equals(compression), Boolean.TRUE.equals(args.get("reset_watermark")), watermarks, ctx);
+                rowsWritten = incremental.getRowsWritten();
+            } else if (!checkpointColumn.isEmpty()) {
+                checkpointed = CheckpointedExport.run(conn, sql, checkpointColumn, path, formatName, "gzip".equals(compression), resume, ctx);
+                rowsWritten = checkpointed.getRowsWritten();
+            } else {
+                ConnectionEntry entry = pool.getConnectionEntry(connKey);
+                DbType dbType = DbTypes.resolve(entry != null ? entry.getDbType() : null);
+                Long copied = null;
+                if ("native".equals(method) && "csv".equals(formatName) && NativeBulk.canExportCsv(dbType)) {
+                    copied = NativeBulk.exportCsv(conn, sql, path, "gzip".equals(compression), ctx);
+                }
+                usedMethod = copied != null ? NativeBulk.COPY : NativeBulk.JDBC;
+                rowsWritten = copied != null ? copied
+                    : JdbcExecutor.exportToFile(conn, sql, path, format, "gzip".equals(compression), ctx);
+            }
+            logAudit(sql, null, true, "QUERY_TO_FILE", displayConnection, dbName, schema, driver, path.toString());
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("file_path", path.toString());
+            out.put("format", formatName);
+            out.put("compression", compression);
+            out.put("rows_written", rowsWritten);
+            if (usedMethod != null) out.put("method", usedMethod);
+            if (checkpointed != null) {
+                out.put("resumed", checkpointed.isResumed());
+                if (checkpointed.isResumed()) out.put("resumed_after_rows", checkpointed.getResumedAfterRows());
+            }
+            if (incremental != null) {
+                out.put("appended", incremental.isAppended());
+                out.put("previous_watermark", incremental.getPreviousWatermark());
+                out.put("watermark", incremental.getWatermark());
+            }
+            out.put("bytes", Files.size(path));
+            out.put("message", formatName.toUpperCase() + " written to " + path.toString());
+            sendToolResult(call, out);
+        } catch (Exception e) {
+            logAudit(sql, null, false, "QUERY_TO_FILE_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
+            if (JdbcPool.isConnectionError(e)) {
+                pool.markUnavailable(connKey);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
             } else {
-                sendToolError(id, "query_to_text_file failed: " + e.getMessage());
+                sendToolError(call, "query_to_file failed: " + e.getMessage());
             }
         }
     }
 
+    /** query_to_file with partition_column: partitions + 1 connections (coordinator and one per range). */
+    @SuppressWarnings("try")
+    private void handlePartitionedExport(ToolCall call, String sql, Path path, String formatName, String compression,
+                                         String partitionColumn, String connKey, String displayConnection,
+                                         String dbName, String schema, String driver) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
+        int maxConnections = config.getServer().getMaxConcurrentPerConnection();
+        int partitions = intArg(args, "partitions", Math.min(4, Math.max(1, maxConnections - 1)));
+        if (partitions < 1 || partitions + 1 > maxConnections) {
+            sendToolError(call, "partitions must be between 1 and " + Math.max(1, maxConnections - 1)
+                + " (max_concurrent_per_connection - 1)");
+            return;
+        }
+        boolean shardFiles = Boolean.TRUE.equals(args.get("shard_files"));
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx, partitions + 1)) {
+            PartitionedExport.Result r = PartitionedExport.run(pool, connKey, sql, partitionColumn, partitions, path,
+                i -> TextRowFormats.forName(formatName, shardFiles || i == 0), "gzip".equals(compression), shardFiles, ctx);
+            logAudit(sql, null, true, "QUERY_TO_FILE", displayConnection, dbName, schema, driver, path.toString());
+            long bytes = 0;
+            List<String> files = new ArrayList<>();
+            for (Path f : r.getFiles()) {
+                files.add(f.toString());
+                bytes += Files.size(f);
+            }
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("file_path", path.toString());
+            if (shardFiles) out.put("files", files);
+            out.put("format", formatName);
+            out.put("compression", compression);
+            out.put("rows_written", r.getRowsWritten());
+            out.put("bytes", bytes);
+            out.put("partitions", r.getPartitions());
+            out.put("snapshot", r.getSnapshot());
+            if (r.getSnapshotWarning() != null) out.put("snapshot_warning", r.getSnapshotWarning());
+            out.put("message", formatName.toUpperCase() + " written to " + (shardFiles ? files.size() + " files" : path.toString()));
+            sendToolResult(call, out);
+        } catch (Exception e) {
+            logAudit(sql, null, false, "QUERY_TO_FILE_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
+            if (JdbcPool.isConnectionError(e)) {
+                pool.markUnavailable(connKey);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+            } else {
+                sendToolError(call, "query_to_file failed: " + e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("try")
+    private void handleLoadCsvFile(ToolCall call) {
+        Map<String, Object> args = call.getArguments();
+        ExecutionContext ctx = call.getContext();
+        Object pathArg = args.get("file_path");
+        Object tableArg = args.get("table");
+        if (pathArg == null || tableArg == null) {
+            sendToolError(call, "Missing required parameter: file_path or table");
+            return;
+        }
+        Path path = Paths.get(pathArg.toString().trim());
+        if (!path.isAbsolute()) {
+            sendToolError(call, "file_path must be an absolute path");
+            return;
+        }
+        if (!Files.isRegularFile(path)) {
+            sendToolError(call, "File not found: " + path);
+            return;
+        }
+        String table = tableArg.toString().trim();
+        String delimiterArg = args.get("delimiter") != null ? args.get("delimiter").toString() : ",";
+        if ("tab".equalsIgnoreCase(delimiterArg) || "\\t".equals(delimiterArg)) delimiterArg = "\t";
+        if (delimiterArg.length() != 1 || delimiterArg.charAt(0) == '"' || delimiterArg.charAt(0) == '\n' || delimiterArg.charAt(0) == '\r') {
+            sendToolError(call, "delimiter must be a single character other than a quote or line break");
+            return;
+        }
+        char delimiter = delimiterArg.charAt(0);
+        boolean header = !Boolean.FALSE.equals(args.get("header")) && !"false".equals(String.valueOf(args.get("header")));
+        boolean emptyAsNull = !Boolean.FALSE.equals(args.get("empty_as_null")) && !"false".equals(String.valueOf(args.get("empty_as_null")));
+        int batchSize = intArg(args, "batch_size", 1000);
+        int commitSize = intArg(args, "commit_size", Math.max(10000, batchSize));
+        int maxConnections = config.getServer().getMaxConcurrentPerConnection();
+        int parallelism = intArg(args, "parallelism", 1);
+        long maxRejected = args.get("max_rejected") != null ? longArg(args, "max_rejected") : 1000;
+        String method = bulkMethod(args);
+        if (method == null) {
+            sendToolError(call, "Invalid method: use \"jdbc\" or \"native\"");
+            return;
+        }
+        if (batchSize < 1 || commitSize < batchSize) {
+            sendToolError(call, "batch_size must be at least 1 and commit_size at least batch_size");
+            return;
+        }
+        if (parallelism < 1 || parallelism > maxConnections) {
+            sendToolError(call, "parallelism must be between 1 and " + maxConnections + " (max_concurrent_per_connection)");
+            return;
+        }
+        List<String> columns = new ArrayList<>();
+        if (args.get("columns") instanceof List) {
+            for (Object c : (List<?>) args.get("columns")) columns.add(String.valueOf(c).trim());
+        } else if (args.get("columns") != null && !args.get("columns").toString().isBlank()) {
+            for (String c : args.get("columns").toString().split(",")) columns.add(c.trim());
+        }
+        String insertSql;
+        try {
+            if (columns.isEmpty()) {
+                if (!header) {
+                    sendToolError(call, "columns is required when header is false");
+                    return;
+                }
+                columns = CsvLoad.readHeader(path, delimiter);
+            }
+            insertSql = CsvLoad.insertSql(table, columns);
+        } catch (IOException | SQLException e) {
+            sendToolError(call, "load_csv_file failed: " + e.getMessage());
+            return;
+        }
+        String connectionName = args.get("connection") != null ? args.get("connection").toString().trim() : "";
+        List<String> names = pool.getNames();
+        if (connectionName.isEmpty() && names.size() == 1) {
+            connectionName = names.get(0);
+        } else if (connectionName.isEmpty() && names.size() > 1) {
+            sendToolError(call, "Multiple connections configured; specify 'connection' (call list_connections for names).");
+            return;
+        }
+        String connKey = connectionName.isEmpty() ? names.get(0) : connectionName;
+        String displayConnection = connectionName.isEmpty() ? (names.isEmpty() ? "" : names.get(0)) : connectionName;
+        if (displayConnection.isEmpty()) displayConnection = "default";
+        String[] meta = pool.getConnectionMeta(connKey);
+        String dbName = (meta != null && meta.length > 0) ? meta[0] : displayConnection;
+        String schema = (meta != null && meta.length > 1) ? meta[1] : "";
+        String driver = (meta != null && meta.length > 2) ? meta[2] : "";
+
+        AnalysisResult analysis = pool.getAnalyzer(connKey).analyze(insertSql);
+        if (analysis.isDangerous()) {
+            ConfirmRequest req = new ConfirmRequest();
+            req.setSql(insertSql);
+            req.setFormattedHtml(pool.getFormatter(connKey).formatHtmlPreserveLayout(insertSql));
+            req.setMatchedKeywords(analysis.getMatchedKeywords());
+            req.setMatchedKeywordsForHighlight(analysis.getMatchedKeywordsForHighlight());
+            req.setMatchedActions(analysis.getMatchedActions());
+            req.setStatementType(analysis.getStatementType());
+            req.setDdl(analysis.isDdl());
+            req.setConnection(displayConnection);
+            req.setDatabaseName(dbName);
+            req.setSchema(schema);
+            req.setDriver(driver);
+            boolean approved;
+            try {
+                approved = confirmer.confirm(req);
+            } catch (Exception e) {
+                logAudit(insertSql, analysis.getMatchedKeywords(), false, "CONFIRM_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
+                sendToolError(call, "Confirmation dialog error: " + e.getMessage());
+                return;
+            }
+            if (!approved) {
+                logAudit(insertSql, analysis.getMatchedKeywords(), false, "USER_REJECTED", displayConnection, dbName, schema, driver, path.toString());
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("code", "USER_REJECTED");
+                data.put("matched_keywords", analysis.getMatchedKeywords() != null ? analysis.getMatchedKeywords() : List.of());
+                sendError(call, ERR_CODE_USER_REJECTED, "Execution cancelled by user", data);
+                return;
+            }
+        }
+
+        armDeadline(ctx, args, connKey);
+        try (ConnectionSlot ignored = acquireSlot(connKey, ctx, parallelism)) {
+            CsvLoad.Result r = null;
+            if ("native".equals(method)) {
+                ConnectionEntry entry = pool.getConnectionEntry(connKey);
+                r = NativeBulk.loadCsv(pool, connKey, DbTypes.resolve(entry != null ? entry.getDbType() : null),
+                    path, table, columns, header, delimiter, emptyAsNull, ctx);
+            }
+            if (r == null) {
+                r = CsvLoad.run(pool, connKey, path, table, columns, header, delimiter, emptyAsNull,
+                    batchSize, commitSize, parallelism, maxRejected, ctx);
+            }
+            logAudit(insertSql, analysis.getMatchedKeywords(), true, "LOAD_CSV", displayConnection, dbName, schema, driver, path.toString());
+            List<Map<String, Object>> rejected = new ArrayList<>();
+            for (CsvLoad.Rejected rej : r.getRejected()) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("line", rej.getLine());
+                m.put("error", rej.getError());
+                rejected.add(m);
+            }
+            Map<String, Object> out = new LinkedHashMap<>();
+            out.put("file_path", path.toString());
+            out.put("table", table);
+            out.put("columns", columns);
+            out.put("method", r.getMethod());
+            if (r.getRowsRead() >= 0) out.put("rows_read", r.getRowsRead());
+            out.put("rows_loaded", r.getRowsLoaded());
+            if (r.getRowsRejected() >= 0) out.put("rows_rejected", r.getRowsRejected());
+            if (NativeBulk.LOAD_DATA.equals(r.getMethod())) out.put("warnings", r.getWarnings());
+            if (!rejected.isEmpty()) out.put("rejected", rejected);
+            out.put("message", r.getRowsLoaded() + " rows loaded into " + table
+                + (r.getRowsRejected() > 0 ? ", " + r.getRowsRejected() + " rejected" : ""));
+            sendToolResult(call, out);
+        } catch (Exception e) {
+            logAudit(insertSql, analysis.getMatchedKeywords(), false, "LOAD_CSV_ERROR: " + e.getMessage(), displayConnection, dbName, schema, driver, path.toString());
+            if (JdbcPool.isConnectionError(e)) {
+                pool.markUnavailable(connKey);
+                sendToolError(call, JdbcPool.MSG_CONNECTION_UNAVAILABLE);
+            } else {
+                sendToolError(call, "load_csv_file failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Run the statements as the analyzer split them, i.e. what was reviewed; the executor splits sql itself otherwise. */
+    private static ExecutionResult executeAnalyzed(Connection conn, String sql, AnalysisResult analysis,
+                                                   ExecutionContext ctx, int pageSize, boolean transaction) {
+        if (analysis.getScript() != null) return JdbcExecutor.execute(conn, analysis.getScript(), ctx, pageSize, transaction);
+        return JdbcExecutor.execute(conn, sql, ctx, pageSize, transaction);
+    }
+
+    /**
+     * Start the call deadline once the connection is known: timeout_ms argument if given, else the connection's
+     * query_timeout_ms. Started after any confirmation dialog so time spent reviewing does not count.
+     * Also hands the call the connection's fetch strategy.
+     */
+    private void armDeadline(ExecutionContext ctx, Map<String, Object> args, String connKey) {
+        long timeoutMs = ConnectionEntry.DEFAULT_QUERY_TIMEOUT_MS;
+        ConnectionEntry entry = pool.getConnectionEntry(connKey);
+        if (entry != null) timeoutMs = entry.getQueryTimeoutMs();
+        Object arg = args.get("timeout_ms");
+        if (arg instanceof Number) {
+            timeoutMs = ((Number) arg).longValue();
+        } else if (arg != null && !arg.toString().isBlank()) {
+            try {
+                timeoutMs = (long) Double.parseDouble(arg.toString().trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        ctx.startDeadline(timeoutMs, deadlines);
+        ctx.setFetchStrategy(pool.getFetchStrategy(connKey));
+    }
+
+    /**
+     * A held per-connection slot; closing it releases the slot. Callers hold it as {@code ignored} in the
+     * try-with-resources around their work and never touch it, hence their {@code @SuppressWarnings("try")}.
+     */
+    private interface ConnectionSlot extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * Wait for one of the connection's max_concurrent_per_connection slots, so a large batch cannot take the whole
+     * pool. Waiting stays cancellable: the call's cancel or deadline ends the wait.
+     */
+    private ConnectionSlot acquireSlot(String connKey, ExecutionContext ctx) throws SQLException {
+        return acquireSlot(connKey, ctx, 1);
+    }
+
+    /**
+     * Several slots at once (all or nothing, so two parallel exports cannot deadlock holding half each). Called on a
+     * worker that holds a {@link #callSlots} permit; while the connection is saturated the call gives that permit back,
+     * so calls to other connections and cheap tools are not starved, and takes it again once it has its slots.
+     */
+    private ConnectionSlot acquireSlot(String connKey, ExecutionContext ctx, int permits) throws SQLException {
+        Semaphore slots = connectionSlots.computeIfAbsent(connKey,
+            k -> new Semaphore(config.getServer().getMaxConcurrentPerConnection()));
+        if (slots.tryAcquire(permits)) return () -> slots.release(permits);
+        callSlots.release();
+        try {
+            while (!slots.tryAcquire(permits, 100, TimeUnit.MILLISECONDS)) {
+                if (ctx.isCancelled()) {
+                    throw new SQLException(ctx.isTimedOut()
+                        ? "Query exceeded timeout of " + ctx.getTimeoutMs() + " ms while waiting for a free connection"
+                        : "Query cancelled while waiting for a free connection");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a free connection");
+        } finally {
+            // dispatchToolsCall releases the call slot when the call ends, so it must be held again either way
+            callSlots.acquireUninterruptibly();
+        }
+        return () -> slots.release(permits);
+    }
+
+    /**
+     * In-memory result limits: the connection's max_rows / max_result_bytes / max_fetch_ms, tightened by the call's,
+     * and its lob_preview_size.
+     */
+    private ResultLimits resultLimits(Map<String, Object> args, String connKey) {
+        ConnectionEntry entry = pool.getConnectionEntry(connKey);
+        long rows = entry != null ? entry.getMaxRows() : 0;
+        long bytes = entry != null ? entry.getMaxResultBytes() : ConnectionEntry.DEFAULT_MAX_RESULT_BYTES;
+        long fetchMs = entry != null ? entry.getMaxFetchMs() : 0;
+        int lobPreview = entry != null ? entry.getLobPreviewSize() : ConnectionEntry.DEFAULT_LOB_PREVIEW_SIZE;
+        return new ResultLimits(
+            ResultLimits.tighter(rows, longArg(args, "max_rows")),
+            ResultLimits.tighter(bytes, longArg(args, "max_result_bytes")),
+            ResultLimits.tighter(fetchMs, longArg(args, "max_fetch_ms")),
+            lobPreview);
+    }
+
     private void logAudit(String sql, List<String> keywords, boolean approved, String action,
                           String connection, String dbName, String schema, String driver) {
         logAudit(sql, keywords, approved, action, connection, dbName, schema, driver, null);
@@ -547,37 +1486,37 @@ public class McpServer {
         System.err.println(msg);
     }
 
-    private void sendResult(Object id, Object result) {
-        Map<String, Object> resp = new LinkedHashMap<>();
-        resp.put("jsonrpc", "2.0");
-        resp.put("id", id);
-        resp.put("result", result);
-        writer.println(GSON.toJson(resp));
+    private void sendProgress(ToolCall call, Object token, long progress, String message) {
+        if (call.getSession().isCancelledByClient(call.getId())) return;
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("progressToken", token);
+        params.put("progress", progress);
+        params.put("message", message);
+        call.getOut().writeNotification("notifications/progress", params);
+    }
+
+    private void sendError(ToolCall call, int code, String message, Object data) {
+        if (call.getSession().isCancelledByClient(call.getId())) return;
+        call.getOut().writeError(call.getId(), code, message, data);
     }
 
-    private void sendError(Object id, int code, String message, Object data) {
-        Map<String, Object> resp = new LinkedHashMap<>();
-        resp.put("jsonrpc", "2.0");
-        resp.put("id", id);
-        Map<String, Object> err = new LinkedHashMap<>();
-        err.put("code", code);
-        err.put("message", message);
-        if (data != null) err.put("data", data);
-        resp.put("error", err);
-        writer.println(GSON.toJson(resp));
+    /** Tool result: payload is streamed as JSON into the text content by {@link JsonRpcWriter}. */
+    private void sendToolResult(ToolCall call, Object payload) {
+        if (call.getSession().isCancelledByClient(call.getId())) return;
+        call.getOut().writeToolResult(call.getId(), w -> GSON.toJson(payload, payload.getClass(), w));
     }
 
-    private void sendToolResult(Object id, String contentJson) {
-        Map<String, Object> content = new LinkedHashMap<>();
-        content.put("type", "text");
-        content.put("text", contentJson);
-        sendResult(id, Map.of("content", List.of(content)));
+    private void sendQueryResult(ToolCall call, ExecutionResult result, boolean columnar) {
+        if (!columnar) {
+            sendToolResult(call, result);
+            return;
+        }
+        if (call.getSession().isCancelledByClient(call.getId())) return;
+        call.getOut().writeToolResult(call.getId(), new ColumnarPayload(result));
     }
 
-    private void sendToolError(Object id, String message) {
-        Map<String, Object> content = new LinkedHashMap<>();
-        content.put("type", "text");
-        content.put("text", message);
-        sendResult(id, Map.of("content", List.of(content), "isError", true));
+    private void sendToolError(ToolCall call, String message) {
+        if (call.getSession().isCancelledByClient(call.getId())) return;
+        call.getOut().writeToolError(call.getId(), message);
     }
 }
@@ -0,0 +1,75 @@
+package com.alvinliu.dbmcp.mcp;
+
+import com.alvinliu.dbmcp.jdbc.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One MCP client connection (the stdio stream, or an HTTP client identified by Mcp-Session-Id). Request ids are only
+ * unique per client, so in-flight calls and client cancellations are tracked here rather than on the server.
+ */
+final class McpSession {
+    private final String id = UUID.randomUUID().toString();
+    private final Map<Object, ExecutionContext> inFlight = new ConcurrentHashMap<>();
+    private final Set<Object> cancelledByClient = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private volatile long lastActiveMillis = System.currentTimeMillis();
+
+    String getId() { return id; }
+
+    long getLastActiveMillis() { return lastActiveMillis; }
+
+    void touch() { lastActiveMillis = System.currentTimeMillis(); }
+
+    /** True when no call is queued or running. */
+    boolean isIdle() { return pending.isEmpty() && inFlight.isEmpty(); }
+
+    /** Register a call before it is queued, so a cancel that arrives while it waits for a slot is not lost. */
+    void begin(Object requestId, ExecutionContext ctx) {
+        if (requestId != null) inFlight.put(requestId, ctx);
+    }
+
+    void end(Object requestId, ExecutionContext ctx) {
+        if (requestId != null && inFlight.remove(requestId, ctx)) cancelledByClient.remove(requestId);
+    }
+
+    /** Track a queued call so {@link #awaitPending()} can wait for it. */
+    void track(CompletableFuture<?> f) {
+        pending.add(f);
+        f.whenComplete((r, e) -> pending.remove(f));
+    }
+
+    /** notifications/cancelled: cancel the call and suppress its response. */
+    void cancel(Object requestId) {
+        ExecutionContext ctx = requestId != null ? inFlight.get(requestId) : null;
+        if (ctx != null) {
+            cancelledByClient.add(requestId);
+            ctx.cancel();
+        }
+    }
+
+    /** Per MCP, no response is sent for a request the client cancelled. */
+    boolean isCancelledByClient(Object requestId) {
+        return requestId != null && cancelledByClient.contains(requestId);
+    }
+
+    /** Client is gone: stop running statements instead of letting them hold pooled connections. */
+    void cancelAll(String reason) {
+        for (ExecutionContext ctx : inFlight.values()) ctx.cancel(reason);
+    }
+
+    void awaitPending() {
+        for (CompletableFuture<?> f : new ArrayList<>(pending)) {
+            try {
+                f.join();
+            } catch (RuntimeException ignored) {
+                // failures were already reported to the client
+            }
+        }
+    }
+}
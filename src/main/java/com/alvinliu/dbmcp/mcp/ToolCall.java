@@ -0,0 +1,35 @@
+package com.alvinliu.dbmcp.mcp;
+
+import com.alvinliu.dbmcp.jdbc.ExecutionContext;
+
+import java.util.Map;
+
+/**
+ * One tools/call being handled: the request id and arguments, its execution context, and where its response goes
+ * (the session's stdio writer, or the body of the HTTP response that carried the request).
+ */
+final class ToolCall {
+    private final McpSession session;
+    private final JsonRpcWriter out;
+    private final Object id;
+    private final Map<String, Object> arguments;
+    private final ExecutionContext context;
+
+    ToolCall(McpSession session, JsonRpcWriter out, Object id, Map<String, Object> arguments, ExecutionContext context) {
+        this.session = session;
+        this.out = out;
+        this.id = id;
+        this.arguments = arguments;
+        this.context = context;
+    }
+
+    McpSession getSession() { return session; }
+
+    JsonRpcWriter getOut() { return out; }
+
+    Object getId() { return id; }
+
+    Map<String, Object> getArguments() { return arguments; }
+
+    ExecutionContext getContext() { return context; }
+}